@@ -2,10 +2,15 @@ package gitlet;
 
 import java.io.*;
 import java.nio.file.Files;
-import java.util.Arrays;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 class Blob implements Serializable {
 
+    // pinned so that repositories written by earlier builds stay readable
+    private static final long serialVersionUID = 7039472780233647588L;
+
     // the file-name for this blob
     private String fileName_;
     // the contents for the file
@@ -13,12 +18,26 @@ class Blob implements Serializable {
     // the SHA-ID for this blob object
     private String contentHash_;
 
+    // blobs known to be stored, so repeated existence checks skip the file
+    // system. Only gc removes stored objects, and it empties this set.
+    private static final Set<String> storedBlobs_ = ConcurrentHashMap.newKeySet();
+
+    // blobs read by this process, weighed by the size of their contents
+    private static final ObjectCache<Blob> cache_ = new ObjectCache<>("blob", 64L << 20,
+            blob -> blob.contentAsBytes_.length + 2L * blob.fileName_.length() + 128);
+
     Blob(String fileName){
         fileName_ = fileName;
         contentAsBytes_ = setContentAsBytes_();
         contentHash_ = setContentHash_();
     }
 
+    private Blob(String fileName, byte[] contentAsBytes, String contentHash){
+        fileName_ = fileName;
+        contentAsBytes_ = contentAsBytes;
+        contentHash_ = contentHash;
+    }
+
     String getFileName_() {
         return fileName_;
     }
@@ -37,31 +56,114 @@ class Blob implements Serializable {
     }
 
     // create hash based on the content of the file
-    // hash based on byte array
+    // hash based on the byte array already read
     private String setContentHash_() {
-        File tempFile = new File(fileName_);
+        return Utils.sha1(contentAsBytes_);
+    }
+
+    // true if a blob with this ID is stored, loose or packed
+    static boolean exists(String blobID){
+
+        if (storedBlobs_.contains(blobID)){
+            return true;
+        }
+
+        boolean stored = Utils.join(Utils.GITLET_DIR, Utils.BLOBS_DIR, blobID).exists() || PackFile.contains(blobID);
+        if (stored){
+            storedBlobs_.add(blobID);
+        }
+        return stored;
+    }
 
-        byte[] fileToAddBytes = new byte[0];
+    // forget which blobs are stored, after gc deleted some
+    static void forgetStored(){
+        storedBlobs_.clear();
+    }
+
+    // write this blob in the binary object format, compressing the contents
+    // at the given level (0 stores them raw)
+    private void encode(DataOutputStream out, int compressionLevel) throws IOException {
+        ObjectCodec.writeHeader(out, ObjectCodec.TYPE_BLOB);
+        ObjectCodec.writeID(out, contentHash_);
+        ObjectCodec.writeString(out, fileName_);
+        ObjectCodec.writeContent(out, contentAsBytes_, compressionLevel);
+    }
+
+    // the encoded blob, as stored in a file or pack
+    byte[] toBytes(int compressionLevel){
         try {
-            fileToAddBytes = Files.readAllBytes(tempFile.toPath());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(contentAsBytes_.length + 64);
+            encode(new DataOutputStream(bytes), compressionLevel);
+            return bytes.toByteArray();
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new IllegalStateException(e);
         }
-        String fileHash = Utils.sha1(fileToAddBytes);
-        return fileHash;
     }
 
-    // write commit object to disk
+    private static Blob decode(DataInputStream in) throws IOException {
+        int version = ObjectCodec.readHeader(in, ObjectCodec.TYPE_BLOB);
+
+        String contentHash = ObjectCodec.readID(in);
+        String fileName = ObjectCodec.readString(in);
+        // version 1 stored the contents raw, without a codec
+        byte[] contents = version == 1 ? ObjectCodec.readBytes(in) : ObjectCodec.readContent(in);
+        return new Blob(fileName, contents, contentHash);
+    }
+
+    static Blob fromBytes(byte[] encoded) throws IOException {
+        return decode(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+
+    // open a blob for reading, from a loose file or a pack
+    private static InputStream openBlob(String blobID) throws IOException {
+        File inFile =  Utils.join(Utils.GITLET_DIR, Utils.BLOBS_DIR, blobID);
+
+        // loose objects take precedence, otherwise look in the packs
+        return inFile.exists() ? new FileInputStream(inFile) : PackFile.openObject(PackFile.TYPE_BLOB, blobID);
+    }
+
+    // stream over the contents of a stored blob without holding them in memory
+    static InputStream openContent(String blobID) throws IOException {
+        BufferedInputStream inp = new BufferedInputStream(openBlob(blobID));
+
+        if (ObjectCodec.isLegacy(inp)){
+            return new ByteArrayInputStream(ObjectCodec.readLegacy(inp, Blob.class).getContentAsBytes_());
+        }
+
+        DataInputStream in = new DataInputStream(inp);
+        int version = ObjectCodec.readHeader(in, ObjectCodec.TYPE_BLOB);
+        ObjectCodec.readID(in);
+        ObjectCodec.readString(in);
+
+        if (version == 1){
+            // only the length precedes the raw contents
+            ObjectCodec.readVarint(in);
+            return in;
+        }
+        return ObjectCodec.openContent(in);
+    }
+
+    // write blob object to disk. The blob is written to a temporary file,
+    // synced and then renamed, so it is durable once this returns and a
+    // partially written blob is never visible under its ID.
     void writeBlobToDisk(){
 
         File outFile = Utils.join(Utils.GITLET_DIR, Utils.BLOBS_DIR, contentHash_);
 
+        Metrics.Timer timer = Metrics.start(Metrics.Phase.BLOB_WRITE);
         try {
-            outFile.createNewFile();
+            File tempFile = File.createTempFile("blob", ".tmp", new File(Utils.GITLET_DIR));
+            FileOutputStream fileStream = new FileOutputStream(tempFile);
 
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(outFile));
-            out.writeObject(this);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            encode(out, Config.getCompressionLevel());
+            out.flush();
+            fileStream.getFD().sync();
             out.close();
+
+            Files.move(tempFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            storedBlobs_.add(contentHash_);
+            Metrics.end(timer, out.size());
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -69,31 +171,58 @@ class Blob implements Serializable {
         }
     }
 
+    static ObjectCache<Blob> getCache(){
+        return cache_;
+    }
+
+    // read blob object from disk, or from the cache if it was read before
     static Blob readBlobFromDisk(String blobID){
+        return cache_.get(blobID, Blob::loadBlob);
+    }
+
+    // read a blob without keeping it in the cache, as when every blob is
+    // read once
+    static Blob readBlobUncached(String blobID){
+        return loadBlob(blobID);
+    }
+
+    // the file name of a stored blob, reading no more of it than needed
+    static String readFileName(String blobID) throws IOException {
+        try (BufferedInputStream inp = new BufferedInputStream(openBlob(blobID))) {
+            if (ObjectCodec.isLegacy(inp)){
+                return ObjectCodec.readLegacy(inp, Blob.class).getFileName_();
+            }
+
+            DataInputStream in = new DataInputStream(inp);
+            ObjectCodec.readHeader(in, ObjectCodec.TYPE_BLOB);
+            ObjectCodec.readID(in);
+            return ObjectCodec.readString(in);
+        }
+    }
+
+    private static Blob loadBlob(String blobID){
 
         Blob blobObj = null;
-        File inFile =  Utils.join(Utils.GITLET_DIR, Utils.BLOBS_DIR, blobID);
+        Metrics.Timer timer = Metrics.start(Metrics.Phase.BLOB_READ);
         try {
-            ObjectInputStream inp = new ObjectInputStream(new FileInputStream(inFile));
-            blobObj = (Blob) inp.readObject();
+            InputStream counted = Metrics.count(openBlob(blobID), timer);
+            BufferedInputStream inp = new BufferedInputStream(counted);
+
+            // blobs written by older builds use Java serialization
+            blobObj = ObjectCodec.isLegacy(inp) ? ObjectCodec.readLegacy(inp, Blob.class) : decode(new DataInputStream(inp));
             inp.close();
+            Metrics.end(timer, Metrics.countOf(counted));
 
-        }  catch (FileNotFoundException e) {
-            e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
         }
         return blobObj;
     }
 
-    // equality based on the byte array of both blob objects (underlying files)
+    // equality of the underlying files. Blob IDs are hashes of the contents,
+    // so equal contents have equal IDs and neither blob has to be read.
     static boolean isFileSame(String blobID1, String blobID2){
-        Blob blob1 = Blob.readBlobFromDisk(blobID1);
-        Blob blob2 = Blob.readBlobFromDisk(blobID2);
-
-        return Arrays.equals(blob1.getContentAsBytes_(), blob2.getContentAsBytes_());
+        return blobID1.equals(blobID2);
     }
 }
 
@@ -1,9 +1,15 @@
 package gitlet;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 
 class Branch implements Serializable {
 
+    // pinned so that repositories written by earlier builds stay readable
+    private static final long serialVersionUID = -8230865095067626980L;
+
     // the branch name
     private String branchName_;
     // the SHA-ID for the head pointer
@@ -36,4 +42,17 @@ class Branch implements Serializable {
     void setBranchPtr_(String branchPtr_) {
         this.branchPtr_ = branchPtr_;
     }
+
+    // write this branch in the binary object format
+    void encode(DataOutputStream out) throws IOException {
+        ObjectCodec.writeString(out, branchName_);
+        ObjectCodec.writeID(out, headCommit_);
+        ObjectCodec.writeID(out, branchPtr_);
+    }
+
+    static Branch decode(DataInputStream in) throws IOException {
+        Branch branch = new Branch(ObjectCodec.readString(in), ObjectCodec.readID(in));
+        branch.setBranchPtr_(ObjectCodec.readID(in));
+        return branch;
+    }
 }
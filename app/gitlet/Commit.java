@@ -1,52 +1,60 @@
 package gitlet;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 public class Commit implements Serializable {
 
+    // pinned so that repositories written by earlier builds stay readable
+    private static final long serialVersionUID = 7843837621431239993L;
+
     private static final DateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
+    // commits read or written by this process; a commit written before trees
+    // is mostly its file map
+    private static final ObjectCache<Commit> cache_ = new ObjectCache<>("commit", 16L << 20, Commit::estimateSize);
+
     // the user message for this commit
     private String commitMessage_;
     // the parent pointer for this commit
     private String parentCommitID_;
+    // the head of the merged branch for a merge commit, otherwise null
+    private String mergeParentCommitID_;
     // this commit's SHA-ID
     private String thisCommitID_;
     // the timestamp for this commit
     private String timestamp_;
-    // mapping from file-name to BlobID (files tracked by this commit)
+    // the tree of the files tracked by this commit
+    private String treeID_;
+    // mapping from file-name to BlobID (files tracked by this commit), only
+    // for commits written before trees, until their tree is written
     private Map<String, String> fileToBlobIDMap_;
 
-    // used to initialize staging area
+    // used to decode commits
     public Commit(){
         parentCommitID_ = null;
-        fileToBlobIDMap_ = new HashMap<>();
     }
 
+    // the initial commit, which tracks no files
     public Commit(String commitMessage, String parentCommitID){
-        commitMessage_ = commitMessage;
-        parentCommitID_ = parentCommitID;
-
-        Date date = new Date();
-        timestamp_ = sdf.format(date);
-
-        fileToBlobIDMap_ = new HashMap<>();
-        thisCommitID_ = getHash();
+        this(commitMessage, parentCommitID, null, Tree.write(Collections.emptyMap()));
     }
 
-    public Commit(String commitMessage, String parentCommitID, Map<String, String> prevCommitFileToBlobMap){
+    // a merge commit has the merged branch's head as its second parent
+    public Commit(String commitMessage, String parentCommitID, String mergeParentCommitID, String treeID){
         commitMessage_ = commitMessage;
         parentCommitID_ = parentCommitID;
+        mergeParentCommitID_ = mergeParentCommitID;
 
         Date date = new Date();
         timestamp_ = sdf.format(date);
 
-        fileToBlobIDMap_ = new HashMap<>(prevCommitFileToBlobMap);
+        treeID_ = treeID;
         thisCommitID_ = getHash();
     }
 
@@ -54,6 +62,10 @@ public class Commit implements Serializable {
     // get the hash for this commit object
     private String getHash(){
         String temp = commitMessage_ + parentCommitID_ + timestamp_;
+        // only merge commits hash their second parent, so other IDs are as before
+        if (mergeParentCommitID_ != null){
+            temp += mergeParentCommitID_;
+        }
         return Utils.sha1(temp);
     }
 
@@ -61,8 +73,47 @@ public class Commit implements Serializable {
         return thisCommitID_;
     }
 
-    Map<String, String> getFileToBlobIDMap_() {
-        return fileToBlobIDMap_;
+    // a new mapping from file-name to BlobID of every tracked file; this
+    // reads the whole tree, so single files are looked up with getBlobID
+    synchronized Map<String, String> getFileToBlobIDMap_() {
+        return treeID_ != null ? Tree.getFiles(treeID_) : new HashMap<>(fileToBlobIDMap_);
+    }
+
+    // the BlobID of a tracked file, or null if the file is not tracked
+    synchronized String getBlobID(String fileName) {
+        return treeID_ != null ? Tree.getBlobID(treeID_, fileName) : fileToBlobIDMap_.get(fileName);
+    }
+
+    // the ID of this commit's tree. The tree of a commit written before
+    // trees is written on first use, which needs the repository lock.
+    synchronized String getTreeID_() {
+        if (treeID_ == null){
+            treeID_ = Tree.write(fileToBlobIDMap_);
+            fileToBlobIDMap_ = null;
+        }
+        return treeID_;
+    }
+
+    // false for a commit written before trees until its tree is written
+    synchronized boolean hasTree() {
+        return treeID_ != null;
+    }
+
+    // the files that differ from this commit to OTHER, sorted by path
+    List<Tree.Change> diffTo(Commit other) {
+        String treeID;
+        String otherTreeID;
+        synchronized (this) {
+            treeID = treeID_;
+        }
+        synchronized (other) {
+            otherTreeID = other.treeID_;
+        }
+
+        if (treeID != null && otherTreeID != null){
+            return Tree.diff(treeID, otherTreeID);
+        }
+        return Tree.diff(getFileToBlobIDMap_(), other.getFileToBlobIDMap_());
     }
 
 
@@ -70,67 +121,164 @@ public class Commit implements Serializable {
         return parentCommitID_;
     }
 
+    String getMergeParentCommitID_() {
+        return mergeParentCommitID_;
+    }
+
+    boolean isMergeCommit() {
+        return mergeParentCommitID_ != null;
+    }
+
+    // the parents of this commit, first parent first
+    List<String> getParentCommitIDs_() {
+        if (parentCommitID_ == null){
+            return Collections.emptyList();
+        }
+        return mergeParentCommitID_ == null ? Collections.singletonList(parentCommitID_) : Arrays.asList(parentCommitID_, mergeParentCommitID_);
+    }
+
     String getTimestamp_() {
         return timestamp_;
     }
 
+    // the timestamp as milliseconds since the epoch
+    long getTimestampMillis() {
+        // SimpleDateFormat is not thread-safe and read-only commands run
+        // concurrently in a daemon
+        try {
+            synchronized (sdf) {
+                return sdf.parse(timestamp_).getTime();
+            }
+        } catch (ParseException e) {
+            throw new IllegalStateException("malformed timestamp " + timestamp_);
+        }
+    }
+
     String getCommitMessage_() {
         return commitMessage_;
     }
 
-    // write commit object to disk
+    // rough number of bytes this commit holds in memory
+    private long estimateSize(){
+        long size = 192 + 2L * commitMessage_.length();
+        if (fileToBlobIDMap_ != null){
+            for (String fileName : fileToBlobIDMap_.keySet()){
+                size += 2L * fileName.length() + 192;
+            }
+        }
+        return size;
+    }
+
+    static ObjectCache<Commit> getCache(){
+        return cache_;
+    }
+
+    // write this commit in the binary object format
+    private void encode(DataOutputStream out) throws IOException {
+        ObjectCodec.writeHeader(out, ObjectCodec.TYPE_COMMIT);
+        ObjectCodec.writeID(out, thisCommitID_);
+        ObjectCodec.writeOptionalID(out, parentCommitID_);
+        ObjectCodec.writeOptionalID(out, mergeParentCommitID_);
+        ObjectCodec.writeString(out, commitMessage_);
+        ObjectCodec.writeString(out, timestamp_);
+        ObjectCodec.writeID(out, getTreeID_());
+    }
+
+    // commits written before version 4 have a single parent, and before
+    // version 5 store their files as a map rather than a tree
+    private static Commit decode(DataInputStream in) throws IOException {
+        int version = ObjectCodec.readHeader(in, ObjectCodec.TYPE_COMMIT);
+
+        Commit commit = new Commit();
+        commit.thisCommitID_ = ObjectCodec.readID(in);
+        commit.parentCommitID_ = ObjectCodec.readOptionalID(in);
+        if (version >= 4){
+            commit.mergeParentCommitID_ = ObjectCodec.readOptionalID(in);
+        }
+        commit.commitMessage_ = ObjectCodec.readString(in);
+        commit.timestamp_ = ObjectCodec.readString(in);
+        if (version >= 5){
+            commit.treeID_ = ObjectCodec.readID(in);
+        } else {
+            commit.fileToBlobIDMap_ = ObjectCodec.readFileMap(in);
+        }
+        return commit;
+    }
+
+    // the encoded commit, as stored in a file or pack
+    byte[] toBytes(){
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            encode(new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Commit fromBytes(byte[] encoded) throws IOException {
+        return decode(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+
+    // write commit object to disk. Like a blob or tree it is written to a
+    // temporary file, synced and then renamed, so a crash never leaves a
+    // partially written commit under its ID.
     void writeCommitToDisk(){
 
         File outFile = Utils.join(Utils.GITLET_DIR, Utils.COMMIT_DIR, thisCommitID_);
+        Metrics.Timer timer = Metrics.start(Metrics.Phase.COMMIT_WRITE);
 
+        File tempFile = null;
         try {
-            outFile.createNewFile();
+            tempFile = File.createTempFile("commit", ".tmp", new File(Utils.GITLET_DIR));
+            try (FileOutputStream fileStream = new FileOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream))) {
+                encode(out);
+                out.flush();
+                fileStream.getFD().sync();
+                Metrics.end(timer, out.size());
+            }
 
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(outFile));
-            out.writeObject(this);
-            out.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            Files.move(tempFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
+            if (tempFile != null){
+                tempFile.delete();
+            }
             e.printStackTrace();
+            return;
         }
+        cache_.put(thisCommitID_, this);
     }
 
-    // read commit object from disk
+    // read commit object from disk, or from the cache if it was read before
     static Commit readCommitFromDisk(String commitID){
+        return cache_.get(commitID, Commit::loadCommit);
+    }
+
+    private static Commit loadCommit(String commitID){
 
         Commit commitObj = null;
         File inFile =  Utils.join(Utils.GITLET_DIR, Utils.COMMIT_DIR, commitID);
+        Metrics.Timer timer = Metrics.start(Metrics.Phase.COMMIT_READ);
         try {
-            ObjectInputStream inp = new ObjectInputStream(new FileInputStream(inFile));
-            commitObj = (Commit) inp.readObject();
+            // loose objects take precedence, otherwise look in the packs
+            InputStream in = inFile.exists() ? new FileInputStream(inFile) : PackFile.openObject(PackFile.TYPE_COMMIT, commitID);
+            InputStream counted = Metrics.count(in, timer);
+            BufferedInputStream inp = new BufferedInputStream(counted);
+
+            // commits written by older builds use Java serialization
+            commitObj = ObjectCodec.isLegacy(inp) ? ObjectCodec.readLegacy(inp, Commit.class) : decode(new DataInputStream(inp));
             inp.close();
+            Metrics.end(timer, Metrics.countOf(counted));
 
-        }  catch (FileNotFoundException e) {
-            e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
         }
         return commitObj;
     }
 
-    // return the blob if it exists
-    Blob blobExist(String blobHash){
-
-        for(String blobID : fileToBlobIDMap_.values()){
-
-            if (blobID.equals(blobHash)){
-                return Blob.readBlobFromDisk(blobID);
-            }
-        }
-
-        return null;
-    }
-
     Blob getBlob(String fileName){
 
-        return Blob.readBlobFromDisk(fileToBlobIDMap_.get(fileName));
+        return Blob.readBlobFromDisk(getBlobID(fileName));
     }
 }
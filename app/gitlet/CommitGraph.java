@@ -0,0 +1,609 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/* The commit-graph caches the shape of history so that traversals do not
+   deserialize every Commit they pass. It is an append-only, memory-mapped file:
+
+   "CGPH", int version, then one fixed-width record per commit:
+   20-byte commit ID, int first-parent position, int second-parent position,
+   long timestamp in milliseconds, int generation number
+
+   Positions refer to earlier records (-1 for none), since a commit is always
+   appended after its parents. The generation number of a root commit is 1 and
+   every other commit's is one more than the largest of its parents'.
+
+   Commits are looked up by ID in commit-graph-lookup, sorted like a pack
+   index so that opening the graph reads nothing up front:
+
+   "CGLK", int version, int count of records covered, 20-byte ID of the last
+   covered record, int[256] fan-out table of cumulative counts keyed on the
+   first ID byte, count sorted 20-byte IDs, count int record positions
+
+   Records appended after the lookup was written are read into a map when
+   the graph is opened; add writes the lookup again once MAX_UNSORTED of them
+   have built up, and gc writes it with the graph. A lookup whose last ID is
+   not the graph's record at that position is from before gc rewrote the
+   graph, and is ignored. */
+class CommitGraph {
+
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final int ID_LENGTH = 20;
+    private static final int RECORD_LENGTH = ID_LENGTH + 4 + 4 + 8 + 4;
+
+    private static final int PARENT_OFFSET = ID_LENGTH;
+    private static final int TIMESTAMP_OFFSET = ID_LENGTH + 8;
+    private static final int GENERATION_OFFSET = ID_LENGTH + 16;
+
+    private static final int LOOKUP_COUNT_OFFSET = 8;
+    private static final int LOOKUP_LAST_OFFSET = 12;
+    private static final int LOOKUP_FANOUT_OFFSET = LOOKUP_LAST_OFFSET + ID_LENGTH;
+    private static final int LOOKUP_IDS_OFFSET = LOOKUP_FANOUT_OFFSET + 256 * 4;
+
+    // number of records past the lookup at which add writes it again
+    static final int MAX_UNSORTED = 1024;
+
+    // the graph of the repository, opened on first use
+    private static CommitGraph graph_;
+
+    private final File file_;
+    private final File lookupFile_;
+    // mapped records, re-mapped after an append
+    private MappedByteBuffer records_;
+    // mapped lookup, null if there is none, and the records it covers
+    private MappedByteBuffer lookup_;
+    private int lookupCount_;
+    // mapping of commit ID to record position for the records after those
+    private final Map<String, Integer> unsorted_ = new HashMap<>();
+
+    private CommitGraph(File file, File lookupFile){
+        file_ = file;
+        lookupFile_ = lookupFile;
+        load(getRecords() != null ? (records_.capacity() - HEADER_LENGTH) / RECORD_LENGTH : 0);
+    }
+
+    static synchronized CommitGraph get(){
+        if (graph_ == null){
+            graph_ = new CommitGraph(Utils.join(Utils.GITLET_DIR, Utils.COMMIT_GRAPH),
+                    Utils.join(Utils.GITLET_DIR, Utils.COMMIT_GRAPH_LOOKUP));
+        }
+        return graph_;
+    }
+
+    // map the lookup if it is one of the first COUNT records' and read the
+    // records it does not cover
+    private void load(int count){
+
+        lookup_ = null;
+        lookupCount_ = 0;
+        unsorted_.clear();
+
+        if (count > 0 && lookupFile_.exists()){
+            try (FileChannel channel = FileChannel.open(lookupFile_.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer lookup = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int covered = lookup.capacity() >= LOOKUP_IDS_OFFSET ? lookup.getInt(LOOKUP_COUNT_OFFSET) : 0;
+
+                if (covered > 0 && covered <= count
+                        && lookup.capacity() == LOOKUP_IDS_OFFSET + (long) covered * (ID_LENGTH + 4)
+                        && lookup.getInt(4) == VERSION
+                        && compareId(lookup, LOOKUP_LAST_OFFSET, Utils.hexToBytes(readID(covered - 1))) == 0){
+                    lookup_ = lookup;
+                    lookupCount_ = covered;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        for (int i = lookupCount_; i < count; i++){
+            unsorted_.put(readID(i), i);
+        }
+    }
+
+    // forget the graph, which is mapped again on next use, after another
+    // process may have rewritten it
+    static synchronized void reset(){
+        graph_ = null;
+    }
+
+    private synchronized MappedByteBuffer getRecords(){
+
+        if (records_ == null && file_.exists()){
+            try (FileChannel channel = FileChannel.open(file_.toPath(), StandardOpenOption.READ)) {
+                records_ = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return records_;
+    }
+
+    private int recordStart(int position){
+        return HEADER_LENGTH + position * RECORD_LENGTH;
+    }
+
+    private String readID(int position){
+        byte[] id = new byte[ID_LENGTH];
+        getRecords().duplicate().position(recordStart(position)).get(id);
+        return Utils.bytesToHex(id);
+    }
+
+    private static int compareId(ByteBuffer buffer, int start, byte[] id){
+        for (int i = 0; i < ID_LENGTH; i++){
+            int cmp = Integer.compare(buffer.get(start + i) & 0xff, id[i] & 0xff);
+            if (cmp != 0){
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    // the record position of COMMITID, or -1 if it is not in the graph
+    private int find(String commitID){
+
+        Integer unsorted = unsorted_.get(commitID);
+        if (unsorted != null){
+            return unsorted;
+        }
+        if (lookup_ == null || commitID.length() != ID_LENGTH * 2){
+            return -1;
+        }
+
+        byte[] id = Utils.hexToBytes(commitID);
+        int first = id[0] & 0xff;
+        int low = first == 0 ? 0 : lookup_.getInt(LOOKUP_FANOUT_OFFSET + (first - 1) * 4);
+        int high = lookup_.getInt(LOOKUP_FANOUT_OFFSET + first * 4) - 1;
+
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            int cmp = compareId(lookup_, LOOKUP_IDS_OFFSET + mid * ID_LENGTH, id);
+
+            if (cmp < 0){
+                low = mid + 1;
+            } else if (cmp > 0){
+                high = mid - 1;
+            } else {
+                return lookup_.getInt(LOOKUP_IDS_OFFSET + lookupCount_ * ID_LENGTH + mid * 4);
+            }
+        }
+        return -1;
+    }
+
+    private int position(String commitID){
+        int position = find(commitID);
+        if (position < 0){
+            throw new IllegalArgumentException("commit " + commitID + " is not in the commit-graph");
+        }
+        return position;
+    }
+
+    boolean contains(String commitID){
+        return find(commitID) >= 0;
+    }
+
+    // the parents of the commit, first parent first
+    List<String> getParents(String commitID){
+        int start = recordStart(position(commitID));
+        List<String> parents = new ArrayList<>(2);
+
+        for (int i = 0; i < 2; i++){
+            int parent = getRecords().getInt(start + PARENT_OFFSET + i * 4);
+            if (parent >= 0){
+                parents.add(readID(parent));
+            }
+        }
+        return parents;
+    }
+
+    // the first parent of the commit, or null for the initial commit
+    String getParent(String commitID){
+        int parent = getRecords().getInt(recordStart(position(commitID)) + PARENT_OFFSET);
+        return parent >= 0 ? readID(parent) : null;
+    }
+
+    long getTimestamp(String commitID){
+        return getRecords().getLong(recordStart(position(commitID)) + TIMESTAMP_OFFSET);
+    }
+
+    int getGeneration(String commitID){
+        return getRecords().getInt(recordStart(position(commitID)) + GENERATION_OFFSET);
+    }
+
+    // the best common ancestors of A and B: those that are not ancestors of
+    // another common ancestor. A criss-cross history has several.
+    //
+    // Both commits are walked at once, highest generation first, marking each
+    // commit with the sides it is reached from. A commit reached from both
+    // sides is a merge base and marks its own ancestors stale; the walk stops
+    // once only stale commits are queued. Since a commit's generation is
+    // larger than its ancestors', every descendant of a commit is visited
+    // before it, so no merge base found is an ancestor of another. The walk
+    // only covers the commits between A and B and their merge bases.
+    List<String> getMergeBases(String a, String b){
+
+        final int fromA = 1;
+        final int fromB = 2;
+        final int stale = 4;
+
+        if (a.equals(b)){
+            return Collections.singletonList(a);
+        }
+
+        Map<Integer, Integer> flags = new HashMap<>();
+        // positions ordered by generation, then by timestamp, newest first
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> {
+            int byGeneration = Integer.compare(generationAt(y), generationAt(x));
+            return byGeneration != 0 ? byGeneration : Long.compare(timestampAt(y), timestampAt(x));
+        });
+        int unstale = 0;
+
+        flags.put(position(a), fromA);
+        flags.put(position(b), fromB);
+        queue.add(position(a));
+        queue.add(position(b));
+        unstale += 2;
+
+        List<String> bases = new ArrayList<>();
+
+        while (unstale > 0){
+            int position = queue.poll();
+            int flag = flags.get(position);
+
+            if ((flag & stale) == 0){
+                unstale--;
+            }
+            if ((flag & (fromA | fromB | stale)) == (fromA | fromB)){
+                bases.add(readID(position));
+                flag |= stale;
+            }
+
+            for (int parent : parentsAt(position)){
+                int parentFlag = flags.getOrDefault(parent, 0);
+                if ((parentFlag | flag) == parentFlag){
+                    continue;
+                }
+
+                // a queued parent is counted again only when it turns stale
+                boolean queued = parentFlag != 0;
+                boolean wasStale = (parentFlag & stale) != 0;
+                flags.put(parent, parentFlag | flag);
+
+                if (!queued){
+                    queue.add(parent);
+                    if ((flag & stale) == 0){
+                        unstale++;
+                    }
+                } else if (!wasStale && (flag & stale) != 0){
+                    unstale--;
+                }
+            }
+        }
+        return bases;
+    }
+
+    // a test of whether a commit is TIP or one of its ancestors, for commits
+    // asked about from the highest generation down, as along a first-parent
+    // chain. TIP's ancestors are walked only down to the generation of the
+    // commit asked about: an ancestor is reached through commits of higher
+    // generation than its own, so it has been found by then if it is one.
+    AncestorTest ancestorsOf(String tip){
+        return new AncestorTest(position(tip));
+    }
+
+    /* The ancestors of a commit, found as far down as they were asked about. */
+    final class AncestorTest {
+        private final Set<Integer> reached_ = new HashSet<>();
+        private final PriorityQueue<Integer> queue_ = new PriorityQueue<>(
+                (x, y) -> Integer.compare(generationAt(y), generationAt(x)));
+
+        private AncestorTest(int tip){
+            reached_.add(tip);
+            queue_.add(tip);
+        }
+
+        boolean contains(String commitID){
+            if (!CommitGraph.this.contains(commitID)){
+                return false;
+            }
+
+            int position = position(commitID);
+            int generation = generationAt(position);
+            while (!queue_.isEmpty() && generationAt(queue_.peek()) > generation){
+                for (int parent : parentsAt(queue_.poll())){
+                    if (reached_.add(parent)){
+                        queue_.add(parent);
+                    }
+                }
+            }
+            return reached_.contains(position);
+        }
+    }
+
+    private int[] parentsAt(int position){
+        int start = recordStart(position);
+        int first = getRecords().getInt(start + PARENT_OFFSET);
+        int second = getRecords().getInt(start + PARENT_OFFSET + 4);
+
+        if (first < 0){
+            return new int[0];
+        }
+        return second < 0 ? new int[]{first} : new int[]{first, second};
+    }
+
+    private int generationAt(int position){
+        return getRecords().getInt(recordStart(position) + GENERATION_OFFSET);
+    }
+
+    private long timestampAt(int position){
+        return getRecords().getLong(recordStart(position) + TIMESTAMP_OFFSET);
+    }
+
+    // append a record for COMMIT, whose parents must already be in the graph.
+    // The file is locked while the record is appended, after the records that
+    // other processes appended since it was mapped are read, so a record's
+    // position is always the number of records before it in the file.
+    // The lookup is written again, under the same lock, once MAX_UNSORTED
+    // records are past it.
+    void add(Commit commit){
+
+        String commitID = commit.getThisCommitID_();
+        if (contains(commitID)){
+            return;
+        }
+
+        synchronized (CommitGraph.class){
+            try (FileChannel channel = FileChannel.open(file_.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // released when the channel is closed; no other channel on the
+                // file is opened meanwhile, as that would release it early
+                channel.lock();
+                int count = refresh(channel);
+
+                if (contains(commitID)){
+                    return;
+                }
+
+                int[] parents = {-1, -1};
+                int generation = 1;
+                List<String> parentIDs = commit.getParentCommitIDs_();
+
+                for (int i = 0; i < parentIDs.size() && i < parents.length; i++){
+                    parents[i] = position(parentIDs.get(i));
+                    generation = Math.max(generation, generationAt(parents[i]) + 1);
+                }
+
+                // a new file starts with the header, and a record cut short
+                // by a crash is written over
+                ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + RECORD_LENGTH);
+                long start = recordStart(count);
+                if (channel.size() < HEADER_LENGTH){
+                    record.put("CGPH".getBytes(StandardCharsets.US_ASCII));
+                    record.putInt(VERSION);
+                    start = 0;
+                }
+                record.put(Utils.hexToBytes(commitID));
+                record.putInt(parents[0]);
+                record.putInt(parents[1]);
+                record.putLong(commit.getTimestampMillis());
+                record.putInt(generation);
+                record.flip();
+
+                while (record.hasRemaining()){
+                    channel.write(record, start + record.position());
+                }
+
+                unsorted_.put(commitID, count);
+                records_ = channel.map(FileChannel.MapMode.READ_ONLY, 0, recordStart(count + 1));
+
+                if (unsorted_.size() >= MAX_UNSORTED){
+                    List<String> ids = new ArrayList<>(count + 1);
+                    for (int i = 0; i <= count; i++){
+                        ids.add(readID(i));
+                    }
+                    writeLookup(lookupFile_, ids);
+                    load(count + 1);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // map the file again through CHANNEL and return the number of whole
+    // records in it. Records appended since the file was last mapped are
+    // added to the unsorted ones, and if gc rewrote the file the lookup is
+    // mapped and the records after it read again.
+    private int refresh(FileChannel channel) throws IOException {
+
+        long size = channel.size();
+        int count = size > HEADER_LENGTH ? (int) ((size - HEADER_LENGTH) / RECORD_LENGTH) : 0;
+        int known = lookupCount_ + unsorted_.size();
+        String lastID = known > 0 && records_ != null ? readID(known - 1) : null;
+
+        records_ = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, recordStart(count)));
+
+        if (count < known || (lastID != null && !lastID.equals(readID(known - 1)))){
+            load(count);
+            return count;
+        }
+        for (int i = known; i < count; i++){
+            unsorted_.put(readID(i), i);
+        }
+        return count;
+    }
+
+    // write the lookup of the records whose IDs are IDS, in record order
+    private static void writeLookup(File file, List<String> ids) throws IOException {
+
+        List<Integer> sorted = new ArrayList<>(ids.size());
+        int[] fanout = new int[256];
+        for (int i = 0; i < ids.size(); i++){
+            sorted.add(i);
+            fanout[Integer.parseInt(ids.get(i).substring(0, 2), 16)]++;
+        }
+        sorted.sort(Comparator.comparing(ids::get));
+        for (int i = 1; i < 256; i++){
+            fanout[i] += fanout[i - 1];
+        }
+
+        File tempFile = File.createTempFile(Utils.COMMIT_GRAPH_LOOKUP + "-", ".tmp", file.getParentFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeBytes("CGLK");
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            out.write(ids.isEmpty() ? new byte[ID_LENGTH] : Utils.hexToBytes(ids.get(ids.size() - 1)));
+            for (int fanoutCount : fanout){
+                out.writeInt(fanoutCount);
+            }
+            for (int position : sorted){
+                out.write(Utils.hexToBytes(ids.get(position)));
+            }
+            for (int position : sorted){
+                out.writeInt(position);
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+    }
+
+    // drop the records of commits deleted by gc. The remaining records keep
+    // their order and are renumbered; gc keeps the ancestors of every commit
+    // it keeps, so no remaining record loses a parent. The lookup is written
+    // for the new records.
+    static synchronized void remove(Set<String> commitIDs){
+
+        CommitGraph graph = get();
+        MappedByteBuffer records = graph.getRecords();
+        if (records == null){
+            return;
+        }
+
+        int count = (records.capacity() - HEADER_LENGTH) / RECORD_LENGTH;
+        int[] newPositions = new int[count];
+        List<String> keptIDs = new ArrayList<>();
+        for (int i = 0; i < count; i++){
+            String commitID = graph.readID(i);
+            newPositions[i] = commitIDs.contains(commitID) ? -1 : keptIDs.size();
+            if (newPositions[i] >= 0){
+                keptIDs.add(commitID);
+            }
+        }
+
+        File tempFile;
+        try {
+            tempFile = File.createTempFile(Utils.COMMIT_GRAPH + "-", ".tmp", graph.file_.getParentFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeBytes("CGPH");
+            out.writeInt(VERSION);
+
+            byte[] id = new byte[ID_LENGTH];
+            for (int i = 0; i < count; i++){
+                if (newPositions[i] < 0){
+                    continue;
+                }
+
+                int start = graph.recordStart(i);
+                records.duplicate().position(start).get(id);
+                out.write(id);
+                for (int p = 0; p < 2; p++){
+                    int parent = records.getInt(start + PARENT_OFFSET + p * 4);
+                    out.writeInt(parent >= 0 ? newPositions[parent] : -1);
+                }
+                out.writeLong(records.getLong(start + TIMESTAMP_OFFSET));
+                out.writeInt(records.getInt(start + GENERATION_OFFSET));
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), graph.file_.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeLookup(graph.lookupFile_, keptIDs);
+        } catch (IOException e) {
+            tempFile.delete();
+            e.printStackTrace();
+        }
+        // mapped again on next use
+        graph_ = null;
+    }
+
+    // add every commit reachable from TIPS that is missing from the graph,
+    // e.g. for repositories created before the graph existed. A commit that
+    // cannot be read is reported and left out, as are the commits after it;
+    // returns false if there was one.
+    boolean addReachable(Collection<String> tips){
+
+        Deque<String> stack = new ArrayDeque<>();
+        for (String tip : tips){
+            if (tip != null && !contains(tip)){
+                stack.push(tip);
+            }
+        }
+
+        // post-order walk so that parents are appended before their children
+        Map<String, Commit> pending = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        while (!stack.isEmpty()){
+            String commitID = stack.peek();
+
+            if (contains(commitID) || missing.contains(commitID)){
+                stack.pop();
+                continue;
+            }
+
+            Commit commit = pending.computeIfAbsent(commitID, Commit::readCommitFromDisk);
+            if (commit == null){
+                System.out.println("Cannot read commit " + commitID + ".");
+                missing.add(commitID);
+                stack.pop();
+                continue;
+            }
+
+            if (commit.getParentCommitIDs_().stream().anyMatch(missing::contains)){
+                missing.add(commitID);
+                stack.pop();
+                pending.remove(commitID);
+                continue;
+            }
+
+            boolean parentsDone = true;
+            for (String parentID : commit.getParentCommitIDs_()){
+                if (!contains(parentID)){
+                    stack.push(parentID);
+                    parentsDone = false;
+                }
+            }
+
+            if (parentsDone){
+                stack.pop();
+                add(commit);
+                pending.remove(commitID);
+            }
+        }
+        return missing.isEmpty();
+    }
+}
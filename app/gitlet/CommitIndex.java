@@ -0,0 +1,344 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/* Sorted index of every commit ID in the repository, used to resolve
+   abbreviated IDs with a binary search:
+
+   "CIDX", int version, int[256] fan-out table of cumulative counts keyed on
+   the first ID byte, then the sorted 20-byte IDs
+
+   A new commit's ID is appended, unsorted, to commit-index-overflow, which
+   lookups read as well. repack and gc merge the overflow into the sorted
+   file, as does add once the overflow holds MAX_OVERFLOW IDs. The overflow
+   is only written while it is locked. */
+class CommitIndex {
+
+    private static final int VERSION = 1;
+    private static final int ID_LENGTH = 20;
+    private static final int FANOUT_OFFSET = 8;
+    private static final int IDS_OFFSET = FANOUT_OFFSET + 256 * 4;
+
+    // number of overflow IDs at which add merges them into the sorted file
+    private static final int MAX_OVERFLOW = 1024;
+
+    // the index of the repository, opened on first use
+    private static CommitIndex index_;
+
+    private final File file_;
+    private final File overflowFile_;
+    private MappedByteBuffer ids_;
+    private int count_;
+    // identifies the sorted file that is mapped, which a merge replaces
+    private Object mappedKey_;
+    // IDs read from the overflow, and the length read
+    private final TreeSet<String> overflow_ = new TreeSet<>();
+    private long overflowLength_;
+
+    private CommitIndex(File file, File overflowFile){
+        file_ = file;
+        overflowFile_ = overflowFile;
+        if (!file_.exists()){
+            try {
+                write(listCommitIDs());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        map();
+    }
+
+    static synchronized CommitIndex get(){
+        if (index_ == null){
+            index_ = new CommitIndex(Utils.join(Utils.GITLET_DIR, Utils.COMMIT_INDEX),
+                    Utils.join(Utils.GITLET_DIR, Utils.COMMIT_INDEX_OVERFLOW));
+        }
+        return index_;
+    }
+
+    // forget the index, so that it is opened again on next use
+    static synchronized void reset(){
+        index_ = null;
+    }
+
+    // every commit stored loose or in a pack
+    private static List<String> listCommitIDs(){
+        List<String> commitIDs = new ArrayList<>(PackFile.listObjects(PackFile.TYPE_COMMIT));
+
+        List<String> looseIDs = Utils.plainFilenamesIn(Utils.join(Utils.GITLET_DIR, Utils.COMMIT_DIR));
+        if (looseIDs != null){
+            commitIDs.addAll(looseIDs);
+        }
+        return commitIDs;
+    }
+
+    // map the sorted file, and read the overflow again from its start
+    private void map(){
+        try (FileChannel channel = FileChannel.open(file_.toPath(), StandardOpenOption.READ)) {
+            mappedKey_ = fileKey();
+            ids_ = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            count_ = ids_.getInt(FANOUT_OFFSET + 255 * 4);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        overflow_.clear();
+        overflowLength_ = 0;
+    }
+
+    // the identity of the sorted file. A merge renames a new file into
+    // place, which cannot share the inode of the one still mapped.
+    private Object fileKey() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file_.toPath(), BasicFileAttributes.class);
+        return attributes.fileKey() != null ? attributes.fileKey() : attributes.lastModifiedTime();
+    }
+
+    // catch up with merges and appends made since the index was last read
+    private void refresh(){
+        try {
+            if (!fileKey().equals(mappedKey_)){
+                map();
+            }
+            if (overflowFile_.length() != overflowLength_){
+                try (FileChannel channel = FileChannel.open(overflowFile_.toPath(), StandardOpenOption.READ)) {
+                    readOverflow(channel);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // read the IDs appended to the overflow since it was last read
+    private void readOverflow(FileChannel channel) throws IOException {
+        long length = channel.size() - channel.size() % ID_LENGTH;
+        if (length < overflowLength_){
+            // merged into a sorted file that is not mapped yet
+            map();
+        }
+
+        ByteBuffer ids = ByteBuffer.allocate((int) (length - overflowLength_));
+        while (ids.hasRemaining() && channel.read(ids, overflowLength_ + ids.position()) >= 0){
+            // read on
+        }
+        ids.flip();
+
+        byte[] id = new byte[ID_LENGTH];
+        while (ids.remaining() >= ID_LENGTH){
+            ids.get(id);
+            overflow_.add(Utils.bytesToHex(id));
+        }
+        overflowLength_ = length;
+    }
+
+    private String idAt(int position){
+        byte[] id = new byte[ID_LENGTH];
+        ids_.duplicate().position(IDS_OFFSET + position * ID_LENGTH).get(id);
+        return Utils.bytesToHex(id);
+    }
+
+    private int compareId(int position, byte[] id){
+        int base = IDS_OFFSET + position * ID_LENGTH;
+        for (int i = 0; i < ID_LENGTH; i++){
+            int cmp = Integer.compare(ids_.get(base + i) & 0xff, id[i] & 0xff);
+            if (cmp != 0){
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    // every indexed commit ID, in sorted order
+    synchronized List<String> getCommitIDs(){
+        refresh();
+        return sortedIDs();
+    }
+
+    private List<String> sortedIDs(){
+        List<String> commitIDs = new ArrayList<>(count_ + overflow_.size());
+        for (int i = 0; i < count_; i++){
+            commitIDs.add(idAt(i));
+        }
+        return merge(commitIDs, overflow_, Integer.MAX_VALUE);
+    }
+
+    // merge the sorted IDS and OVERFLOW, dropping duplicates, up to LIMIT IDs
+    private static List<String> merge(List<String> ids, SortedSet<String> overflow, int limit){
+        if (overflow.isEmpty()){
+            return ids.size() > limit ? new ArrayList<>(ids.subList(0, limit)) : ids;
+        }
+
+        List<String> merged = new ArrayList<>(ids.size() + overflow.size());
+        Iterator<String> others = overflow.iterator();
+        String other = others.next();
+        for (String id : ids){
+            if (merged.size() >= limit){
+                break;
+            }
+            while (other != null && other.compareTo(id) < 0 && merged.size() < limit){
+                merged.add(other);
+                other = others.hasNext() ? others.next() : null;
+            }
+            if (other != null && other.equals(id)){
+                other = others.hasNext() ? others.next() : null;
+            }
+            if (merged.size() < limit){
+                merged.add(id);
+            }
+        }
+        while (other != null && merged.size() < limit){
+            merged.add(other);
+            other = others.hasNext() ? others.next() : null;
+        }
+        return merged;
+    }
+
+    // return up to LIMIT commit IDs that start with PREFIX, in sorted order
+    synchronized List<String> findByPrefix(String prefix, int limit){
+
+        List<String> matches = new ArrayList<>();
+
+        if (prefix.isEmpty() || prefix.length() > 2 * ID_LENGTH || !prefix.matches("[0-9a-f]+")){
+            return matches;
+        }
+
+        refresh();
+
+        // the smallest ID with this prefix
+        StringBuilder lowest = new StringBuilder(prefix);
+        while (lowest.length() < 2 * ID_LENGTH){
+            lowest.append('0');
+        }
+        byte[] lowID = Utils.hexToBytes(lowest.toString());
+
+        // narrow the search to the IDs sharing the first byte
+        int first = lowID[0] & 0xff;
+        int low = first == 0 ? 0 : ids_.getInt(FANOUT_OFFSET + (first - 1) * 4);
+        int high = count_;
+
+        while (low < high){
+            int mid = (low + high) >>> 1;
+            if (compareId(mid, lowID) < 0){
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        for (int i = low; i < count_ && matches.size() < limit; i++){
+            String commitID = idAt(i);
+            if (!commitID.startsWith(prefix)){
+                break;
+            }
+            matches.add(commitID);
+        }
+        // hex digits sort before any character that follows them
+        return merge(matches, overflow_.subSet(prefix, prefix + "g"), limit);
+    }
+
+    // rewrite the index from the commits stored now, after gc deleted some
+    static synchronized void rebuild(){
+        get().rewrite(true);
+    }
+
+    // merge the overflow into the sorted file, as repack does
+    static synchronized void compact(){
+        get().rewrite(false);
+    }
+
+    // write a sorted file of every commit stored, if STORED, or else of
+    // every indexed commit, and empty the overflow
+    private synchronized void rewrite(boolean stored){
+        try (FileChannel channel = openOverflow()) {
+            readOverflow(channel);
+            write(stored ? listCommitIDs() : sortedIDs());
+            channel.truncate(0);
+            map();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // open and lock the overflow for writing. The lock is released when the
+    // channel is closed; no other channel on it may be opened meanwhile, as
+    // that would release it early.
+    private FileChannel openOverflow() throws IOException {
+        FileChannel channel = FileChannel.open(overflowFile_.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    // add a newly written commit to the index
+    synchronized void add(String commitID){
+        if (findByPrefix(commitID, 1).contains(commitID)){
+            return;
+        }
+
+        try (FileChannel channel = openOverflow()) {
+            readOverflow(channel);
+            if (overflow_.contains(commitID)){
+                return;
+            }
+
+            // an ID cut short by a crash is written over
+            ByteBuffer id = ByteBuffer.wrap(Utils.hexToBytes(commitID));
+            while (id.hasRemaining()){
+                channel.write(id, overflowLength_ + id.position());
+            }
+            overflow_.add(commitID);
+            overflowLength_ += ID_LENGTH;
+
+            if (overflow_.size() >= MAX_OVERFLOW){
+                write(sortedIDs());
+                channel.truncate(0);
+                map();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void write(List<String> commitIDs) throws IOException {
+
+        Collections.sort(commitIDs);
+
+        int[] fanout = new int[256];
+        for (String commitID : commitIDs){
+            fanout[Integer.parseInt(commitID.substring(0, 2), 16)]++;
+        }
+        for (int i = 1; i < 256; i++){
+            fanout[i] += fanout[i - 1];
+        }
+
+        // write to a temporary file first so readers never see a partial index
+        File tempFile = File.createTempFile(Utils.COMMIT_INDEX + "-", ".tmp", file_.getParentFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeBytes("CIDX");
+            out.writeInt(VERSION);
+            for (int count : fanout){
+                out.writeInt(count);
+            }
+            for (String commitID : commitIDs){
+                out.write(Utils.hexToBytes(commitID));
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        Files.move(tempFile.toPath(), file_.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
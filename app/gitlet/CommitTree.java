@@ -1,23 +1,177 @@
 package gitlet;
 
 import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 class CommitTree implements Serializable {
 
-    // the current branch
+    // pinned so that repositories written by earlier builds stay readable
+    private static final long serialVersionUID = 3209353120529947499L;
+
+    // the parts below are read on first use by synchronized accessors, as
+    // a daemon runs read-only commands concurrently
+
+    // the current branch, read on first use
     private Branch activeBranch_;
-    // mapping of all branch names to branch objects
+    // mapping of branch names to the branch objects read so far
     private Map<String, Branch> branchNameToBranch_;
-    // file status for potential commits
+    // file status for potential commits, read on first use
     private StagingArea stagingArea_;
 
+    // whether every branch has been read into branchNameToBranch_
+    private transient boolean allBranchesLoaded_;
+    // branches removed by this command
+    private transient Set<String> deletedBranches_;
+    // the state as last read from or written to disk, so that only
+    // the parts a command changed are written back
+    private transient String savedActiveBranch_;
+    private transient Map<String, String> savedBranches_;
+    private transient byte[] savedStagingArea_;
+    // set when the state came from the single-file layout of older builds
+    private transient boolean fromLegacyFile_;
+
     private CommitTree(){
         branchNameToBranch_ = new HashMap<>();
-        Commit temp = new Commit();
-        stagingArea_ = new StagingArea(temp);
+        initTransientState();
+    }
+
+    private void initTransientState(){
+        deletedBranches_ = new HashSet<>();
+        savedBranches_ = new HashMap<>();
+    }
+
+    // open the repository state, or return null if there is no repository.
+    // Nothing is read until a command asks for it.
+    static CommitTree open(){
+
+        if (RepositoryState.exists()){
+            return new CommitTree();
+        }
+
+        File legacyFile = Utils.join(Utils.GITLET_DIR, Utils.COMMIT_TREE);
+        if (!legacyFile.exists()){
+            return null;
+        }
+
+        CommitTree tree = null;
+        try (BufferedInputStream inp = new BufferedInputStream(new FileInputStream(legacyFile))) {
+            // trees written by older builds use Java serialization
+            tree = ObjectCodec.isLegacy(inp) ? ObjectCodec.readLegacy(inp, CommitTree.class) : decode(new DataInputStream(inp));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        // everything is loaded and nothing is saved yet in the split layout
+        tree.initTransientState();
+        tree.allBranchesLoaded_ = true;
+        tree.fromLegacyFile_ = true;
+        return tree;
+    }
+
+    // read a commit tree written in the single-file binary format
+    private static CommitTree decode(DataInputStream in) throws IOException {
+        int version = ObjectCodec.readHeader(in, ObjectCodec.TYPE_COMMIT_TREE);
+
+        CommitTree ct = new CommitTree();
+        String activeBranchName = ObjectCodec.readString(in);
+
+        int branchCount = (int) ObjectCodec.readVarint(in);
+        for (int i = 0; i < branchCount; i++){
+            Branch branch = Branch.decode(in);
+            ct.addBranchMapping(branch.getBranchName_(), branch);
+        }
+
+        // the active branch is the same object as its entry in the mapping
+        ct.setActiveBranch_(ct.branchNameToBranch_.get(activeBranchName));
+        ct.stagingArea_ = StagingArea.decode(in, version);
+        return ct;
+    }
+
+    // write back the parts of the state that this command changed. It holds
+    // the same monitor as the accessors, which add to the branches it walks.
+    synchronized void save(){
+
+        if (activeBranch_ != null && !activeBranch_.getBranchName_().equals(savedActiveBranch_)){
+            RepositoryState.writeHead(activeBranch_.getBranchName_());
+            savedActiveBranch_ = activeBranch_.getBranchName_();
+        }
+
+        for (String branchName : deletedBranches_){
+            RepositoryState.deleteBranch(branchName);
+            savedBranches_.remove(branchName);
+        }
+        deletedBranches_.clear();
+
+        for (Branch branch : branchNameToBranch_.values()){
+            String pointers = branchPointers(branch);
+
+            if (!pointers.equals(savedBranches_.get(branch.getBranchName_()))){
+                RepositoryState.writeBranch(branch);
+                savedBranches_.put(branch.getBranchName_(), pointers);
+            }
+        }
+
+        if (stagingArea_ != null){
+            byte[] encoded = RepositoryState.encodeStagingArea(stagingArea_);
+
+            if (!Arrays.equals(encoded, savedStagingArea_)){
+                RepositoryState.writeStagingArea(encoded);
+                savedStagingArea_ = encoded;
+            }
+        }
+
+        if (fromLegacyFile_){
+            Utils.join(Utils.GITLET_DIR, Utils.COMMIT_TREE).delete();
+            fromLegacyFile_ = false;
+        }
+    }
+
+    private static String branchPointers(Branch branch){
+        return branch.getHeadCommit_() + " " + branch.getBranchPtr_();
+    }
+
+    private synchronized Branch getActiveBranch(){
+        if (activeBranch_ == null){
+            savedActiveBranch_ = RepositoryState.readHead();
+            activeBranch_ = getBranch(savedActiveBranch_);
+        }
+        return activeBranch_;
+    }
+
+    // the branch with the given name, or null if there is none
+    private synchronized Branch getBranch(String branchName){
+
+        if (!branchNameToBranch_.containsKey(branchName) && !allBranchesLoaded_ && !deletedBranches_.contains(branchName)){
+            Branch branch = RepositoryState.readBranch(branchName);
+
+            if (branch != null){
+                branchNameToBranch_.put(branchName, branch);
+                savedBranches_.put(branchName, branchPointers(branch));
+            }
+        }
+        return branchNameToBranch_.get(branchName);
+    }
+
+    // mapping of all branch names to branch objects
+    private synchronized Map<String, Branch> getBranches(){
+
+        if (!allBranchesLoaded_){
+            for (String branchName : RepositoryState.listBranchNames()){
+                getBranch(branchName);
+            }
+            allBranchesLoaded_ = true;
+        }
+        return branchNameToBranch_;
+    }
+
+    private synchronized StagingArea getStagingArea(){
+        if (stagingArea_ == null){
+            stagingArea_ = RepositoryState.readStagingArea();
+            savedStagingArea_ = RepositoryState.encodeStagingArea(stagingArea_);
+        }
+        return stagingArea_;
     }
 
     private void setActiveBranch_(Branch activeBranch) {
@@ -25,52 +179,50 @@ class CommitTree implements Serializable {
     }
 
     private void addBranchMapping(String branchName, Branch newBranch){
+        deletedBranches_.remove(branchName);
         branchNameToBranch_.put(branchName, newBranch);
     }
 
     private void deleteBranchMapping(String branchName){
+        deletedBranches_.add(branchName);
         branchNameToBranch_.remove(branchName);
     }
 
-    private void setStagingAreaMapping(Map<String, String> prevFileToBlobMap){
-        stagingArea_.setPrevCommitFileToBlobIDMap(prevFileToBlobMap);
-    }
-
     // head commit on the active branch
     private Commit getHeadCommit(){
-        return Commit.readCommitFromDisk(activeBranch_.getHeadCommit_());
+        return Commit.readCommitFromDisk(getActiveBranch().getHeadCommit_());
     }
 
-    private boolean checkPrefixMatch(String prefix, String commitID){
-
-        // prefix must be less than 40 characters (user input)
-        // since the hash is consistently 40 characters
-        if (prefix.length() < 40){
-            String commitPrefix = commitID.substring(0, prefix.length());
-            return commitPrefix.equals(prefix);
-        }
-        return false;
+    // the commit-graph, brought up to date with the history of the given
+    // commits, or null if a commit in it cannot be read, which is reported
+    private CommitGraph getCommitGraph(String... tips){
+        CommitGraph graph = CommitGraph.get();
+        return graph.addReachable(Arrays.asList(tips)) ? graph : null;
     }
 
-    private void logPrinter(String commitHash){
-        while (commitHash != null){
-
-            Commit currCommit = Commit.readCommitFromDisk(commitHash);
-            System.out.println("===");
-            System.out.println("Commit " + currCommit.getThisCommitID_());
-            System.out.println(currCommit.getTimestamp_());
-            System.out.println(currCommit.getCommitMessage_());
-            System.out.println();
+    // a buffer in front of the command's output, which is written as it fills
+    private static Writer logWriter(){
+        return new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+    }
 
-            commitHash = currCommit.getParentCommitID_();
+    private static void printCommit(Writer out, Commit commit) throws IOException {
+        out.write("===\n");
+        out.write("Commit " + commit.getThisCommitID_() + "\n");
+        if (commit.isMergeCommit()){
+            out.write("Merge: " + commit.getParentCommitID_().substring(0, 7) + " " + commit.getMergeParentCommitID_().substring(0, 7) + "\n");
         }
+        out.write(commit.getTimestamp_() + "\n");
+        out.write(commit.getCommitMessage_() + "\n");
+        out.write("\n");
     }
 
     // overwrite file with contents of Blob from a previous commit
     private void overwriteWorkingDir(Commit commit, String fileName){
         Blob blob = commit.getBlob(fileName);
+        Metrics.Timer timer = Metrics.start(Metrics.Phase.WORKING_FILE_WRITE);
 
         try {
+            WorkingTree.createParents(fileName);
             File file = new File(fileName);
             // false to overwrite file
             FileOutputStream fileStream = new FileOutputStream(file, false);
@@ -78,6 +230,7 @@ class CommitTree implements Serializable {
             byte[] blobContents = blob.getContentAsBytes_();
             fileStream.write(blobContents);
             fileStream.close();
+            Metrics.end(timer, blobContents.length);
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -85,134 +238,140 @@ class CommitTree implements Serializable {
         }
     }
 
-    // return the Commit object with the given commitID, otherwise return null
+    // return the Commit object with the given (possibly abbreviated) commitID,
+    // otherwise report why no single commit matches and return null
     private Commit findCommitNode(String commitID){
 
-        // search all branches for commitID
-        boolean foundCommit = false;
-        String targetCommitID = null;
-
-        for (Branch branch : branchNameToBranch_.values()){
-            targetCommitID = branch.getBranchPtr_();
-
-            while(targetCommitID != null){
-
-                Commit commit = Commit.readCommitFromDisk(targetCommitID);
-
-                if (commit.getThisCommitID_().equals(commitID) || checkPrefixMatch(commitID, commit.getThisCommitID_())){
-                    foundCommit = true;
-                    break;
-                }
+        List<String> matches = CommitIndex.get().findByPrefix(commitID, 2);
 
-                targetCommitID = commit.getParentCommitID_();
-            }
+        if (matches.isEmpty()){
+            System.out.println("No commit with that id exists.");
+            return null;
+        }
 
-            if (foundCommit){
-                break;
-            }
+        if (matches.size() > 1){
+            System.out.println("Ambiguous commit id.");
+            return null;
         }
 
-        return targetCommitID != null ? Commit.readCommitFromDisk(targetCommitID) : null;
+        return Commit.readCommitFromDisk(matches.get(0));
     }
 
     private boolean mergeFailureCases(String branchName){
 
-        if (!stagingArea_.getFileToAdd_().isEmpty() || !stagingArea_.getFileToRemove_().isEmpty()){
+        if (!getStagingArea().getFileToAdd_().isEmpty() || !getStagingArea().getFileToRemove_().isEmpty()){
             System.out.println("You have uncommitted changes.");
             return true;
         }
 
-        if (!branchNameToBranch_.containsKey(branchName)){
+        if (getBranch(branchName) == null){
             System.out.println("A branch with that name does not exist.");
             return true;
         }
 
-        if (activeBranch_.getBranchName_().equals(branchName)){
+        if (getActiveBranch().getBranchName_().equals(branchName)){
             System.out.println("Cannot merge a branch with itself.");
             return true;
         }
 
         // check for un-tracked files
-        Branch mergeBranch = branchNameToBranch_.get(branchName);
+        Branch mergeBranch = getBranch(branchName);
         Commit mergeCommit = Commit.readCommitFromDisk(mergeBranch.getHeadCommit_());
 
-        List<String> workingDirFiles = Utils.plainFilenamesIn(Utils.WORKING_DIR);
-        for (String file : workingDirFiles){
+        if (hasUntrackedFileInTheWay(getHeadCommit().diffTo(mergeCommit))){
+            System.out.println("There is an untracked file in the way; delete it or add it first.");
+            return true;
+        }
+
+        return false;
+    }
 
-            if (!stagingArea_.getPrevCommitFileToBlobIDMap().containsKey(file) && mergeCommit.getFileToBlobIDMap_().containsKey(file)){
-                System.out.println("There is an untracked file in the way; delete it or add it first.");
+    // true if a file that CHANGES, the diff from the head commit, would add
+    // is in the working directory untracked. Files the head commit tracks
+    // are not in the diff unless they change.
+    private static boolean hasUntrackedFileInTheWay(List<Tree.Change> changes){
+        for (Tree.Change change : changes){
+            if (change.getOldBlobID_() == null && new File(change.getPath_()).isFile()){
                 return true;
             }
         }
-
         return false;
     }
 
 
-    // find the earliest common ancestor in the CommitTree with givenBranch
-    // and the active branch
+    // find the latest common ancestor of givenBranch and the active branch.
+    // In a criss-cross history there are several, none an ancestor of
+    // another; the one found first, the most recent, is used. Null if a
+    // commit in their history cannot be read.
     private Commit getSplitNode(String givenBranch){
 
-        Set<String> commitIDSet = new HashSet<>();
-
-        // for complete search, start search from the branch pointer
-        // in case the head and branch pointer diff
-        String branchPtr = activeBranch_.getBranchPtr_();
-
-        while (branchPtr != null){
-            Commit commit = Commit.readCommitFromDisk(branchPtr);
-            commitIDSet.add(commit.getThisCommitID_());
-
-            branchPtr = commit.getParentCommitID_();
+        String branchPtr = getActiveBranch().getBranchPtr_();
+        String givenBranchPtr = getBranch(givenBranch).getBranchPtr_();
+        CommitGraph graph = getCommitGraph(branchPtr, givenBranchPtr);
+        if (graph == null){
+            return null;
         }
 
-        String givenBranchPtr = branchNameToBranch_.get(givenBranch).getBranchPtr_();
+        List<String> mergeBases = graph.getMergeBases(branchPtr, givenBranchPtr);
+        return Commit.readCommitFromDisk(mergeBases.get(0));
+    }
 
-        while (givenBranchPtr != null){
-            if (commitIDSet.contains(givenBranchPtr)){
-                break;
-            }
+    private static byte[] blobContents(String blobID){
+        return blobID != null ? Blob.readBlobFromDisk(blobID).getContentAsBytes_() : new byte[0];
+    }
 
-            Commit commit = Commit.readCommitFromDisk(givenBranchPtr);
-            givenBranchPtr = commit.getParentCommitID_();
-        }
+    // merge the current and given versions of FILE, both changed since the
+    // split point, line by line into the working file. Returns false if the
+    // file has conflicts; a file removed on one side conflicts as a whole.
+    private boolean mergeFile(String file, String blobIDSplit, String blobIDCurr, String blobIDMerge){
 
-        return Commit.readCommitFromDisk(givenBranchPtr);
-    }
+        byte[] currContents = blobContents(blobIDCurr);
+        byte[] mergeContents = blobContents(blobIDMerge);
+        WorkingTree.createParents(file);
 
-    private String getBlobID(String fileName, Commit node){
-        return node.getFileToBlobIDMap_().get(fileName);
-    }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
 
-    private boolean isFilePresent(String fileName, Commit node){
-        return node.getFileToBlobIDMap_().containsKey(fileName);
+            if (blobIDCurr == null || blobIDMerge == null){
+                ThreeWayMerge.writeConflict(currContents, mergeContents, out);
+                return false;
+            }
+            return ThreeWayMerge.merge(blobContents(blobIDSplit), currContents, mergeContents, out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
     }
 
+    // read, hash and write the blobs of all files staged for addition in
+    // parallel, returning the mapping from file-name to BlobID. Every blob is
+    // on disk when this returns, so the commit can be written after it.
+    private Map<String, String> storeStagedFiles(){
 
-    // write the contents of the current and merge branch with merge conflict separators
-    private void mergeConflictLogger(Blob currBlob, Blob mergeBlob, String file){
+        StatCache statCache = StatCache.get();
+        Map<String, String> fileToBlobID = new ConcurrentHashMap<>();
+        // blobs written by this commit, so identical files are written once
+        Set<String> writtenBlobs = ConcurrentHashMap.newKeySet();
 
-        byte[] currBranchContent = currBlob != null ? currBlob.getContentAsBytes_() : new byte[0];
-        byte[] mergeBranchContent = mergeBlob != null ? mergeBlob.getContentAsBytes_() : new byte[0];
+        getStagingArea().getFileToAdd_().parallelStream().forEach(fileName -> {
 
-        byte[] firstSeparator = "<<<<<<< HEAD\n".getBytes();
-        byte[] secondSeparator = "=======\n".getBytes();
-        byte[] thirdSeparator = ">>>>>>>\n".getBytes();
+            // unchanged files are not read again, and stored content is not
+            // rewritten
+            String blobID = statCache.getCachedBlobID(fileName);
 
-        byte[] allByteArray = new byte[firstSeparator.length + currBranchContent.length + secondSeparator.length + mergeBranchContent.length + thirdSeparator.length];
+            if (blobID == null || !Blob.exists(blobID)){
+                Blob blob = new Blob(fileName);
+                blobID = blob.getContentHash_();
+                statCache.record(fileName, blobID);
 
-        ByteBuffer buff = ByteBuffer.wrap(allByteArray);
-        buff.put(firstSeparator);
-        buff.put(currBranchContent);
-        buff.put(secondSeparator);
-        buff.put(mergeBranchContent);
-        buff.put(thirdSeparator);
+                if (writtenBlobs.add(blobID) && !Blob.exists(blobID)){
+                    blob.writeBlobToDisk();
+                }
+            }
 
-        byte[] combined = buff.array();
+            fileToBlobID.put(fileName, blobID);
+        });
 
-        // write merge conflict output to conflict file
-        File fileObj = new File(file);
-        Utils.writeContents(fileObj, combined);
+        return fileToBlobID;
     }
 
     // called at initialization only
@@ -220,6 +379,9 @@ class CommitTree implements Serializable {
 
         Commit initCommit = new Commit("initial commit", null);
         initCommit.writeCommitToDisk();
+        CommitGraph.get().add(initCommit);
+        CommitIndex.get().add(initCommit.getThisCommitID_());
+        MessageIndex.get().add(initCommit);
 
         Branch initBranch = new Branch("master", initCommit.getThisCommitID_());
 
@@ -227,154 +389,299 @@ class CommitTree implements Serializable {
 
         ct.setActiveBranch_(initBranch);
         ct.addBranchMapping(initBranch.getBranchName_(), initBranch);
-        ct.setStagingAreaMapping(initCommit.getFileToBlobIDMap_());
+        ct.allBranchesLoaded_ = true;
+        ct.stagingArea_ = new StagingArea(initCommit);
 
         return ct;
     }
 
+    // stage a file, or every file in a directory that is not ignored. The
+    // files of a directory come from the watch index, which only looks at
+    // those that changed when a watcher runs.
     void add(String fileName){
 
-        List<String> filesInDir = Utils.plainFilenamesIn(Utils.WORKING_DIR);
-
-        if (!filesInDir.contains(fileName)){
-            System.out.println("File does not exist.");
+        String path = WorkingTree.toPath(fileName);
+        if (path != null && (path.isEmpty() || new File(path).isDirectory())){
+            WatchIndex index = WatchIndex.get();
+            for (String file : index.listFiles(path)){
+                addFile(file, index.getBlobID(file));
+            }
             return;
         }
 
-        // remove file from un-tracked status when added again
-        stagingArea_.getFileToRemove_().remove(fileName);
-
-        try {
-            File fileToAdd = new File(fileName);
-            byte[] fileToAddBytes = Files.readAllBytes(fileToAdd.toPath());
-            String fileHash = Utils.sha1(fileToAddBytes);
-
-            Commit currCommit = getHeadCommit();
+        // the stat cache only hashes the file if it changed since last seen
+        addFile(path, path != null ? StatCache.get().getBlobID(path) : null);
+    }
 
-            // and we use the blobID for the argument file
-            // to check if file content is same
-            Blob currBlob = currCommit.blobExist(fileHash);
+    private void addFile(String fileName, String fileHash){
 
-            // do not add file if identical data or filename
-            // if identical data, currBlob will be null
-            if (currBlob != null && currBlob.getFileName_().equals(fileToAdd.getName())){
-                return;
-            }
+        if (fileHash == null){
+            System.out.println("File does not exist.");
+            return;
+        }
 
-            // add file to staging area if control reaches here
-            stagingArea_.getFileToAdd_().add(fileName);
+        // remove file from un-tracked status when added again
+        getStagingArea().getFileToRemove_().remove(fileName);
 
-        } catch (IOException e) {
-            e.printStackTrace();
+        // do not add the file if the head commit tracks the same contents
+        // under the same name, and unstage it if it was added before
+        if (fileHash.equals(getHeadCommit().getBlobID(fileName))){
+            getStagingArea().getFileToAdd_().remove(fileName);
+            return;
         }
+
+        // add file to staging area if control reaches here
+        getStagingArea().getFileToAdd_().add(fileName);
     }
 
     void commit(String commitMessage){
+        commit(commitMessage, null);
+    }
+
+    // commit the staging area; a merge commit records the merged branch's
+    // head as its second parent, and is made even if no files changed
+    private void commit(String commitMessage, String mergeParentID){
         if (commitMessage.length() == 0){
             System.out.println("Please enter a commit message.");
             return;
         }
 
-        if (stagingArea_.getFileToAdd_().isEmpty() && stagingArea_.getFileToRemove_().isEmpty()){
+        if (mergeParentID == null && getStagingArea().getFileToAdd_().isEmpty() && getStagingArea().getFileToRemove_().isEmpty()){
             System.out.println("No changes added to the commit.");
             return;
         }
 
-        for (String fileName : stagingArea_.getFileToRemove_()){
-            stagingArea_.getPrevCommitFileToBlobIDMap().remove(fileName);
+        CommitGraph graph = getCommitGraph(getActiveBranch().getHeadCommit_(), mergeParentID);
+        if (graph == null){
+            return;
         }
 
-        for (String fileName : stagingArea_.getFileToAdd_()){
-
-            Blob blob = new Blob(fileName);
-            blob.writeBlobToDisk();
-
-            stagingArea_.getPrevCommitFileToBlobIDMap().put(blob.getFileName_(), blob.getContentHash_());
+        // the tracked files that change, null for those removed; only the
+        // trees holding them are written
+        Map<String, String> changes = new HashMap<>();
+        for (String fileName : getStagingArea().getFileToRemove_()){
+            changes.put(fileName, null);
         }
+        changes.putAll(storeStagedFiles());
+        String treeID = getStagingArea().writeTree(changes);
 
         // write commit to disk
-        Commit commit = new Commit(commitMessage, getHeadCommit().getThisCommitID_(), stagingArea_.getPrevCommitFileToBlobIDMap());
+        Commit commit = new Commit(commitMessage, getActiveBranch().getHeadCommit_(), mergeParentID, treeID);
         commit.writeCommitToDisk();
+        graph.add(commit);
+        CommitIndex.get().add(commit.getThisCommitID_());
+        MessageIndex.get().add(commit);
 
         // clear the staging area
         stagingArea_ = new StagingArea(commit);
 
         // change pointers for commit on active branch
-        if (activeBranch_.getBranchPtr_().equals(activeBranch_.getHeadCommit_())){
-            activeBranch_.setHeadCommit_(commit.getThisCommitID_());
-            activeBranch_.setBranchPtr_(commit.getThisCommitID_());
+        if (getActiveBranch().getBranchPtr_().equals(getActiveBranch().getHeadCommit_())){
+            getActiveBranch().setHeadCommit_(commit.getThisCommitID_());
+            getActiveBranch().setBranchPtr_(commit.getThisCommitID_());
         } else {
             // NOTE :: control should not reach here as detached head not implemented
             // in that case head and branch pointer will differ and we add commit on previous commit node
-            activeBranch_.setHeadCommit_(commit.getThisCommitID_());
+            getActiveBranch().setHeadCommit_(commit.getThisCommitID_());
         }
     }
 
      void removeFile(String fileName){
 
-        Commit headCommit = Commit.readCommitFromDisk(activeBranch_.getHeadCommit_());
+        Commit headCommit = Commit.readCommitFromDisk(getActiveBranch().getHeadCommit_());
+
+        // a file outside the working directory is never tracked
+        fileName = WorkingTree.toPath(fileName);
+        boolean tracked = fileName != null && headCommit.getBlobID(fileName) != null;
 
-        if (!stagingArea_.getFileToAdd_().contains(fileName) && !headCommit.getFileToBlobIDMap_().containsKey(fileName)){
+        if (!getStagingArea().getFileToAdd_().contains(fileName) && !tracked){
             System.out.println("No reason to remove the file.");
             return;
         }
 
-        if (headCommit.getFileToBlobIDMap_().containsKey(fileName)){
+        if (tracked){
 
-            Utils.restrictedDelete(fileName);
-            stagingArea_.getFileToRemove_().add(fileName);
+            WorkingTree.deleteFile(fileName);
+            getStagingArea().getFileToRemove_().add(fileName);
         }
 
-        stagingArea_.getFileToAdd_().remove(fileName);
+        getStagingArea().getFileToAdd_().remove(fileName);
     }
 
-    void log(){
-        logPrinter(activeBranch_.getHeadCommit_());
-    }
+    // print the first-parent history from TO (a branch or commit, or the
+    // head commit if null or empty), newest first, leaving out commits newer
+    // than UNTIL and, if PATH is given, those that did not change it. The
+    // walk stops after LIMIT commits are printed (no limit if negative), at
+    // the first commit older than SINCE, and at the first commit that
+    // EXCLUDED (no commit if null, the head commit if empty) reaches, so
+    // that a short log reads only the commits it prints.
+    void log(String excluded, String to, int limit, long since, long until, String path){
+
+        String commitHash = resolveCommitID(to);
+        String excludedHash = excluded == null ? null : resolveCommitID(excluded);
+        if (commitHash == null || (excluded != null && excludedHash == null)){
+            return;
+        }
 
-    void globalLog(){
+        if (path != null){
+            path = WorkingTree.toPath(path);
+            if (path == null || path.isEmpty()){
+                System.out.println("Incorrect operands.");
+                return;
+            }
+        }
 
-        for (Branch branch : branchNameToBranch_.values()){
+        CommitGraph.AncestorTest excludedAncestors = null;
+        if (excludedHash != null){
+            CommitGraph graph = getCommitGraph(excludedHash, commitHash);
+            if (graph == null){
+                return;
+            }
+            excludedAncestors = graph.ancestorsOf(excludedHash);
+        }
+
+        Writer out = logWriter();
+        try {
+            int printed = 0;
+            while (commitHash != null && printed != limit){
 
-            System.out.println();
-            System.out.println("Branch: " + branch.getBranchName_());
+                // the ancestors of an excluded commit are excluded too
+                if (excludedAncestors != null && excludedAncestors.contains(commitHash)){
+                    break;
+                }
+
+                Commit commit = Commit.readCommitFromDisk(commitHash);
+                long time = commit.getTimestampMillis();
+                if (time < since){
+                    break;
+                }
 
-            logPrinter(branch.getBranchPtr_());
+                String parentHash = commit.getParentCommitID_();
+                if (time <= until && (path == null || changesFile(commit, parentHash, path))){
+                    printCommit(out, commit);
+                    printed++;
+                }
+                commitHash = parentHash;
+            }
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
-    void find(String commitMessage){
+    // true if COMMIT tracks PATH with other contents than its parent does;
+    // only blob IDs are compared
+    private static boolean changesFile(Commit commit, String parentHash, String path){
+        String parentBlobID = parentHash == null ? null : Commit.readCommitFromDisk(parentHash).getBlobID(path);
+        return !Objects.equals(commit.getBlobID(path), parentBlobID);
+    }
 
-        boolean foundCommit = false;
+    // the head commit of the branch NAME, or else the commit with the
+    // (possibly abbreviated) ID NAME, or the head commit if NAME is null or
+    // empty; null after reporting why there is none
+    private String resolveCommitID(String name){
+        if (name == null || name.isEmpty()){
+            return getActiveBranch().getHeadCommit_();
+        }
 
-        for (Branch branch : branchNameToBranch_.values()){
+        Branch branch = getBranch(name);
+        if (branch != null){
+            return branch.getHeadCommit_();
+        }
 
-            // start from the branch pointer for complete search
-            String commitID = branch.getBranchPtr_();
+        Commit commit = findCommitNode(name);
+        return commit != null ? commit.getThisCommitID_() : null;
+    }
 
-            while (commitID != null){
+    // print every commit reachable from a branch once, newest first. One
+    // walk covers all branches, taking parents and timestamps from the
+    // commit-graph, so a commit is read only to be printed. The queue holds
+    // only the walk's frontier, and output goes out as the walk goes, so a
+    // reader such as a pager that stops early also stops the walk.
+    void globalLog(){
 
-                Commit commit = Commit.readCommitFromDisk(commitID);;
+        Set<String> tips = new HashSet<>();
+        for (Branch branch : getBranches().values()){
+            tips.add(branch.getBranchPtr_());
+            tips.add(branch.getHeadCommit_());
+        }
+        tips.remove(null);
 
-                if (commit.getCommitMessage_().equals(commitMessage)){
-                    foundCommit = true;
-                    System.out.println(commit.getThisCommitID_());
+        CommitGraph graph = getCommitGraph(tips.toArray(new String[0]));
+        if (graph == null){
+            return;
+        }
+
+        // a commit is never older than its parents, so the newest queued
+        // commit is the newest not yet printed; the generation orders
+        // commits made within the same second
+        PriorityQueue<String> queue = new PriorityQueue<>(Comparator
+                .comparingLong((String commitID) -> graph.getTimestamp(commitID))
+                .thenComparingInt(graph::getGeneration)
+                .thenComparing(Comparator.naturalOrder())
+                .reversed());
+        Set<String> visited = new HashSet<>(tips);
+        queue.addAll(tips);
+
+        Writer out = logWriter();
+        try {
+            int printed = 0;
+            while (!queue.isEmpty()){
+                String commitID = queue.poll();
+                printCommit(out, Commit.readCommitFromDisk(commitID));
+
+                for (String parentID : graph.getParents(commitID)){
+                    if (visited.add(parentID)){
+                        queue.add(parentID);
+                    }
                 }
 
-                commitID = commit.getParentCommitID_();
+                // stop once nobody reads the output
+                if (++printed % 256 == 0){
+                    out.flush();
+                    if (System.out.checkError()){
+                        return;
+                    }
+                }
             }
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+    }
+
+    // print the commits whose message is exactly commitMessage
+    void find(String commitMessage){
+        printFoundCommits(MessageIndex.get().findExact(commitMessage));
+    }
+
+    // print the commits whose message contains every word of the query
+    void findTokens(String query){
+        printFoundCommits(MessageIndex.get().findTokens(query));
+    }
+
+    // print the commits whose message contains the query text
+    void findSubstring(String query){
+        printFoundCommits(MessageIndex.get().findSubstring(query));
+    }
+
+    private void printFoundCommits(List<String> commitIDs){
 
-        if (!foundCommit){
+        if (commitIDs.isEmpty()){
             System.out.println("Found no commit with that message.");
+            return;
+        }
+
+        for (String commitID : commitIDs){
+            System.out.println(commitID);
         }
     }
 
     void status(){
 
-        List<String> branches = new ArrayList<>(branchNameToBranch_.keySet());
-        List<String> stagedFiles = new ArrayList<>(stagingArea_.getFileToAdd_());
-        List<String> removedFiles = new ArrayList<>(stagingArea_.getFileToRemove_());
+        List<String> branches = new ArrayList<>(getBranches().keySet());
+        List<String> stagedFiles = new ArrayList<>(getStagingArea().getFileToAdd_());
+        List<String> removedFiles = new ArrayList<>(getStagingArea().getFileToRemove_());
 
         Collections.sort(branches);
         Collections.sort(stagedFiles);
@@ -382,7 +689,7 @@ class CommitTree implements Serializable {
 
         System.out.println("=== Branches ===");
         for (String branchName : branches){
-            if (branchName.equals(activeBranch_.getBranchName_())){
+            if (branchName.equals(getActiveBranch().getBranchName_())){
                 System.out.println("*" + branchName);
             } else {
                 System.out.println(branchName);
@@ -401,20 +708,139 @@ class CommitTree implements Serializable {
             System.out.println(removedFile);
         }
 
+        // the working files as of now, from the changed paths alone when a
+        // watcher runs
+        WatchIndex index = WatchIndex.get();
+
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String modifiedFile : getUnstagedModifications(index)){
+            System.out.println(modifiedFile);
+        }
 
         System.out.println();
         System.out.println("=== Untracked Files ===");
+        for (String untrackedFile : getUntrackedFiles(index)){
+            System.out.println(untrackedFile);
+        }
+    }
+
+    // print the differences between two commits, or from a commit (by default
+    // the head commit) to the files in the working directory
+    void diff(List<String> commitIDs, int mode){
+
+        Commit from = commitIDs.isEmpty() ? getHeadCommit() : findCommitNode(commitIDs.get(0));
+        if (from == null){
+            return;
+        }
+
+        if (commitIDs.size() == 2){
+            Commit to = findCommitNode(commitIDs.get(1));
+            if (to == null){
+                return;
+            }
+
+            // only the files that changed, found from the trees
+            Map<String, String> fromFiles = new HashMap<>();
+            Map<String, String> toFiles = new HashMap<>();
+            for (Tree.Change change : from.diffTo(to)){
+                if (change.getOldBlobID_() != null){
+                    fromFiles.put(change.getPath_(), change.getOldBlobID_());
+                }
+                if (change.getNewBlobID_() != null){
+                    toFiles.put(change.getPath_(), change.getNewBlobID_());
+                }
+            }
+
+            UnifiedDiff.print(fromFiles, toFiles, file -> blobContents(fromFiles.get(file)),
+                    file -> blobContents(toFiles.get(file)), mode);
+            return;
+        }
+
+        Map<String, String> fromFiles = from.getFileToBlobIDMap_();
+        UnifiedDiff.print(fromFiles, getWorkingFiles(), file -> blobContents(fromFiles.get(file)),
+                file -> Utils.readContents(new File(file)), mode);
+    }
+
+    // mapping from file-name to blobID for the files the next commit would
+    // track, as they are in the working directory. The stat cache saves
+    // hashing files that have not changed.
+    private Map<String, String> getWorkingFiles(){
+
+        StatCache statCache = StatCache.get();
+        Set<String> files = new HashSet<>(getStagingArea().getPrevCommitFileToBlobIDMap().keySet());
+        files.addAll(getStagingArea().getFileToAdd_());
+        files.removeAll(getStagingArea().getFileToRemove_());
+
+        Map<String, String> workingFiles = new HashMap<>();
+        for (String fileName : files){
+            String blobID = statCache.getBlobID(fileName);
+            if (blobID != null){
+                workingFiles.put(fileName, blobID);
+            }
+        }
+        return workingFiles;
+    }
+
+    // tracked files whose working copy differs from what the next commit
+    // would record, relying on the watch index and the stat cache to avoid
+    // hashing unchanged files
+    private List<String> getUnstagedModifications(WatchIndex index){
+
+        List<String> modifications = new ArrayList<>();
+        Map<String, String> tracked = getStagingArea().getPrevCommitFileToBlobIDMap();
+
+        for (Map.Entry<String, String> entry : tracked.entrySet()){
+            String fileName = entry.getKey();
+
+            if (getStagingArea().getFileToRemove_().contains(fileName) || getStagingArea().getFileToAdd_().contains(fileName)){
+                continue;
+            }
+
+            String blobID = index.getBlobID(fileName);
+            if (blobID == null){
+                modifications.add(fileName + " (deleted)");
+            } else if (!blobID.equals(entry.getValue())){
+                modifications.add(fileName + " (modified)");
+            }
+        }
+
+        for (String fileName : getStagingArea().getFileToAdd_()){
+            if (!index.isFile(fileName)){
+                modifications.add(fileName + " (deleted)");
+            }
+        }
+
+        Collections.sort(modifications);
+        return modifications;
+    }
+
+    // files in the working directory that are neither tracked nor staged,
+    // other than ignored ones
+    private List<String> getUntrackedFiles(WatchIndex index){
+
+        List<String> untracked = new ArrayList<>();
+
+        for (String fileName : index.listFiles("")){
+
+            boolean tracked = getStagingArea().getPrevCommitFileToBlobIDMap().containsKey(fileName)
+                    && !getStagingArea().getFileToRemove_().contains(fileName);
+
+            if (!tracked && !getStagingArea().getFileToAdd_().contains(fileName)){
+                untracked.add(fileName);
+            }
+        }
+        return untracked;
     }
 
 
     void checkoutFile(String fileName){
 
         // checkout file from the head commit of the active branch
-        Commit headCommit = Commit.readCommitFromDisk(activeBranch_.getHeadCommit_());
+        Commit headCommit = Commit.readCommitFromDisk(getActiveBranch().getHeadCommit_());
 
-        if (!headCommit.getFileToBlobIDMap_().containsKey(fileName)){
+        fileName = WorkingTree.toPath(fileName);
+        if (fileName == null || headCommit.getBlobID(fileName) == null){
             System.out.println("File does not exist in that commit.");
             return;
         }
@@ -427,11 +853,11 @@ class CommitTree implements Serializable {
         Commit commit = findCommitNode(commitID);
 
         if (commit == null){
-            System.out.println("No commit with that id exists.");
             return;
         }
 
-        if (!commit.getFileToBlobIDMap_().containsKey(fileName)){
+        fileName = WorkingTree.toPath(fileName);
+        if (fileName == null || commit.getBlobID(fileName) == null){
             System.out.println("File does not exist in that commit.");
             return;
         }
@@ -442,44 +868,32 @@ class CommitTree implements Serializable {
 
     void checkoutBranch(String branchName){
 
-        if (!branchNameToBranch_.containsKey(branchName)){
+        if (getBranch(branchName) == null){
             System.out.println("No such branch exists.");
             return;
         }
 
-        if (branchName.equals(activeBranch_.getBranchName_())){
+        if (branchName.equals(getActiveBranch().getBranchName_())){
             System.out.println("No need to checkout the current branch.");
             return;
         }
 
         // From the checkout Branch, use its head-commit
         // as it is indicative of active node on branch
-        Branch checkoutBranch = branchNameToBranch_.get(branchName);
+        Branch checkoutBranch = getBranch(branchName);
         Commit checkoutCommit = Commit.readCommitFromDisk(checkoutBranch.getHeadCommit_());
 
-        // handle un-tracked files
-        List<String> workingDirFiles = Utils.plainFilenamesIn(Utils.WORKING_DIR);
-        for (String file : workingDirFiles){
-
-            // the un-tracked file would be overwritten by checkout
-            if (!stagingArea_.getPrevCommitFileToBlobIDMap().containsKey(file) && checkoutCommit.getFileToBlobIDMap_().containsKey(file)){
-                System.out.println("There is an untracked file in the way; delete it or add it first.");
-                return;
-            }
-        }
-
-        for (String fileName : checkoutCommit.getFileToBlobIDMap_().keySet()){
-            overwriteWorkingDir(checkoutCommit, fileName);
+        // handle un-tracked files, which would be overwritten by checkout
+        List<Tree.Change> changes = getHeadCommit().diffTo(checkoutCommit);
+        if (hasUntrackedFileInTheWay(changes)){
+            System.out.println("There is an untracked file in the way; delete it or add it first.");
+            return;
         }
 
-        Commit currCommit = Commit.readCommitFromDisk(activeBranch_.getHeadCommit_());
-        // delete files tracked by current branch but not present in checkoutBranch
-        for (String fileName : currCommit.getFileToBlobIDMap_().keySet()){
-
-            if (!checkoutCommit.getFileToBlobIDMap_().containsKey(fileName)){
-                Utils.restrictedDelete(fileName);
-            }
-        }
+        // write files that differ in checkoutBranch or in the working
+        // directory and delete files tracked by current branch but not
+        // present in checkoutBranch
+        new WorkingTreeUpdate(withLocalChanges(changes)).apply();
 
         // clear staging area
         stagingArea_ = new StagingArea(checkoutCommit);
@@ -489,25 +903,48 @@ class CommitTree implements Serializable {
     }
 
 
+    // CHANGES from the head commit to a target, plus the head's files that
+    // the target keeps as they are but whose working copy was changed or
+    // deleted, so that checkout and reset still write every tracked file the
+    // target holds. The watch index and the stat cache save hashing files
+    // that have not changed.
+    private List<Tree.Change> withLocalChanges(List<Tree.Change> changes){
+
+        Set<String> changed = new HashSet<>();
+        for (Tree.Change change : changes){
+            changed.add(change.getPath_());
+        }
+
+        WatchIndex index = WatchIndex.get();
+        List<Tree.Change> all = new ArrayList<>(changes);
+        for (Map.Entry<String, String> entry : getHeadCommit().getFileToBlobIDMap_().entrySet()){
+            String fileName = entry.getKey();
+            if (!changed.contains(fileName) && !entry.getValue().equals(index.getBlobID(fileName))){
+                all.add(new Tree.Change(fileName, entry.getValue(), entry.getValue()));
+            }
+        }
+        return all;
+    }
+
     void branch(String branchName){
 
-        if (branchNameToBranch_.containsKey(branchName)){
+        if (getBranch(branchName) != null){
             System.out.println("A branch with that name already exists.");
             return;
         }
 
-        Branch branch = new Branch(branchName, activeBranch_.getHeadCommit_());
+        Branch branch = new Branch(branchName, getActiveBranch().getHeadCommit_());
         addBranchMapping(branchName, branch);
     }
 
     void removeBranch(String branchName){
 
-        if (!branchNameToBranch_.containsKey(branchName)){
+        if (getBranch(branchName) == null){
             System.out.println("A branch with that name does not exist.");
             return;
         }
 
-        if (activeBranch_.getBranchName_().equals(branchName)){
+        if (getActiveBranch().getBranchName_().equals(branchName)){
             System.out.println("Cannot remove the current branch.");
             return;
         }
@@ -521,34 +958,25 @@ class CommitTree implements Serializable {
         Commit resetCommit = findCommitNode(commitID);
 
         if (resetCommit == null){
-            System.out.println("No commit with that id exists.");
             return;
         }
 
-        // handle un-tracked files
-        List<String> workingDirFiles = Utils.plainFilenamesIn(Utils.WORKING_DIR);
-        for (String file : workingDirFiles){
-
-            // the un-tracked file would be overwritten by reset commit
-            if (!stagingArea_.getPrevCommitFileToBlobIDMap().containsKey(file) && resetCommit.getFileToBlobIDMap_().containsKey(file)){
-                System.out.println("There is an untracked file in the way; delete it or add it first.");
-                return;
-            }
+        // handle un-tracked files, which would be overwritten by reset commit
+        List<Tree.Change> changes = getHeadCommit().diffTo(resetCommit);
+        if (hasUntrackedFileInTheWay(changes)){
+            System.out.println("There is an untracked file in the way; delete it or add it first.");
+            return;
         }
 
-        // delete files tracked by current commit, but not by reset commit
-        for (String file : getHeadCommit().getFileToBlobIDMap_().keySet()){
-
-            if (!resetCommit.getFileToBlobIDMap_().containsKey(file)){
-                Utils.restrictedDelete(file);
-            }
-        }
+        // check out the files of the reset commit, deleting files
+        // tracked by current commit, but not by reset commit
+        new WorkingTreeUpdate(withLocalChanges(changes)).apply();
 
         // clear the staging area. Set the tracking files to resetCommit's tracking files
         stagingArea_ = new StagingArea(resetCommit);
 
         // reset the head commit
-        activeBranch_.setHeadCommit_(resetCommit.getThisCommitID_());
+        getActiveBranch().setHeadCommit_(resetCommit.getThisCommitID_());
     }
 
     void merge(String branchName){
@@ -561,8 +989,11 @@ class CommitTree implements Serializable {
         }
 
         Commit splitNode = getSplitNode(branchName);
-        Commit currNode = Commit.readCommitFromDisk(activeBranch_.getBranchPtr_());
-        String mergeBranchPtr = branchNameToBranch_.get(branchName).getBranchPtr_();
+        if (splitNode == null){
+            return;
+        }
+        Commit currNode = Commit.readCommitFromDisk(getActiveBranch().getBranchPtr_());
+        String mergeBranchPtr = getBranch(branchName).getBranchPtr_();
         Commit mergeNode = Commit.readCommitFromDisk(mergeBranchPtr);
 
         if (splitNode.getThisCommitID_().equals(mergeNode.getThisCommitID_())){
@@ -572,96 +1003,94 @@ class CommitTree implements Serializable {
 
         if (splitNode.getThisCommitID_().equals(currNode.getThisCommitID_())){
 
-            activeBranch_.setBranchPtr_(mergeBranchPtr);
-            activeBranch_.setHeadCommit_(mergeBranchPtr);
+            getActiveBranch().setBranchPtr_(mergeBranchPtr);
+            getActiveBranch().setHeadCommit_(mergeBranchPtr);
 
             System.out.println("Current branch fast-forwarded.");
             return;
         }
 
-        // since split point, modified in given branch but not modified in current branch
-        for (String file : currNode.getFileToBlobIDMap_().keySet()){
-
-            if (!isFilePresent(file, splitNode) || !isFilePresent(file, mergeNode)){
+        boolean mergeConflict = false;
+        // the files whose version in the given branch is taken, written
+        // together once every file is looked at
+        List<Tree.Change> taken = new ArrayList<>();
+
+        // files unmodified in the given branch since the split point keep
+        // the current version, so only those the given branch changed are
+        // looked at
+        for (Tree.Change change : splitNode.diffTo(mergeNode)){
+
+            String file = change.getPath_();
+            String blobIDSplit = change.getOldBlobID_();
+            String blobIDCurr = currNode.getBlobID(file);
+            String blobIDMerge = change.getNewBlobID_();
+
+            // modified the same way in both branches: keep the current file
+            if (Objects.equals(blobIDMerge, blobIDCurr)){
                 continue;
             }
 
-            String blobIDMerge = getBlobID(file, mergeNode);
-            String blobIDSplit = getBlobID(file, splitNode);
-            String blobIDCurr = getBlobID(file, currNode);
-
-            if (!Blob.isFileSame(blobIDMerge, blobIDSplit) && Blob.isFileSame(blobIDCurr, blobIDSplit)){
+            // modified only in the given branch: take its version, or
+            // remove and un-track the file if it was removed there
+            if (Objects.equals(blobIDCurr, blobIDSplit)){
 
-                // change object pointers and stage
-                this.checkoutFilePrevCommmit(mergeNode.getThisCommitID_(),file);
-                stagingArea_.getFileToAdd_().add(file);
+                taken.add(new Tree.Change(file, blobIDCurr, blobIDMerge));
+                if (blobIDMerge == null){
+                    getStagingArea().getFileToRemove_().add(file);
+                } else {
+                    getStagingArea().getFileToAdd_().add(file);
+                }
+                continue;
             }
-        }
-
-
-        // not present at split point, only present in given branch
-        // checkout (from given) and stage
-        for (String file : mergeNode.getFileToBlobIDMap_().keySet()){
 
-            if (!isFilePresent(file, splitNode) && !isFilePresent(file, currNode) && isFilePresent(file, mergeNode)){
-
-                this.checkoutFilePrevCommmit(mergeNode.getThisCommitID_(), file);
-                stagingArea_.getFileToAdd_().add(file);
+            // modified differently in both branches: merge line by line, and
+            // stage the result if no lines conflict
+            if (mergeFile(file, blobIDSplit, blobIDCurr, blobIDMerge)){
+                getStagingArea().getFileToAdd_().add(file);
+            } else {
+                mergeConflict = true;
             }
         }
 
-        // present in split, unmodified in current, absent in given branch
-        // removed (and un-tracked)
-        for (String file : splitNode.getFileToBlobIDMap_().keySet()){
-
-            String blobIDSplit = getBlobID(file, splitNode);
-            String blobIDCurr = getBlobID(file, currNode);
+        new WorkingTreeUpdate(taken).apply();
 
-            if (blobIDCurr != null && Blob.isFileSame(blobIDCurr, blobIDSplit) && !isFilePresent(file, mergeNode)){
-
-                // remove and un-track
-                Utils.restrictedDelete(file);
-                stagingArea_.getFileToRemove_().add(file);
-            }
+        if (mergeConflict){
+            System.out.println("Encountered a merge conflict.");
+            return;
         }
 
-        boolean mergeConflict = false;
-
-        for (String file : currNode.getFileToBlobIDMap_().keySet()){
-
-            String blobIDCurr = getBlobID(file, currNode);
-            String blobIDMerge = getBlobID(file, mergeNode);
-            String blobIDSplit = getBlobID(file, splitNode);
-
-            // conflict if file not same in current and given branches
-            if (mergeNode.getFileToBlobIDMap_().containsKey(file) && !Blob.isFileSame(blobIDCurr, blobIDMerge)){
-
-                mergeConflict = true;
-
-                Blob currBlob = Blob.readBlobFromDisk(blobIDCurr);
-                Blob mergeBlob = Blob.readBlobFromDisk(blobIDMerge);
-
-                mergeConflictLogger(currBlob, mergeBlob, file);
-
-                // a conflict caused by a file changed in one and removed in the other
-                // split node helps identify whether a file was removed from either branch
-            } else if (splitNode.getFileToBlobIDMap_().containsKey(file) && !mergeNode.getFileToBlobIDMap_().containsKey(file) && currNode.getFileToBlobIDMap_().containsKey(file) && !Blob.isFileSame(blobIDSplit, blobIDCurr)){
+        String message = String.format("Merged %s with %s.", getActiveBranch().getBranchName_(), branchName);
+        this.commit(message, mergeBranchPtr);
+    }
 
-                mergeConflict = true;
+    // the commits that the branches point to
+    private Set<String> commitRoots(){
+        Set<String> commitRoots = new HashSet<>();
+        for (Branch branch : getBranches().values()){
+            commitRoots.add(branch.getHeadCommit_());
+            commitRoots.add(branch.getBranchPtr_());
+        }
+        return commitRoots;
+    }
 
-                Blob currBlob = currNode.getFileToBlobIDMap_().containsKey(file) ? Blob.readBlobFromDisk(blobIDCurr) : null;
-                Blob mergeBlob = mergeNode.getFileToBlobIDMap_().containsKey(file) ? Blob.readBlobFromDisk(blobIDMerge) : null;
+    // the blobs that the staging area refers to. Files staged for addition
+    // are stored when they are committed; the tracked files may be stored in
+    // full rather than as their commit.
+    private Collection<String> blobRoots(){
+        return getStagingArea().getPrevCommitFileToBlobIDMap().values();
+    }
 
-                mergeConflictLogger(currBlob, mergeBlob, file);
-            }
-        }
+    // delete the objects that no branch and not the staging area refer to
+    void gc(){
+        GarbageCollector.collect(commitRoots(), blobRoots());
+    }
 
-        if (mergeConflict){
-            System.out.println("Encountered a merge conflict.");
-            return;
+    // pack the objects that the branches and the staging area refer to,
+    // leaving the others loose for gc
+    void repack(){
+        Set<String> reachable = GarbageCollector.reachable(commitRoots(), blobRoots());
+        if (reachable != null){
+            PackFile.repack(reachable);
         }
-
-        String message = String.format("Merged %s with %s.", activeBranch_.getBranchName_(), branchName);
-        this.commit(message);
     }
 }
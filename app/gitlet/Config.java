@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.*;
+import java.util.Properties;
+
+/* Per-repository settings, stored as a properties file in .gitlet/config. */
+class Config {
+
+    // deflate level for stored blobs: 0 stores them raw, 1-9 trade speed for size
+    static final String COMPRESSION_LEVEL = "core.compression";
+    static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    // minutes an unreachable loose object is kept by gc before it is removed
+    static final String GC_GRACE_MINUTES = "gc.graceMinutes";
+    static final int DEFAULT_GC_GRACE_MINUTES = 14 * 24 * 60;
+    // whether a daemon watches the working directory for status and add
+    static final String WATCH = "core.watch";
+
+    // the settings of the repository, read on first use
+    private static Properties properties_;
+
+    private static synchronized Properties getProperties(){
+
+        if (properties_ == null){
+            properties_ = new Properties();
+            File file = Utils.join(Utils.GITLET_DIR, Utils.CONFIG_FILE);
+
+            if (file.isFile()){
+                try (Reader in = new FileReader(file)) {
+                    properties_.load(in);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return properties_;
+    }
+
+    // forget the settings, so that they are read again on next use
+    static synchronized void reset(){
+        properties_ = null;
+    }
+
+    static String get(String key){
+        return getProperties().getProperty(key);
+    }
+
+    // the value of KEY as a number, or DEFAULTVALUE if it is unset or not
+    // valid, as when the file was edited by hand, so that no command fails
+    // on it
+    private static int getInt(String key, int defaultValue){
+        String value = get(key);
+        return value != null && isValid(key, value.trim()) ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    static int getCompressionLevel(){
+        return getInt(COMPRESSION_LEVEL, DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    static int getGcGraceMinutes(){
+        return getInt(GC_GRACE_MINUTES, DEFAULT_GC_GRACE_MINUTES);
+    }
+
+    static boolean isWatchEnabled(){
+        return Boolean.parseBoolean(get(WATCH));
+    }
+
+    // true if VALUE is acceptable for KEY
+    static boolean isValid(String key, String value){
+        if (key.equals(COMPRESSION_LEVEL)){
+            return value.matches("[0-9]");
+        }
+        if (key.equals(GC_GRACE_MINUTES)){
+            return value.matches("[0-9]{1,9}");
+        }
+        if (key.equals(WATCH)){
+            return value.equals("true") || value.equals("false");
+        }
+        return false;
+    }
+
+    static void set(String key, String value){
+        getProperties().setProperty(key, value);
+
+        StringWriter contents = new StringWriter();
+        try {
+            getProperties().store(contents, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        Utils.writeContentsAtomically(Utils.join(Utils.GITLET_DIR, Utils.CONFIG_FILE), contents.toString().getBytes());
+    }
+}
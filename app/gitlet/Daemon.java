@@ -0,0 +1,247 @@
+package gitlet;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/* A long-lived server for one repository. It keeps the commit-tree, the
+   object caches and the indexes open between commands, so that a command
+   pays neither JVM startup nor loading the repository.
+
+   The daemon listens on a Unix domain socket at .gitlet/daemon.sock and
+   must be started from the repository's root, as every path gitlet uses is
+   relative to the working directory. A client sends the number of arguments
+   and then each argument, every field UTF-8 and terminated by a NUL byte,
+   and reads the command's output until the daemon closes the connection.
+   This is simple enough for clients that are not written in Java, which
+   avoid JVM startup altogether:
+
+       printf '%s\0' $# "$@" | nc -U .gitlet/daemon.sock
+
+   Commands that only read the repository run concurrently; every other
+   command holds the lock exclusively. With core.watch set, the daemon also
+   runs a Watcher, which records the files that change so that status and
+   add need not look at the others. */
+class Daemon {
+
+    // commands that never change the commit-tree or the objects
+    static final Set<String> READ_ONLY_COMMANDS = Set.of("log", "global-log", "find", "status", "diff");
+
+    // the output of the command running on each thread
+    private static final ThreadLocal<OutputStream> output_ = new ThreadLocal<>();
+    // set once this process serves a repository
+    private static volatile boolean serving_;
+
+    private final Main program_;
+    private final ReadWriteLock lock_ = new ReentrantReadWriteLock();
+
+    private Daemon(Main program){
+        program_ = program;
+    }
+
+    private static File socketFile(){
+        return Utils.join(Utils.GITLET_DIR, Utils.DAEMON_SOCKET);
+    }
+
+    // true if this process is a daemon
+    static boolean isServing(){
+        return serving_;
+    }
+
+    // run ARGS in the daemon serving this repository. Returns false if there
+    // is no daemon, in which case the caller runs the command itself.
+    static boolean forward(String[] args){
+
+        File socket = socketFile();
+        if (args[0].equals("init") || args[0].equals("daemon") || !socket.exists()){
+            return false;
+        }
+
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException e) {
+            // the socket was left behind by a daemon that is no longer running
+            return false;
+        }
+
+        try (channel) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            writeField(out, Integer.toString(args.length));
+            for (String arg : args){
+                writeField(out, arg);
+            }
+            out.flush();
+
+            Channels.newInputStream(channel).transferTo(System.out);
+            System.out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    // true if a daemon accepts connections at ADDRESS
+    private static boolean isListening(UnixDomainSocketAddress address){
+        try {
+            SocketChannel.open(address).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // serve commands until the process is stopped
+    static void serve(Main program){
+
+        File socket = socketFile();
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket.toPath());
+
+        if (isListening(address)){
+            System.out.println("A gitlet daemon is already running.");
+            return;
+        }
+        // nothing is listening; a leftover socket file is replaced
+        socket.delete();
+
+        // route System.out to the client of the command on the current thread
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                target().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                target().write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                target().flush();
+            }
+
+            private OutputStream target(){
+                OutputStream out = output_.get();
+                return out != null ? out : console;
+            }
+        }, true));
+
+        Daemon daemon = new Daemon(program);
+        ExecutorService workers = Executors.newCachedThreadPool();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            socket.deleteOnExit();
+            serving_ = true;
+            console.println("Serving " + new File(Utils.WORKING_DIR).getAbsolutePath() + " on " + socket);
+
+            // without a watcher, status and add walk the working directory
+            if (Config.isWatchEnabled()){
+                try {
+                    if (!Watcher.start()){
+                        console.println("The working directory is already watched by another process.");
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            while (true){
+                SocketChannel client = server.accept();
+                workers.submit(() -> daemon.handle(client));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            workers.shutdown();
+            System.setOut(console);
+        }
+    }
+
+    private void handle(SocketChannel client){
+
+        try (client) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(client));
+            String[] args;
+            try {
+                args = new String[Integer.parseInt(readField(in))];
+            } catch (NumberFormatException e) {
+                return;
+            }
+            for (int i = 0; i < args.length; i++){
+                args[i] = readField(in);
+            }
+
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(client));
+            output_.set(out);
+            try {
+                run(args);
+            } finally {
+                System.out.flush();
+                output_.remove();
+            }
+        } catch (EOFException e) {
+            // the client went away before sending a whole command, as when
+            // a starting daemon checks whether another one is listening
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeField(OutputStream out, String field) throws IOException {
+        out.write(field.getBytes(StandardCharsets.UTF_8));
+        out.write(0);
+    }
+
+    private static String readField(InputStream in) throws IOException {
+        ByteArrayOutputStream field = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != 0){
+            if (b < 0){
+                throw new EOFException("connection closed inside a command");
+            }
+            field.write(b);
+        }
+        return field.toString(StandardCharsets.UTF_8);
+    }
+
+    private void run(String[] args){
+
+        boolean readOnly = args.length > 0 && READ_ONLY_COMMANDS.contains(args[0]);
+
+        // the state was changed by something other than this daemon. Other
+        // commands check again once they hold the repository lock.
+        if (readOnly && program_.isStale()){
+            lock_.writeLock().lock();
+            try {
+                if (program_.isStale()){
+                    program_.reload();
+                }
+            } finally {
+                lock_.writeLock().unlock();
+            }
+        }
+
+        Lock lock = readOnly ? lock_.readLock() : lock_.writeLock();
+        lock.lock();
+        try {
+            program_.execute(args);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/* Copy/insert delta encoding between two byte arrays, used by the packfile
+   to store an object as the difference against a similar object.
+
+   Layout: varint base length, varint target length, then a sequence of
+   instructions. An instruction byte with the high bit set is a copy from
+   the base (followed by varint offset and varint length); otherwise the byte
+   is the number (1-127) of literal bytes that follow. */
+class Delta {
+
+    // size of the blocks of the base that are indexed for matching
+    private static final int BLOCK = 16;
+    // maximum number of literal bytes in one insert instruction
+    private static final int MAX_INSERT = 127;
+    private static final int COPY_OP = 0x80;
+
+    // encode TARGET as a delta against BASE
+    static byte[] create(byte[] base, byte[] target){
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(target.length / 4 + 16);
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        // index the start of every aligned block in the base
+        Map<Integer, Integer> blockIndex = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK){
+            blockIndex.putIfAbsent(blockHash(base, i), i);
+        }
+
+        int insertStart = 0;
+        int pos = 0;
+
+        while (pos + BLOCK <= target.length){
+
+            Integer baseOffset = blockIndex.get(blockHash(target, pos));
+
+            if (baseOffset == null || !regionMatches(base, baseOffset, target, pos, BLOCK)){
+                pos++;
+                continue;
+            }
+
+            // extend the match backwards over pending literals, then forwards
+            int matchBase = baseOffset;
+            int matchTarget = pos;
+            while (matchBase > 0 && matchTarget > insertStart && base[matchBase - 1] == target[matchTarget - 1]){
+                matchBase--;
+                matchTarget--;
+            }
+
+            int matchEnd = pos + BLOCK;
+            int baseEnd = baseOffset + BLOCK;
+            while (matchEnd < target.length && baseEnd < base.length && base[baseEnd] == target[matchEnd]){
+                matchEnd++;
+                baseEnd++;
+            }
+
+            writeInsert(out, target, insertStart, matchTarget);
+
+            out.write(COPY_OP);
+            writeVarint(out, matchBase);
+            writeVarint(out, matchEnd - matchTarget);
+
+            pos = matchEnd;
+            insertStart = matchEnd;
+        }
+
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    // rebuild the target from BASE and a delta produced by create
+    static byte[] apply(byte[] base, byte[] delta){
+
+        int[] pos = new int[1];
+        int baseLength = (int) readVarint(delta, pos);
+        int targetLength = (int) readVarint(delta, pos);
+
+        if (baseLength != base.length){
+            throw new IllegalArgumentException("delta does not match its base");
+        }
+
+        byte[] target = new byte[targetLength];
+        int outPos = 0;
+
+        while (pos[0] < delta.length){
+            int op = delta[pos[0]++] & 0xff;
+
+            if ((op & COPY_OP) != 0){
+                int offset = (int) readVarint(delta, pos);
+                int length = (int) readVarint(delta, pos);
+                System.arraycopy(base, offset, target, outPos, length);
+                outPos += length;
+            } else {
+                System.arraycopy(delta, pos[0], target, outPos, op);
+                pos[0] += op;
+                outPos += op;
+            }
+        }
+
+        if (outPos != targetLength){
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return target;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data, int start, int end){
+        while (start < end){
+            int length = Math.min(MAX_INSERT, end - start);
+            out.write(length);
+            out.write(data, start, length);
+            start += length;
+        }
+    }
+
+    private static int blockHash(byte[] data, int start){
+        int hash = 0;
+        for (int i = start; i < start + BLOCK; i++){
+            hash = hash * 31 + data[i];
+        }
+        return hash;
+    }
+
+    private static boolean regionMatches(byte[] a, int aStart, byte[] b, int bStart, int length){
+        for (int i = 0; i < length; i++){
+            if (a[aStart + i] != b[bStart + i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value){
+        while ((value & ~0x7FL) != 0){
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] pos){
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/* The lines of a file's contents, as the offsets where each one starts. A
+   line includes its terminating newline; the last one may have none. Lines
+   are never copied out of the contents. */
+class FileLines {
+
+    private final byte[] contents_;
+    private final int[] starts_;
+    private final int count_;
+
+    FileLines(byte[] contents){
+        contents_ = contents;
+
+        int count = 0;
+        for (byte b : contents){
+            if (b == '\n'){
+                count++;
+            }
+        }
+        if (contents.length > 0 && contents[contents.length - 1] != '\n'){
+            count++;
+        }
+
+        count_ = count;
+        starts_ = new int[count + 1];
+        int line = 1;
+        for (int i = 0; i < contents.length && line < count; i++){
+            if (contents[i] == '\n'){
+                starts_[line++] = i + 1;
+            }
+        }
+        starts_[count] = contents.length;
+    }
+
+    int count(){
+        return count_;
+    }
+
+    // true if LINE has no terminating newline, which only the last line can lack
+    boolean isUnterminated(int line){
+        return line == count_ - 1 && contents_[contents_.length - 1] != '\n';
+    }
+
+    boolean equals(int line, FileLines other, int otherLine){
+        return Arrays.equals(contents_, starts_[line], starts_[line + 1],
+                other.contents_, other.starts_[otherLine], other.starts_[otherLine + 1]);
+    }
+
+    // write the lines from START up to END to OUT, returning the last byte
+    // written or -1 if there were none
+    int write(OutputStream out, int start, int end) throws IOException {
+        int from = starts_[start];
+        int to = starts_[end];
+
+        if (to == from){
+            return -1;
+        }
+        out.write(contents_, from, to - from);
+        return contents_[to - 1] & 0xff;
+    }
+
+    /* Numbers lines so that equal lines, from any file, get equal numbers,
+       which is what LineDiff compares. */
+    static class Numbering {
+        private final Map<Key, Integer> numbers_ = new HashMap<>();
+
+        int[] number(FileLines lines, int start, int end){
+            int[] result = new int[end - start];
+            for (int line = start; line < end; line++){
+                result[line - start] = numbers_.computeIfAbsent(new Key(lines, line), key -> numbers_.size());
+            }
+            return result;
+        }
+    }
+
+    /* A line used as a hash key without copying it out of its file. */
+    private static class Key {
+        private final FileLines lines_;
+        private final int line_;
+        private final int hash_;
+
+        Key(FileLines lines, int line){
+            lines_ = lines;
+            line_ = line;
+
+            int hash = 1;
+            for (int i = lines.starts_[line]; i < lines.starts_[line + 1]; i++){
+                hash = 31 * hash + lines.contents_[i];
+            }
+            hash_ = hash;
+        }
+
+        @Override
+        public int hashCode(){
+            return hash_;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (!(o instanceof Key)){
+                return false;
+            }
+            Key other = (Key) o;
+            return hash_ == other.hash_ && lines_.equals(line_, other.lines_, other.line_);
+        }
+    }
+}
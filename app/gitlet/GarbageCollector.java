@@ -0,0 +1,253 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/* Deletes the loose commits, trees and blobs that nothing refers to any
+   more, such as those left behind by rm-branch and reset. Runs in two phases:
+
+   mark  : the commits reachable from the roots, walked through the
+           commit-graph where it has them a level of parents at a time, each
+           level in parallel; then every tree and blob of those commits, read
+           in parallel. Marked objects go into concurrent sets, so commits
+           and trees shared between branches are visited once.
+   sweep : every loose commit, tree and blob that was not marked and is
+           older than the grace period is deleted, in parallel
+
+   Roots are the branch pointers and the files tracked by the staging area,
+   given by the caller, and then every loose commit younger than the grace
+   period, so that a kept commit never loses its history. The grace period
+   protects objects written by processes that do not take the repository
+   lock, such as older builds. Only loose objects are deleted: repack packs
+   the reachable objects alone, and writes those of the old packs that are
+   no longer reachable loose again, dated when they were packed, for gc to
+   find.
+
+   The caller holds the repository lock exclusively. Afterwards the commit
+   index, message index and commit-graph drop the deleted commits, and the
+   object caches are emptied. */
+class GarbageCollector {
+
+    private final long cutoffMillis_;
+    private final int graceMinutes_;
+
+    // marked objects
+    private final Set<String> commits_ = ConcurrentHashMap.newKeySet();
+    private final Set<String> trees_ = ConcurrentHashMap.newKeySet();
+    private final Set<String> blobs_ = ConcurrentHashMap.newKeySet();
+    // the objects marked from the branches and the staging area alone
+    private Set<String> reachable_;
+
+    private GarbageCollector(int graceMinutes){
+        graceMinutes_ = graceMinutes;
+        cutoffMillis_ = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(graceMinutes);
+    }
+
+    // delete the unreachable objects, given the commits and blobs that the
+    // branches and the staging area refer to
+    static void collect(Collection<String> commitRoots, Collection<String> blobRoots){
+
+        GarbageCollector collector = new GarbageCollector(Config.getGcGraceMinutes());
+        File commitDir = Utils.join(Utils.GITLET_DIR, Utils.COMMIT_DIR);
+        File treeDir = Utils.join(Utils.GITLET_DIR, Utils.TREES_DIR);
+        File blobDir = Utils.join(Utils.GITLET_DIR, Utils.BLOBS_DIR);
+        // repositories made before trees have no tree directory until a commit
+        treeDir.mkdir();
+
+        List<String> youngCommits = new ArrayList<>();
+        for (String commitID : Utils.plainFilenamesIn(commitDir)){
+            if (!collector.isOld(Utils.join(commitDir, commitID))){
+                youngCommits.add(commitID);
+            }
+        }
+        collector.blobs_.addAll(blobRoots);
+
+        // a commit or tree that cannot be read hides the objects it refers
+        // to, so nothing is deleted unless every reachable one was read
+        String missing = collector.mark(commitRoots);
+        if (missing == null){
+            collector.reachable_ = new HashSet<>(collector.commits_);
+            collector.reachable_.addAll(collector.trees_);
+            collector.reachable_.addAll(collector.blobs_);
+            missing = collector.mark(youngCommits);
+        }
+        if (missing != null){
+            System.out.println("Cannot read " + missing + "; nothing was removed.");
+            return;
+        }
+
+        List<File> commitFiles = collector.sweepable(commitDir, collector.commits_);
+        List<File> treeFiles = collector.sweepable(treeDir, collector.trees_);
+        List<File> blobFiles = collector.sweepable(blobDir, collector.blobs_);
+        // partial objects left by writes that were cut short
+        List<File> tempFiles = new ArrayList<>();
+        for (String name : Utils.plainFilenamesIn(Utils.GITLET_DIR)){
+            File file = Utils.join(Utils.GITLET_DIR, name);
+            if (name.endsWith(".tmp") && collector.isOld(file)){
+                tempFiles.add(file);
+            }
+        }
+
+        LongAdder bytes = new LongAdder();
+        Set<String> removedCommits = delete(commitFiles, bytes);
+        Set<String> removedTrees = delete(treeFiles, bytes);
+        Set<String> removedBlobs = delete(blobFiles, bytes);
+        delete(tempFiles, bytes);
+
+        if (!removedCommits.isEmpty()){
+            CommitIndex.rebuild();
+            MessageIndex.remove(removedCommits);
+            CommitGraph.remove(removedCommits);
+        }
+        if (!removedCommits.isEmpty() || !removedTrees.isEmpty() || !removedBlobs.isEmpty()){
+            Commit.getCache().clear();
+            Tree.getCache().clear();
+            Blob.getCache().clear();
+            Tree.forgetStored();
+            Blob.forgetStored();
+        }
+
+        if (removedCommits.isEmpty() && removedTrees.isEmpty() && removedBlobs.isEmpty() && tempFiles.isEmpty()){
+            System.out.println("Nothing to remove.");
+        } else {
+            System.out.println(String.format("Removed %d commits, %d trees and %d blobs, freeing %d bytes.",
+                    removedCommits.size(), removedTrees.size(), removedBlobs.size(), bytes.sum()));
+        }
+
+        int kept = collector.countUnreachable(commitDir) + collector.countUnreachable(treeDir)
+                + collector.countUnreachable(blobDir);
+        if (kept > 0){
+            System.out.println(String.format("Kept %d unreachable objects for the grace period of %d minutes.",
+                    kept, collector.graceMinutes_));
+        }
+    }
+
+    // the commits, trees and blobs that the branches and the staging area
+    // refer to, given their commits and blobs, for repack. Returns null if
+    // one of them cannot be read.
+    static Set<String> reachable(Collection<String> commitRoots, Collection<String> blobRoots){
+
+        GarbageCollector collector = new GarbageCollector(0);
+        collector.blobs_.addAll(blobRoots);
+
+        String missing = collector.mark(commitRoots);
+        if (missing != null){
+            System.out.println("Cannot read " + missing + "; nothing was packed.");
+            return null;
+        }
+
+        Set<String> reachable = new HashSet<>(collector.commits_);
+        reachable.addAll(collector.trees_);
+        reachable.addAll(collector.blobs_);
+        return reachable;
+    }
+
+    private boolean isOld(File file){
+        return file.lastModified() < cutoffMillis_;
+    }
+
+    // mark the commits reachable from ROOTS and their trees and blobs,
+    // returning the commit or tree that could not be read, or null
+    private String mark(Collection<String> roots){
+
+        CommitGraph graph = CommitGraph.get();
+        Set<String> missing = ConcurrentHashMap.newKeySet();
+
+        List<String> level = new ArrayList<>();
+        for (String commitID : roots){
+            if (commitID != null && commits_.add(commitID)){
+                level.add(commitID);
+            }
+        }
+        List<String> marked = new ArrayList<>(level);
+
+        // the parents of a level are found in parallel, and each one that is
+        // marked first makes up the next level
+        while (!level.isEmpty()){
+            level = level.parallelStream()
+                    .flatMap(commitID -> parents(graph, commitID, missing).stream())
+                    .filter(commits_::add)
+                    .collect(Collectors.toList());
+            marked.addAll(level);
+        }
+        if (!missing.isEmpty()){
+            return missing.iterator().next();
+        }
+
+        marked.parallelStream().forEach(commitID -> {
+            Commit commit = Commit.readCommitFromDisk(commitID);
+
+            if (commit == null){
+                missing.add("commit " + commitID);
+            } else if (commit.hasTree()){
+                String missingTree = Tree.collect(commit.getTreeID_(), trees_, blobs_);
+                if (missingTree != null){
+                    missing.add("tree " + missingTree);
+                }
+            } else {
+                blobs_.addAll(commit.getFileToBlobIDMap_().values());
+            }
+        });
+        return missing.isEmpty() ? null : missing.iterator().next();
+    }
+
+    // the parents of a commit, adding it to MISSING if it cannot be read.
+    // Commits made before the graph existed are read for their parents.
+    private static List<String> parents(CommitGraph graph, String commitID, Set<String> missing){
+
+        if (graph.contains(commitID)){
+            return graph.getParents(commitID);
+        }
+
+        Commit commit = Commit.readCommitFromDisk(commitID);
+        if (commit == null){
+            missing.add("commit " + commitID);
+            return Collections.emptyList();
+        }
+        return commit.getParentCommitIDs_();
+    }
+
+    // the unmarked objects in DIR that are older than the grace period
+    private List<File> sweepable(File dir, Set<String> marked){
+        List<File> files = new ArrayList<>();
+
+        for (String objectID : Utils.plainFilenamesIn(dir)){
+            File file = Utils.join(dir, objectID);
+            if (!marked.contains(objectID) && isOld(file)){
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    // the objects left in DIR that the branches and the staging area do
+    // not reach: those kept for the grace period, and their history
+    private int countUnreachable(File dir){
+        int count = 0;
+        for (String objectID : Utils.plainFilenamesIn(dir)){
+            if (!reachable_.contains(objectID)){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // delete FILES in parallel, adding their sizes to BYTES, and return the
+    // names of those deleted
+    private static Set<String> delete(List<File> files, LongAdder bytes){
+        Set<String> deleted = ConcurrentHashMap.newKeySet();
+
+        files.parallelStream().forEach(file -> {
+            long length = file.length();
+            if (file.delete()){
+                bytes.add(length);
+                deleted.add(file.getName());
+            }
+        });
+        return deleted;
+    }
+}
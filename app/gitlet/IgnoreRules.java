@@ -0,0 +1,334 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/* The patterns of the .gitletignore file at the top of the working
+   directory, naming untracked files that status does not list and that
+   adding a directory skips. Each line is a pattern as in .gitignore:
+
+   - blank lines and lines starting with # are skipped
+   - a leading ! includes again what an earlier pattern excluded, except
+     inside an excluded directory, which is never read
+   - a trailing / matches directories only
+   - a pattern with a / at its start or middle matches paths from the top
+     of the working directory, otherwise it matches a name at any depth
+   - * and ? match within a name, [...] matches one character of a class,
+     and ** matches any number of directories
+
+   The last pattern that matches a path decides. Patterns are compiled by
+   kind so that a path is checked against few of them: exact names are
+   looked up in a map, *.ext patterns by extension, and patterns from the
+   top in a trie of their directories, leaving only other name globs and
+   patterns with ** to be matched one by one. */
+class IgnoreRules {
+
+    /* A pattern's place in the file and what a match means. */
+    private static final class Rule {
+        private final int index_;
+        private final boolean negated_;
+        private final boolean directoryOnly_;
+
+        Rule(int index, boolean negated, boolean directoryOnly){
+            index_ = index;
+            negated_ = negated;
+            directoryOnly_ = directoryOnly;
+        }
+    }
+
+    /* A rule matched by a regular expression. */
+    private static final class GlobRule {
+        private final Pattern pattern_;
+        private final Rule rule_;
+
+        GlobRule(Pattern pattern, Rule rule){
+            pattern_ = pattern;
+            rule_ = rule;
+        }
+    }
+
+    /* A directory level of the patterns matched from the top. */
+    private static final class TrieNode {
+        private final Map<String, TrieNode> children_ = new HashMap<>();
+        // children whose name is a glob, keyed by the glob
+        private final Map<String, Pattern> globs_ = new LinkedHashMap<>();
+        private final Map<String, TrieNode> globChildren_ = new HashMap<>();
+        // rules whose last name is at this node
+        private final List<Rule> rules_ = new ArrayList<>();
+
+        TrieNode child(String name){
+            if (!hasWildcard(name)){
+                return children_.computeIfAbsent(name, k -> new TrieNode());
+            }
+            globs_.computeIfAbsent(name, k -> Pattern.compile(nameRegex(k)));
+            return globChildren_.computeIfAbsent(name, k -> new TrieNode());
+        }
+    }
+
+    private static final IgnoreRules NONE = new IgnoreRules();
+
+    // rules on a name, by the name
+    private final Map<String, List<Rule>> names_ = new HashMap<>();
+    // rules of the form *.ext, by the extension with its dot
+    private final Map<String, List<Rule>> extensions_ = new HashMap<>();
+    // other rules on a name
+    private final List<GlobRule> nameGlobs_ = new ArrayList<>();
+    // rules on the path from the top without **
+    private final TrieNode anchored_ = new TrieNode();
+    // rules on the path with **
+    private final List<GlobRule> pathGlobs_ = new ArrayList<>();
+    private int count_;
+
+    private IgnoreRules(){
+    }
+
+    // the rules of the working directory's .gitletignore, if it has one
+    static IgnoreRules load(){
+        File file = new File(Utils.IGNORE_FILE);
+        if (!file.isFile()){
+            return NONE;
+        }
+        return parse(new String(Utils.readContents(file), StandardCharsets.UTF_8));
+    }
+
+    static IgnoreRules parse(String text){
+
+        IgnoreRules rules = new IgnoreRules();
+        for (String line : text.split("\r?\n")){
+            rules.addPattern(line);
+        }
+        return rules;
+    }
+
+    private void addPattern(String line){
+
+        String pattern = stripTrailingSpaces(line);
+        if (pattern.isEmpty() || pattern.startsWith("#")){
+            return;
+        }
+
+        boolean negated = pattern.startsWith("!");
+        if (negated){
+            pattern = pattern.substring(1);
+        } else if (pattern.startsWith("\\#") || pattern.startsWith("\\!")){
+            pattern = pattern.substring(1);
+        }
+
+        boolean directoryOnly = pattern.endsWith("/");
+        if (directoryOnly){
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+
+        boolean anchored = pattern.contains("/");
+        if (pattern.startsWith("/")){
+            pattern = pattern.substring(1);
+        }
+        if (pattern.isEmpty()){
+            return;
+        }
+
+        Rule rule = new Rule(count_++, negated, directoryOnly);
+
+        if (!anchored){
+            if (!hasWildcard(pattern)){
+                names_.computeIfAbsent(pattern, k -> new ArrayList<>()).add(rule);
+            } else if (isExtension(pattern)){
+                extensions_.computeIfAbsent(pattern.substring(1), k -> new ArrayList<>()).add(rule);
+            } else {
+                nameGlobs_.add(new GlobRule(Pattern.compile(nameRegex(pattern)), rule));
+            }
+        } else if (pattern.contains("**")){
+            pathGlobs_.add(new GlobRule(Pattern.compile(pathRegex(pattern)), rule));
+        } else {
+            TrieNode node = anchored_;
+            for (String name : pattern.split("/")){
+                node = node.child(name);
+            }
+            node.rules_.add(rule);
+        }
+    }
+
+    // true if PATH, relative to the top of the working directory with /
+    // separators, is ignored. Its directories are assumed not to be, as a
+    // walk does not enter ignored directories.
+    boolean isIgnored(String path, boolean isDirectory){
+
+        if (count_ == 0){
+            return false;
+        }
+
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        Rule last = latest(null, names_.get(name), isDirectory);
+
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0){
+            last = latest(last, extensions_.get(name.substring(dot)), isDirectory);
+        }
+
+        for (GlobRule glob : nameGlobs_){
+            if (isLater(glob.rule_, last, isDirectory) && glob.pattern_.matcher(name).matches()){
+                last = glob.rule_;
+            }
+        }
+
+        for (TrieNode node : matchAnchored(path)){
+            last = latest(last, node.rules_, isDirectory);
+        }
+
+        for (GlobRule glob : pathGlobs_){
+            if (isLater(glob.rule_, last, isDirectory) && glob.pattern_.matcher(path).matches()){
+                last = glob.rule_;
+            }
+        }
+
+        return last != null && !last.negated_;
+    }
+
+    // true if PATH or one of its directories is ignored
+    boolean isIgnoredWithParents(String path, boolean isDirectory){
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)){
+            if (isIgnored(path.substring(0, slash), true)){
+                return true;
+            }
+        }
+        return isIgnored(path, isDirectory);
+    }
+
+    // the trie nodes that the names of PATH lead to
+    private List<TrieNode> matchAnchored(String path){
+
+        List<TrieNode> nodes = Collections.singletonList(anchored_);
+        for (String name : path.split("/")){
+
+            List<TrieNode> next = new ArrayList<>();
+            for (TrieNode node : nodes){
+                TrieNode child = node.children_.get(name);
+                if (child != null){
+                    next.add(child);
+                }
+                for (Map.Entry<String, Pattern> glob : node.globs_.entrySet()){
+                    if (glob.getValue().matcher(name).matches()){
+                        next.add(node.globChildren_.get(glob.getKey()));
+                    }
+                }
+            }
+
+            if (next.isEmpty()){
+                return next;
+            }
+            nodes = next;
+        }
+        return nodes;
+    }
+
+    private static boolean isLater(Rule rule, Rule last, boolean isDirectory){
+        return (last == null || rule.index_ > last.index_) && (isDirectory || !rule.directoryOnly_);
+    }
+
+    private static Rule latest(Rule last, List<Rule> rules, boolean isDirectory){
+        if (rules != null){
+            for (Rule rule : rules){
+                if (isLater(rule, last, isDirectory)){
+                    last = rule;
+                }
+            }
+        }
+        return last;
+    }
+
+    /* PATTERNS */
+
+    private static boolean hasWildcard(String pattern){
+        for (int i = 0; i < pattern.length(); i++){
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '\\'){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // true for *.ext, where the extension has no wildcard or other dot
+    private static boolean isExtension(String pattern){
+        return pattern.startsWith("*.") && !hasWildcard(pattern.substring(1))
+                && pattern.indexOf('.', 2) < 0;
+    }
+
+    // trailing spaces are dropped unless escaped with a backslash
+    private static String stripTrailingSpaces(String line){
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ' ' && !(end > 1 && line.charAt(end - 2) == '\\')){
+            end--;
+        }
+        return line.substring(0, end);
+    }
+
+    // a regular expression for the whole path, with ** matching any number
+    // of directories
+    private static String pathRegex(String pattern){
+
+        StringBuilder regex = new StringBuilder();
+        String[] names = pattern.split("/");
+
+        for (int i = 0; i < names.length; i++){
+            boolean last = i == names.length - 1;
+
+            if (names[i].equals("**")){
+                regex.append(last ? ".*" : "(?:[^/]*/)*");
+            } else {
+                regex.append(nameRegex(names[i]));
+                if (!last){
+                    regex.append('/');
+                }
+            }
+        }
+        return regex.toString();
+    }
+
+    // a regular expression for a single name
+    private static String nameRegex(String glob){
+
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++){
+            char c = glob.charAt(i);
+
+            if (c == '*'){
+                regex.append("[^/]*");
+            } else if (c == '?'){
+                regex.append("[^/]");
+            } else if (c == '[' && classEnd(glob, i) > 0){
+                int end = classEnd(glob, i);
+                String members = glob.substring(i + 1, end);
+                if (members.startsWith("!")){
+                    members = "^" + members.substring(1);
+                }
+                regex.append('[').append(members.replace("[", "\\[").replace("&", "\\&")).append(']');
+                i = end;
+            } else if (c == '\\' && i + 1 < glob.length()){
+                regex.append(quote(glob.charAt(++i)));
+            } else {
+                regex.append(quote(c));
+            }
+        }
+        return regex.toString();
+    }
+
+    // the index of the ] closing the class opened at START, or -1; a ] first
+    // in the class is a member
+    private static int classEnd(String glob, int start){
+        int i = start + 1;
+        if (i < glob.length() && (glob.charAt(i) == '!' || glob.charAt(i) == '^')){
+            i++;
+        }
+        if (i < glob.length() && glob.charAt(i) == ']'){
+            i++;
+        }
+        return glob.indexOf(']', i);
+    }
+
+    private static String quote(char c){
+        return Character.isLetterOrDigit(c) ? String.valueOf(c) : "\\" + c;
+    }
+}
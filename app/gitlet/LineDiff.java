@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* Longest common subsequence of two sequences of lines, found with Myers'
+   O(ND) difference algorithm in its linear-space form: the middle snake of
+   a region is found by searching forwards from its start and backwards from
+   its end at once, and the regions before and after it are compared
+   recursively. Besides the result, memory is linear in the size of the
+   region being compared.
+
+   Lines are compared as ints; callers number their lines so that equal
+   lines get equal numbers. */
+class LineDiff {
+
+    /* A run of LENGTH equal lines starting at A_START in a and B_START in b. */
+    static class Match {
+        final int aStart_;
+        final int bStart_;
+        final int length_;
+
+        Match(int aStart, int bStart, int length){
+            aStart_ = aStart;
+            bStart_ = bStart;
+            length_ = length;
+        }
+    }
+
+    private final int[] a_;
+    private final int[] b_;
+    // furthest x reached on each diagonal by the forward and backward searches
+    private final int[] forward_;
+    private final int[] backward_;
+    private final List<Match> matches_ = new ArrayList<>();
+
+    private LineDiff(int[] a, int[] b, int maxEdits){
+        a_ = a;
+        b_ = b;
+        forward_ = new int[2 * maxEdits + 3];
+        backward_ = new int[2 * maxEdits + 3];
+    }
+
+    // the runs of equal lines shared by a and b, in order
+    static List<Match> matches(int[] a, int[] b){
+        return matches(a, 0, a.length, b, 0, b.length);
+    }
+
+    // the runs of equal lines shared by a[aStart, aEnd) and b[bStart, bEnd)
+    static List<Match> matches(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd){
+        int maxEdits = (aEnd - aStart + bEnd - bStart + 1) / 2;
+        LineDiff diff = new LineDiff(a, b, maxEdits);
+        diff.compare(aStart, aEnd, bStart, bEnd);
+        return diff.matches_;
+    }
+
+    private void addMatch(int aStart, int bStart, int length){
+
+        if (length == 0){
+            return;
+        }
+
+        // join runs that continue each other
+        if (!matches_.isEmpty()){
+            Match last = matches_.get(matches_.size() - 1);
+            if (last.aStart_ + last.length_ == aStart && last.bStart_ + last.length_ == bStart){
+                matches_.set(matches_.size() - 1, new Match(last.aStart_, last.bStart_, last.length_ + length));
+                return;
+            }
+        }
+        matches_.add(new Match(aStart, bStart, length));
+    }
+
+    private void compare(int aStart, int aEnd, int bStart, int bEnd){
+
+        int prefix = 0;
+        while (aStart + prefix < aEnd && bStart + prefix < bEnd && a_[aStart + prefix] == b_[bStart + prefix]){
+            prefix++;
+        }
+        addMatch(aStart, bStart, prefix);
+        aStart += prefix;
+        bStart += prefix;
+
+        int suffix = 0;
+        while (aEnd - suffix > aStart && bEnd - suffix > bStart && a_[aEnd - suffix - 1] == b_[bEnd - suffix - 1]){
+            suffix++;
+        }
+
+        // with both ends trimmed, a region where either side is empty holds
+        // no matches, and the other regions have an edit distance of at
+        // least two, so both halves around the middle snake are smaller
+        if (aStart < aEnd - suffix && bStart < bEnd - suffix){
+            int[] snake = middleSnake(aStart, aEnd - suffix, bStart, bEnd - suffix);
+
+            compare(aStart, snake[0], bStart, snake[1]);
+            addMatch(snake[0], snake[1], snake[2] - snake[0]);
+            compare(snake[2], aEnd - suffix, snake[3], bEnd - suffix);
+        }
+
+        addMatch(aEnd - suffix, bEnd - suffix, suffix);
+    }
+
+    // the middle snake of a[aStart, aEnd) and b[bStart, bEnd), as the
+    // absolute positions {x, y, u, v} of its start (x, y) and end (u, v)
+    private int[] middleSnake(int aStart, int aEnd, int bStart, int bEnd){
+
+        int n = aEnd - aStart;
+        int m = bEnd - bStart;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int maxEdits = (n + m + 1) / 2;
+        int offset = maxEdits + 1;
+
+        forward_[offset + 1] = 0;
+        backward_[offset + 1] = 0;
+
+        for (int d = 0; d <= maxEdits; d++){
+
+            // forward search from (0, 0); diagonal k holds points with x - y = k
+            for (int k = -d; k <= d; k += 2){
+                int x = k == -d || (k != d && forward_[offset + k - 1] < forward_[offset + k + 1])
+                        ? forward_[offset + k + 1] : forward_[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+
+                while (x < n && y < m && a_[aStart + x] == b_[bStart + y]){
+                    x++;
+                    y++;
+                }
+                forward_[offset + k] = x;
+
+                // the backward search on the same diagonal has reached here
+                int backK = delta - k;
+                if (odd && backK >= -(d - 1) && backK <= d - 1 && x + backward_[offset + backK] >= n){
+                    return new int[]{aStart + startX, bStart + startY, aStart + x, bStart + y};
+                }
+            }
+
+            // backward search from (n, m), counting steps from the end
+            for (int k = -d; k <= d; k += 2){
+                int x = k == -d || (k != d && backward_[offset + k - 1] < backward_[offset + k + 1])
+                        ? backward_[offset + k + 1] : backward_[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+
+                while (x < n && y < m && a_[aEnd - 1 - x] == b_[bEnd - 1 - y]){
+                    x++;
+                    y++;
+                }
+                backward_[offset + k] = x;
+
+                int forwardK = delta - k;
+                if (!odd && forwardK >= -d && forwardK <= d && x + forward_[offset + forwardK] >= n){
+                    return new int[]{aEnd - x, bEnd - y, aEnd - startX, bEnd - startY};
+                }
+            }
+        }
+
+        throw new IllegalStateException("no middle snake found");
+    }
+}
@@ -1,6 +1,12 @@
 package gitlet;
 
 import java.io.*;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /* Driver class for Gitlet
    @author Dhruv Sawhney
@@ -8,6 +14,8 @@ import java.io.*;
 public class Main {
 
     private CommitTree tree_;
+    // the repository state when the commit-tree was opened, or null before
+    private volatile String stamp_;
 
     private CommitTree getTree_() {
         return tree_;
@@ -18,7 +26,7 @@ public class Main {
     }
 
     // create the .gitlet directory
-    // add the two subdirectories: Commit, Blobs
+    // add the three subdirectories: Commit, Blobs, Trees
     private boolean createGitletDirectory(){
         File dir = new File(Utils.GITLET_DIR);
 
@@ -41,59 +49,42 @@ public class Main {
         if (!blobDir.exists()){
             blobDir.mkdir();
         }
+
+        File treeDir = Utils.join(Utils.GITLET_DIR, Utils.TREES_DIR);
+
+        if (!treeDir.exists()){
+            treeDir.mkdir();
+        }
         return true;
     }
 
+    // write back the parts of the commit-tree that the command changed
     private void SaveTree(){
 
-        File outFile = Utils.join(Utils.GITLET_DIR, Utils.COMMIT_TREE);
-
-        try {
-
-            if(!outFile.exists()){
-                outFile.createNewFile();
-            }
-
-            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(outFile));
-            out.writeObject(tree_);
-            out.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (tree_ != null){
+            Metrics.Timer timer = Metrics.start(Metrics.Phase.TREE_SAVE);
+            tree_.save();
+            Metrics.end(timer, 0);
         }
     }
 
+    // open the commit-tree; its parts are read lazily as commands need them
     private CommitTree loadTree(){
-
-        File inFile = Utils.join(Utils.GITLET_DIR, Utils.COMMIT_TREE);
-
-        if (!inFile.exists()){
-            return null;
-        }
-
-        CommitTree tree = null;
-        try {
-            ObjectInputStream inp = new ObjectInputStream(new FileInputStream(inFile));
-            tree = (CommitTree) inp.readObject();
-            inp.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-        }
-
+        Metrics.Timer timer = Metrics.start(Metrics.Phase.TREE_LOAD);
+        CommitTree tree = CommitTree.open();
+        Metrics.end(timer, 0);
         return tree;
     }
 
-    private static void checkNumArgs(int numArgs, String[] args){
+    // true if ARGS has the expected length. Commands print and return rather
+    // than exit, as a daemon runs many of them in one process.
+    private static boolean checkNumArgs(int numArgs, String[] args){
 
         if (args.length != numArgs){
             System.out.println("Incorrect operands.");
-            System.exit(1);
+            return false;
         }
+        return true;
     }
 
     private void checkoutArgs(String[] args){
@@ -123,106 +114,374 @@ public class Main {
         }
     }
 
-    /* Usage: java gitlet.Main ARGS, where ARGS contains
-       <COMMAND> <OPERAND> .... */
+    private void findArgs(String[] args){
+
+        if (args.length == 2){
+            this.getTree_().find(args[1]);
+        } else if (args.length == 3 && args[1].equals("--token")){
+            this.getTree_().findTokens(args[2]);
+        } else if (args.length == 3 && args[1].equals("--substring")){
+            this.getTree_().findSubstring(args[2]);
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    // options may come before or after the commits to compare
+    private void diffArgs(String[] args){
+
+        int mode = UnifiedDiff.MODE_PATCH;
+        List<String> commitIDs = new ArrayList<>();
+
+        for (int i = 1; i < args.length; i++){
+            if (args[i].equals("--name-only")){
+                mode = UnifiedDiff.MODE_NAME_ONLY;
+            } else if (args[i].equals("--stat")){
+                mode = UnifiedDiff.MODE_STAT;
+            } else {
+                commitIDs.add(args[i]);
+            }
+        }
+
+        if (commitIDs.size() > 2){
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        this.getTree_().diff(commitIDs, mode);
+    }
+
+    // options come before the range, and a file after --
+    private void logArgs(String[] args){
+
+        int limit = -1;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        String range = null;
+        String path = null;
+
+        try {
+            for (int i = 1; i < args.length; i++){
+                String arg = args[i];
+
+                if (arg.equals("-n") && i + 1 < args.length){
+                    limit = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--since") && i + 1 < args.length){
+                    since = parseLogDate(args[++i], false);
+                } else if (arg.startsWith("--since=")){
+                    since = parseLogDate(arg.substring("--since=".length()), false);
+                } else if (arg.equals("--until") && i + 1 < args.length){
+                    until = parseLogDate(args[++i], true);
+                } else if (arg.startsWith("--until=")){
+                    until = parseLogDate(arg.substring("--until=".length()), true);
+                } else if (arg.equals("--") && i == args.length - 2){
+                    path = args[++i];
+                } else if (range == null && !arg.startsWith("-")){
+                    range = arg;
+                } else {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+            }
+        } catch (NumberFormatException | ParseException e) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+
+        if (limit < -1){
+            System.out.println("Incorrect operands.");
+            return;
+        }
+
+        // A..B is B's history without A's; either side may be left empty
+        String excluded = null;
+        String to = range;
+        if (range != null && range.contains("..")){
+            int dots = range.indexOf("..");
+            excluded = range.substring(0, dots);
+            to = range.substring(dots + 2);
+        }
+
+        this.getTree_().log(excluded, to, limit, since, until, path);
+    }
+
+    // the time of a date, as a commit timestamp or a day; a day given as an
+    // upper bound includes the whole day
+    private static long parseLogDate(String date, boolean endOfDay) throws ParseException {
+        if (date.matches("\\d{4}-\\d{2}-\\d{2}")){
+            long day = new SimpleDateFormat("yyyy-MM-dd").parse(date).getTime();
+            return endOfDay ? day + TimeUnit.DAYS.toMillis(1) - 1 : day;
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        format.setLenient(false);
+        return format.parse(date).getTime();
+    }
+
+    // print a setting, or change it if a value is given
+    private static void configArgs(String[] args){
+
+        if (args.length != 2 && args.length != 3){
+            System.out.println("Incorrect operands.");
+            return;
+        }
+
+        if (args.length == 2){
+            String value = Config.get(args[1]);
+            if (value != null){
+                System.out.println(value);
+            }
+        } else if (!Config.isValid(args[1], args[2])){
+            System.out.println("Invalid config value.");
+        } else {
+            Config.set(args[1], args[2]);
+        }
+    }
+
+    /* Usage: java gitlet.Main [--trace[=FILE]] ARGS, where ARGS contains
+       <COMMAND> <OPERAND> ....
+       --trace prints where the command spent its time to standard error,
+       or writes it to FILE as JSON. */
     public static void main(String... args) {
 
+        String trace = null;
+        if (args.length > 0 && (args[0].equals("--trace") || args[0].startsWith("--trace="))){
+            trace = args[0];
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
         if (args.length == 0){
             System.out.println("Please enter a command");
             return;
         }
 
-        // load commit-tree if .gitlet initialized
+        // hand the command to the daemon serving this repository, if any.
+        // Traced commands run here, where their phases are measured.
+        if (trace == null && Daemon.forward(args)){
+            return;
+        }
+
+        if (trace != null){
+            Metrics.enableTracing();
+        }
+
+        // the commit-tree is opened once the command holds the lock it needs
         Main program = new Main();
-        program.setTree_(program.loadTree());
+        program.execute(args);
+
+        if (trace != null && trace.startsWith("--trace=")){
+            Metrics.writeJson(String.join(" ", args), new File(trace.substring("--trace=".length())));
+        } else if (trace != null){
+            Metrics.printSummary(String.join(" ", args));
+        }
+    }
+
+    // reopen the commit-tree from disk, and forget the indexes, caches and
+    // packs read so far, which another process may have changed since
+    void reload(){
+        // taken first, so that a change made while opening is seen as one
+        stamp_ = RepositoryState.stamp();
+        CommitGraph.reset();
+        CommitIndex.reset();
+        MessageIndex.reset();
+        StatCache.reset();
+        WatchIndex.reset();
+        PackFile.reset();
+        Config.reset();
+        Blob.forgetStored();
+        Tree.forgetStored();
+        setTree_(loadTree());
+    }
 
-        if (program.getTree_() == null && !args[0].equals("init")){
-            System.out.println("Not in an initialized gitlet directory.");
+    // true if the commit-tree was never opened, or another process changed
+    // the repository since
+    boolean isStale(){
+        return stamp_ == null || !stamp_.equals(RepositoryState.stamp());
+    }
+
+    // run one command against the open commit-tree and save what it changed
+    void execute(String... args){
+
+        if (args.length == 0){
+            System.out.println("Please enter a command");
             return;
         }
 
+        String command = args[0];
+        boolean readOnly = Daemon.READ_ONLY_COMMANDS.contains(command);
+
+        // commands that change the repository hold its lock exclusively from
+        // reading HEAD, the branches and the staging area until they are
+        // saved, so that none reads what another is halfway through writing;
+        // a daemon holds none while it waits
+        RepositoryLock lock = null;
+        if (!command.equals("init") && !command.equals("daemon") && !readOnly && new File(Utils.GITLET_DIR).isDirectory()){
+            try {
+                lock = RepositoryLock.acquire();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+
+        try {
+            // reopen what another process changed before the lock was taken
+            if (lock != null ? isStale() : stamp_ == null){
+                reload();
+            }
+
+            if (this.getTree_() == null && !command.equals("init")){
+                System.out.println("Not in an initialized gitlet directory.");
+                return;
+            }
+
+            run(args);
+
+            // nothing else changes the repository until the lock is released
+            if (lock != null){
+                stamp_ = RepositoryState.stamp();
+            }
+        } finally {
+            if (lock != null){
+                try {
+                    lock.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void run(String[] args){
+
         String command = args[0];
         switch (command){
 
             case "init":
 
-                checkNumArgs(1, args);
-                boolean created = program.createGitletDirectory();
-                if (created){
-                    program.setTree_(CommitTree.initCommitTree());
+                if (checkNumArgs(1, args)){
+                    boolean created = this.createGitletDirectory();
+                    if (created){
+                        this.setTree_(CommitTree.initCommitTree());
+                    }
                 }
                 break;
 
             case "add":
 
-                checkNumArgs(2, args);
-                program.getTree_().add(args[1]);
+                if (checkNumArgs(2, args)){
+                    this.getTree_().add(args[1]);
+                }
                 break;
 
             case "commit":
 
-                checkNumArgs(2, args);
-                program.getTree_().commit(args[1]);
+                if (checkNumArgs(2, args)){
+                    this.getTree_().commit(args[1]);
+                }
                 break;
 
             case "rm":
 
-                checkNumArgs(2, args);
-                program.getTree_().removeFile(args[1]);
+                if (checkNumArgs(2, args)){
+                    this.getTree_().removeFile(args[1]);
+                }
                 break;
 
             case "log":
 
-                checkNumArgs(1, args);
-                program.getTree_().log();
+                this.logArgs(args);
                 break;
 
             case "global-log":
 
-                checkNumArgs(1, args);
-                program.getTree_().globalLog();
+                if (checkNumArgs(1, args)){
+                    this.getTree_().globalLog();
+                }
                 break;
 
             case "find":
 
-                checkNumArgs(2, args);
-                program.getTree_().find(args[1]);
+                this.findArgs(args);
+                break;
+
+            case "diff":
+
+                this.diffArgs(args);
                 break;
 
             case "status":
 
-                checkNumArgs(1, args);
-                program.getTree_().status();
+                if (checkNumArgs(1, args)){
+                    this.getTree_().status();
+                }
                 break;
 
             case "checkout":
 
                 // check arguments and invoke specific checkout command
-                program.checkoutArgs(args);
+                this.checkoutArgs(args);
                 break;
 
             case "branch":
 
-                checkNumArgs(2, args);
-                program.getTree_().branch(args[1]);
+                if (checkNumArgs(2, args)){
+                    this.getTree_().branch(args[1]);
+                }
                 break;
 
             case "rm-branch":
 
-                checkNumArgs(2, args);
-                program.getTree_().removeBranch(args[1]);
+                if (checkNumArgs(2, args)){
+                    this.getTree_().removeBranch(args[1]);
+                }
                 break;
 
             case "reset":
 
-                checkNumArgs(2, args);
-                program.getTree_().reset(args[1]);
+                if (checkNumArgs(2, args)){
+                    this.getTree_().reset(args[1]);
+                }
                 break;
 
             case "merge":
 
-                checkNumArgs(2, args);
-                program.getTree_().merge(args[1]);
+                if (checkNumArgs(2, args)){
+                    this.getTree_().merge(args[1]);
+                }
+                break;
+
+            case "repack":
+
+                if (checkNumArgs(1, args)){
+                    this.getTree_().repack();
+                }
+                break;
+
+            case "gc":
+
+                if (checkNumArgs(1, args)){
+                    this.getTree_().gc();
+                }
+                break;
+
+            case "migrate":
+
+                // unpacked objects are packed again once they are migrated
+                if (checkNumArgs(1, args) && ObjectCodec.migrate()){
+                    this.getTree_().repack();
+                }
+                break;
+
+            case "config":
+
+                configArgs(args);
+                break;
+
+            case "daemon":
+
+                if (checkNumArgs(1, args)){
+                    Daemon.serve(this);
+                }
                 break;
 
             default:
@@ -231,7 +490,35 @@ public class Main {
                 break;
         }
 
+        // a read-only command writes nothing, unless a daemon runs it: the
+        // daemon saves what it brought up to date for commands run without it
+        if (Daemon.READ_ONLY_COMMANDS.contains(command)){
+            if (Daemon.isServing()){
+                saveCaches();
+            }
+            return;
+        }
+
         // save commit-tree to disk
-        program.SaveTree();
+        this.SaveTree();
+        StatCache.save();
+        WatchIndex.save();
+    }
+
+    // save the stat cache and watch index that a read-only command run by a
+    // daemon brought up to date. Such a command runs without the repository
+    // lock, so the daemon takes the lock shared just for this, and skips
+    // saving while a command that changes the repository holds it.
+    // Read-only commands that a daemon runs together save one at a time, as
+    // a process holds one lock.
+    private static synchronized void saveCaches(){
+        try (RepositoryLock lock = RepositoryLock.tryAcquireShared()) {
+            if (lock != null){
+                StatCache.save();
+                WatchIndex.save();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 }
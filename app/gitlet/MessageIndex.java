@@ -0,0 +1,454 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/* Index of commit messages that answers find without loading any Commit.
+   The file is an append-only log with one record per commit:
+   20-byte commit ID, int message length, UTF-8 message bytes
+
+   In memory the log is grouped by message, and an inverted index maps each
+   lower-cased word of a message to the commits that contain it. Each commit
+   is indexed once however many branches reach it. Records are appended
+   while the log is locked.
+
+   So that a reader need not split every message into words again, commit,
+   which holds the repository lock, checkpoints the grouped messages and
+   their words to message-index-checkpoint once the log has grown by
+   CHECKPOINT_INTERVAL records. A reader loads the checkpoint and then the
+   records after it, and never writes:
+
+   "MCKP", int version, long length of the log covered, long offset and
+   20-byte ID of the last record covered, varint message count, then per
+   message: string, varint commit count, 20-byte IDs; varint word count,
+   then per word: string, varint message count, varint message numbers
+
+   The checkpoint is used only while the log still holds its last record
+   at the same offset, which stops being so once gc drops an earlier
+   record. */
+class MessageIndex {
+
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final int ID_LENGTH = 20;
+    // records after the checkpoint that make commit write a new one
+    private static final int CHECKPOINT_INTERVAL = 256;
+
+    // the index of the repository, opened on first use
+    private static MessageIndex index_;
+
+    private final File file_;
+    private final File checkpointFile_;
+    // mapping of message to the IDs of commits with that message, in commit order
+    private final Map<String, Set<String>> messageToCommitIDs_;
+    // mapping of word to the messages containing it
+    private final Map<String, Set<String>> tokenToMessages_;
+    private final Set<String> indexedCommitIDs_;
+
+    // the length of the log read, and the offset and ID of its last record
+    private long length_;
+    private long lastOffset_;
+    private String lastID_;
+    // records read since the checkpoint
+    private int uncheckpointed_;
+
+    private MessageIndex(File file, File checkpointFile){
+        file_ = file;
+        checkpointFile_ = checkpointFile;
+        messageToCommitIDs_ = new LinkedHashMap<>();
+        tokenToMessages_ = new HashMap<>();
+        indexedCommitIDs_ = new HashSet<>();
+
+        if (file_.exists()){
+            refresh();
+        } else {
+            // repositories created before the index existed
+            for (String commitID : CommitIndex.get().getCommitIDs()){
+                add(Commit.readCommitFromDisk(commitID));
+            }
+        }
+    }
+
+    static synchronized MessageIndex get(){
+        if (index_ == null){
+            index_ = new MessageIndex(Utils.join(Utils.GITLET_DIR, Utils.MESSAGE_INDEX),
+                    Utils.join(Utils.GITLET_DIR, Utils.MESSAGE_CHECKPOINT));
+        }
+        return index_;
+    }
+
+    // forget the index, so that it is read again on next use
+    static synchronized void reset(){
+        index_ = null;
+    }
+
+    // read the records appended since the log was last read, by this or any
+    // other process
+    private void refresh(){
+        if (!file_.exists()){
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file_.toPath(), StandardOpenOption.READ)) {
+            refresh(channel);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void refresh(FileChannel channel) throws IOException {
+
+        if (!isCovered(channel, length_, lastOffset_, lastID_)){
+            // gc rewrote the log
+            clear();
+        }
+        if (length_ == 0){
+            loadCheckpoint(channel);
+        }
+
+        long size = channel.size();
+        if (size == length_){
+            return;
+        }
+
+        ByteBuffer tail = ByteBuffer.allocate((int) (size - length_));
+        while (tail.hasRemaining() && channel.read(tail, length_ + tail.position()) >= 0){
+            // read on
+        }
+        tail.flip();
+
+        byte[] id = new byte[ID_LENGTH];
+        while (tail.remaining() >= ID_LENGTH + 4){
+            int start = tail.position();
+            tail.get(id);
+            int messageLength = tail.getInt();
+            if (messageLength < 0 || tail.remaining() < messageLength){
+                // the rest of a record is not written yet
+                tail.position(start);
+                break;
+            }
+
+            byte[] message = new byte[messageLength];
+            tail.get(message);
+            insert(Utils.bytesToHex(id), new String(message, StandardCharsets.UTF_8));
+
+            lastOffset_ = length_ + start;
+            lastID_ = Utils.bytesToHex(id);
+            uncheckpointed_++;
+        }
+        length_ += tail.position();
+    }
+
+    // true if the log read through CHANNEL has the record with ID LASTID at
+    // LASTOFFSET, ending at LENGTH, so that it begins with the records read
+    private static boolean isCovered(FileChannel channel, long length, long lastOffset, String lastID) throws IOException {
+        if (lastID == null){
+            return length == 0;
+        }
+        if (channel.size() < length){
+            return false;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(ID_LENGTH + 4);
+        while (record.hasRemaining() && channel.read(record, lastOffset + record.position()) >= 0){
+            // read on
+        }
+        if (record.hasRemaining()){
+            return false;
+        }
+        record.flip();
+
+        byte[] id = new byte[ID_LENGTH];
+        record.get(id);
+        return Utils.bytesToHex(id).equals(lastID) && lastOffset + ID_LENGTH + 4 + record.getInt() == length;
+    }
+
+    private void clear(){
+        messageToCommitIDs_.clear();
+        tokenToMessages_.clear();
+        indexedCommitIDs_.clear();
+        length_ = 0;
+        lastOffset_ = 0;
+        lastID_ = null;
+        uncheckpointed_ = 0;
+    }
+
+    // load the checkpoint, if it covers the start of the log read through CHANNEL
+    private void loadCheckpoint(FileChannel channel){
+
+        if (!checkpointFile_.exists()){
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile_)))) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            if (!new String(magic, StandardCharsets.US_ASCII).equals("MCKP") || in.readInt() != CHECKPOINT_VERSION){
+                return;
+            }
+
+            long length = in.readLong();
+            long lastOffset = in.readLong();
+            String lastID = ObjectCodec.readID(in);
+            if (!isCovered(channel, length, lastOffset, lastID)){
+                return;
+            }
+
+            String[] messages = new String[(int) ObjectCodec.readVarint(in)];
+            for (int i = 0; i < messages.length; i++){
+                messages[i] = ObjectCodec.readString(in);
+
+                int count = (int) ObjectCodec.readVarint(in);
+                Set<String> commitIDs = new LinkedHashSet<>();
+                for (int j = 0; j < count; j++){
+                    commitIDs.add(ObjectCodec.readID(in));
+                }
+                messageToCommitIDs_.put(messages[i], commitIDs);
+                indexedCommitIDs_.addAll(commitIDs);
+            }
+
+            int tokens = (int) ObjectCodec.readVarint(in);
+            for (int i = 0; i < tokens; i++){
+                String token = ObjectCodec.readString(in);
+
+                int count = (int) ObjectCodec.readVarint(in);
+                Set<String> containing = new LinkedHashSet<>();
+                for (int j = 0; j < count; j++){
+                    containing.add(messages[(int) ObjectCodec.readVarint(in)]);
+                }
+                tokenToMessages_.put(token, containing);
+            }
+
+            length_ = length;
+            lastOffset_ = lastOffset;
+            lastID_ = lastID;
+        } catch (IOException | RuntimeException e) {
+            // a damaged checkpoint is replaced after the log is read again
+            clear();
+        }
+    }
+
+    // checkpoint everything read, through a temporary file so that readers
+    // never see part of it
+    private void writeCheckpoint(){
+
+        File tempFile;
+        try {
+            tempFile = File.createTempFile(Utils.MESSAGE_CHECKPOINT + "-", ".tmp", file_.getParentFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeBytes("MCKP");
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeLong(length_);
+            out.writeLong(lastOffset_);
+            ObjectCodec.writeID(out, lastID_);
+
+            Map<String, Integer> numbers = new HashMap<>();
+            ObjectCodec.writeVarint(out, messageToCommitIDs_.size());
+            for (Map.Entry<String, Set<String>> entry : messageToCommitIDs_.entrySet()){
+                numbers.put(entry.getKey(), numbers.size());
+                ObjectCodec.writeString(out, entry.getKey());
+                ObjectCodec.writeVarint(out, entry.getValue().size());
+                for (String commitID : entry.getValue()){
+                    ObjectCodec.writeID(out, commitID);
+                }
+            }
+
+            ObjectCodec.writeVarint(out, tokenToMessages_.size());
+            for (Map.Entry<String, Set<String>> entry : tokenToMessages_.entrySet()){
+                ObjectCodec.writeString(out, entry.getKey());
+                ObjectCodec.writeVarint(out, entry.getValue().size());
+                for (String message : entry.getValue()){
+                    ObjectCodec.writeVarint(out, numbers.get(message));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+            return;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), checkpointFile_.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            uncheckpointed_ = 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // drop the records of commits deleted by gc, keeping the rest in order.
+    // The checkpoint no longer covers the log, and is replaced when it is
+    // next read.
+    static synchronized void remove(Set<String> commitIDs){
+
+        File file = Utils.join(Utils.GITLET_DIR, Utils.MESSAGE_INDEX);
+        if (!file.exists()){
+            return;
+        }
+
+        File tempFile;
+        try {
+            tempFile = File.createTempFile(Utils.MESSAGE_INDEX + "-", ".tmp", file.getParentFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            byte[] id = new byte[ID_LENGTH];
+
+            while (in.available() > 0){
+                in.readFully(id);
+                byte[] message = new byte[in.readInt()];
+                in.readFully(message);
+
+                if (!commitIDs.contains(Utils.bytesToHex(id))){
+                    out.write(id);
+                    out.writeInt(message.length);
+                    out.write(message);
+                }
+            }
+        } catch (EOFException e) {
+            // a record cut short by a crash is dropped
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+            return;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        // read again on next use
+        index_ = null;
+    }
+
+    private void insert(String commitID, String message){
+        if (!indexedCommitIDs_.add(commitID)){
+            return;
+        }
+
+        messageToCommitIDs_.computeIfAbsent(message, k -> new LinkedHashSet<>()).add(commitID);
+        for (String token : tokenize(message)){
+            tokenToMessages_.computeIfAbsent(token, k -> new LinkedHashSet<>()).add(message);
+        }
+    }
+
+    // split a message into lower-cased words
+    private static Set<String> tokenize(String text){
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : text.toLowerCase().split("[^\\p{L}\\p{N}]+")){
+            if (!token.isEmpty()){
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // index a newly written commit. The log is locked while the record is
+    // appended after those other processes appended, and the index is
+    // checkpointed if many records follow the checkpoint.
+    synchronized void add(Commit commit){
+
+        String commitID = commit.getThisCommitID_();
+        if (indexedCommitIDs_.contains(commitID)){
+            return;
+        }
+
+        byte[] message = commit.getCommitMessage_().getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(file_.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // released when the channel is closed; no other channel on the
+            // log is opened meanwhile, as that would release it early
+            channel.lock();
+            refresh(channel);
+            if (indexedCommitIDs_.contains(commitID)){
+                return;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(ID_LENGTH + 4 + message.length);
+            record.put(Utils.hexToBytes(commitID));
+            record.putInt(message.length);
+            record.put(message);
+            record.flip();
+
+            // a record cut short by a crash is written over
+            while (record.hasRemaining()){
+                channel.write(record, length_ + record.position());
+            }
+            channel.truncate(length_ + record.limit());
+
+            lastOffset_ = length_;
+            lastID_ = commitID;
+            length_ += record.limit();
+            uncheckpointed_++;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        insert(commitID, commit.getCommitMessage_());
+
+        if (uncheckpointed_ >= CHECKPOINT_INTERVAL){
+            writeCheckpoint();
+        }
+    }
+
+    // IDs of the commits whose message is exactly MESSAGE
+    synchronized List<String> findExact(String message){
+        refresh();
+        return new ArrayList<>(messageToCommitIDs_.getOrDefault(message, Collections.emptySet()));
+    }
+
+    // IDs of the commits whose message contains every word of QUERY
+    synchronized List<String> findTokens(String query){
+        refresh();
+
+        Set<String> messages = null;
+        for (String token : tokenize(query)){
+            Set<String> containing = tokenToMessages_.getOrDefault(token, Collections.emptySet());
+
+            if (messages == null){
+                messages = new LinkedHashSet<>(containing);
+            } else {
+                messages.retainAll(containing);
+            }
+        }
+
+        return commitsWithMessages(messages != null ? messages : Collections.emptySet());
+    }
+
+    // IDs of the commits whose message contains QUERY
+    synchronized List<String> findSubstring(String query){
+        refresh();
+
+        Set<String> messages = new LinkedHashSet<>();
+        for (String message : messageToCommitIDs_.keySet()){
+            if (message.contains(query)){
+                messages.add(message);
+            }
+        }
+
+        return commitsWithMessages(messages);
+    }
+
+    private List<String> commitsWithMessages(Collection<String> messages){
+        List<String> commitIDs = new ArrayList<>();
+        for (String message : messages){
+            commitIDs.addAll(messageToCommitIDs_.get(message));
+        }
+        return commitIDs;
+    }
+}
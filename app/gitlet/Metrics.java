@@ -0,0 +1,241 @@
+package gitlet;
+
+import jdk.jfr.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Counts, bytes and time spent in the I/O hot paths of a command, by phase.
+   A phase is measured as
+
+       Metrics.Timer timer = Metrics.start(Metrics.Phase.BLOB_READ);
+       ...
+       Metrics.end(timer, bytes);
+
+   start returns null unless the command runs with --trace or a JFR
+   recording has the gitlet.Phase event enabled, so untraced commands pay a
+   check per phase and allocate nothing. The event class is only loaded once
+   the flight recorder is running, as loading it bootstraps JFR, which
+   costs more than most commands. While a recording runs, each phase is also
+   emitted as a gitlet.Phase event, e.g. with
+
+       java -XX:StartFlightRecording:filename=gitlet.jfr gitlet.Main merge other
+
+   Phases may be measured from several threads at once. */
+class Metrics {
+
+    enum Phase {
+        TREE_LOAD("tree load"),
+        TREE_SAVE("tree save"),
+        COMMIT_READ("commit read"),
+        COMMIT_WRITE("commit write"),
+        BLOB_READ("blob read"),
+        BLOB_WRITE("blob write"),
+        TREE_OBJECT_READ("tree object read"),
+        TREE_OBJECT_WRITE("tree object write"),
+        HASH("hash"),
+        WORKING_FILE_WRITE("working file write");
+
+        private final String label_;
+
+        Phase(String label){
+            label_ = label;
+        }
+
+        String getLabel(){
+            return label_;
+        }
+    }
+
+    @Name("gitlet.Phase")
+    @Label("Gitlet Phase")
+    @Category("Gitlet")
+    @Description("Time spent reading, writing or hashing objects and files")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    /* A phase being measured. */
+    static final class Timer {
+        private final Phase phase_;
+        private final long start_;
+        // null unless a recording has the event enabled
+        private final PhaseEvent event_;
+
+        private Timer(Phase phase, long start, PhaseEvent event){
+            phase_ = phase;
+            start_ = start;
+            event_ = event;
+        }
+    }
+
+    // asks whether the event is enabled; JFR instruments the event class
+    // when a recording starts, and until then this is always false
+    private static class EventProbe {
+        static final PhaseEvent PROBE = new PhaseEvent();
+    }
+
+    private static volatile boolean tracing_;
+    private static long traceStart_;
+
+    private static final LongAdder[] counts_ = adders();
+    private static final LongAdder[] bytes_ = adders();
+    private static final LongAdder[] nanos_ = adders();
+
+    private static LongAdder[] adders(){
+        LongAdder[] adders = new LongAdder[Phase.values().length];
+        for (int i = 0; i < adders.length; i++){
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    // start counting, for a command run with --trace
+    static void enableTracing(){
+        traceStart_ = System.nanoTime();
+        tracing_ = true;
+    }
+
+    static Timer start(Phase phase){
+
+        boolean recording = FlightRecorder.isInitialized() && EventProbe.PROBE.isEnabled();
+        if (!tracing_ && !recording){
+            return null;
+        }
+
+        PhaseEvent event = null;
+        if (recording){
+            event = new PhaseEvent();
+            event.begin();
+        }
+        return new Timer(phase, System.nanoTime(), event);
+    }
+
+    // finish measuring a phase that moved BYTES bytes
+    static void end(Timer timer, long bytes){
+
+        if (timer == null){
+            return;
+        }
+
+        if (tracing_){
+            int phase = timer.phase_.ordinal();
+            counts_[phase].increment();
+            bytes_[phase].add(bytes);
+            nanos_[phase].add(System.nanoTime() - timer.start_);
+        }
+
+        PhaseEvent event = timer.event_;
+        if (event != null){
+            event.end();
+            if (event.shouldCommit()){
+                event.phase = timer.phase_.getLabel();
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+    }
+
+    // an input stream that adds the bytes read through it to TIMER's phase,
+    // or IN itself if the phase is not measured
+    static InputStream count(InputStream in, Timer timer){
+        return timer == null ? in : new CountingInputStream(in);
+    }
+
+    // the bytes read through a stream returned by count, or 0
+    static long countOf(InputStream in){
+        return in instanceof CountingInputStream ? ((CountingInputStream) in).count_ : 0;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count_;
+
+        CountingInputStream(InputStream in){
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0){
+                count_++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0){
+                count_ += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count_ += skipped;
+            return skipped;
+        }
+    }
+
+    // print a summary of the traced command to standard error
+    static void printSummary(String command){
+
+        PrintStream out = System.err;
+        out.println(String.format(Locale.ROOT, "trace: %s, %.1f ms", command, (System.nanoTime() - traceStart_) / 1e6));
+        out.println(String.format("%-20s %8s %14s %10s", "phase", "count", "bytes", "ms"));
+
+        for (Phase phase : Phase.values()){
+            int i = phase.ordinal();
+            if (counts_[i].sum() > 0){
+                out.println(String.format(Locale.ROOT, "%-20s %8d %14d %10.1f",
+                        phase.getLabel(), counts_[i].sum(), bytes_[i].sum(), nanos_[i].sum() / 1e6));
+            }
+        }
+
+        out.println(String.format("%-20s %8s %8s %10s", "cache", "hits", "misses", "evictions"));
+        for (ObjectCache<?> cache : new ObjectCache<?>[]{Commit.getCache(), Tree.getCache(), Blob.getCache()}){
+            out.println(String.format("%-20s %8d %8d %10d", cache.getName(), cache.getHits(), cache.getMisses(), cache.getEvictions()));
+        }
+    }
+
+    // write the metrics of the traced command to FILE as JSON
+    static void writeJson(String command, File file){
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"command\": \"").append(escape(command)).append("\",\n");
+        json.append("  \"elapsedNanos\": ").append(System.nanoTime() - traceStart_).append(",\n");
+        json.append("  \"phases\": {\n");
+
+        Phase[] phases = Phase.values();
+        for (Phase phase : phases){
+            int i = phase.ordinal();
+            json.append(String.format("    \"%s\": {\"count\": %d, \"bytes\": %d, \"nanos\": %d}%s\n",
+                    phase.getLabel(), counts_[i].sum(), bytes_[i].sum(), nanos_[i].sum(), i + 1 < phases.length ? "," : ""));
+        }
+        json.append("  },\n  \"caches\": {\n");
+
+        ObjectCache<?>[] caches = {Commit.getCache(), Tree.getCache(), Blob.getCache()};
+        for (int i = 0; i < caches.length; i++){
+            json.append(String.format("    \"%s\": {\"hits\": %d, \"misses\": %d, \"evictions\": %d}%s\n",
+                    caches[i].getName(), caches[i].getHits(), caches[i].getMisses(), caches[i].getEvictions(),
+                    i + 1 < caches.length ? "," : ""));
+        }
+        json.append("  }\n}\n");
+
+        Utils.writeContents(file, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String escape(String text){
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
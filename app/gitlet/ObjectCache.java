@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/* A least-recently-used cache of decoded objects keyed by ID, bounded by the
+   estimated number of bytes the objects hold rather than by their count.
+   Objects are content-addressed and never change once written, so entries
+   are only evicted, except that gc empties the caches once it deleted some.
+
+   Loads run outside the lock: two threads missing on the same ID may both
+   read it, and the second result simply replaces the first. */
+class ObjectCache<V> {
+
+    private final String name_;
+    private final long maxWeight_;
+    private final ToLongFunction<V> weigher_;
+
+    // access-ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, V> entries_ = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight_;
+
+    private long hits_;
+    private long misses_;
+    private long evictions_;
+
+    ObjectCache(String name, long maxWeight, ToLongFunction<V> weigher){
+        name_ = name;
+        maxWeight_ = maxWeight;
+        weigher_ = weigher;
+    }
+
+    // the cached object with the given ID, loading it on a miss. Objects
+    // that fail to load (null) are not cached.
+    V get(String id, Function<String, V> loader){
+
+        synchronized (this){
+            V value = entries_.get(id);
+            if (value != null){
+                hits_++;
+                return value;
+            }
+            misses_++;
+        }
+
+        V value = loader.apply(id);
+        if (value != null){
+            put(id, value);
+        }
+        return value;
+    }
+
+    // add an object that was just written or read
+    synchronized void put(String id, V value){
+
+        long weight = weigher_.applyAsLong(value);
+        if (weight > maxWeight_){
+            return;
+        }
+
+        V previous = entries_.put(id, value);
+        if (previous != null){
+            weight_ -= weigher_.applyAsLong(previous);
+        }
+        weight_ += weight;
+
+        Iterator<Map.Entry<String, V>> eldest = entries_.entrySet().iterator();
+        while (weight_ > maxWeight_ && eldest.hasNext()){
+            Map.Entry<String, V> entry = eldest.next();
+            weight_ -= weigher_.applyAsLong(entry.getValue());
+            eldest.remove();
+            evictions_++;
+        }
+    }
+
+    synchronized void clear(){
+        entries_.clear();
+        weight_ = 0;
+    }
+
+    String getName(){
+        return name_;
+    }
+
+    synchronized long getHits(){
+        return hits_;
+    }
+
+    synchronized long getMisses(){
+        return misses_;
+    }
+
+    synchronized long getEvictions(){
+        return evictions_;
+    }
+
+    synchronized long getWeight(){
+        return weight_;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return String.format("%s cache: %d hits, %d misses, %d evictions, %d of %d bytes",
+                name_, hits_, misses_, evictions_, weight_, maxWeight_);
+    }
+}
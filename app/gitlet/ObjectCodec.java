@@ -0,0 +1,334 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/* Compact binary encoding shared by every object gitlet persists. Each
+   encoded object starts with a header: "GL", a format version byte and a
+   type byte. SHA-1 IDs are stored as 20 raw bytes, and strings, byte arrays
+   and collections are prefixed with their length as a varint.
+
+   File contents are stored behind a codec byte: raw, or deflated at the
+   repository's compression level. Version 1 stored contents raw without it.
+   Version 3 lets the staging area refer to its base commit instead of
+   storing every tracked file. Version 4 gives commits an optional second
+   parent. Version 5 stores a commit's files as the ID of a tree object.
+
+   Objects written by older builds through Java serialization are recognised
+   by the serialization stream magic and still decoded. */
+class ObjectCodec {
+
+    static final byte TYPE_COMMIT = 1;
+    static final byte TYPE_BLOB = 2;
+    static final byte TYPE_COMMIT_TREE = 3;
+    static final byte TYPE_BRANCH = 4;
+    static final byte TYPE_STAGING_AREA = 5;
+    static final byte TYPE_TREE = 6;
+
+    static final byte CODEC_RAW = 0;
+    static final byte CODEC_DEFLATE = 1;
+
+    private static final byte[] MAGIC = {'G', 'L'};
+    private static final int VERSION = 5;
+    // first two bytes of a Java serialization stream
+    private static final int LEGACY_MAGIC = 0xACED;
+    private static final int ID_LENGTH = 20;
+
+    // contents shorter than this are always stored raw
+    private static final int MIN_COMPRESS_LENGTH = 64;
+    // number of leading bytes deflated to decide whether contents compress
+    private static final int SAMPLE_LENGTH = 4096;
+    // contents are deflated only if the sample shrinks at least this much
+    private static final double MAX_SAMPLE_RATIO = 0.9;
+
+    // write the header for an object of TYPE
+    static void writeHeader(DataOutputStream out, byte type) throws IOException {
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(type);
+    }
+
+    // read and check the header of an object of TYPE, returning its version
+    static int readHeader(DataInputStream in, byte type) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        int version = in.readUnsignedByte();
+        byte actualType = in.readByte();
+
+        if (!Arrays.equals(magic, MAGIC) || version > VERSION){
+            throw new IOException("unknown object format");
+        }
+        if (actualType != type){
+            throw new IOException("expected object type " + type + " but found " + actualType);
+        }
+        return version;
+    }
+
+    // true if IN holds an object written with Java serialization
+    static boolean isLegacy(BufferedInputStream in) throws IOException {
+        in.mark(2);
+        int magic = (in.read() << 8) | in.read();
+        in.reset();
+        return magic == LEGACY_MAGIC;
+    }
+
+    // read an object written with Java serialization
+    static <T> T readLegacy(InputStream in, Class<T> type) throws IOException {
+        try {
+            return type.cast(new ObjectInputStream(in).readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0){
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    static void writeID(DataOutputStream out, String id) throws IOException {
+        out.write(Utils.hexToBytes(id));
+    }
+
+    static String readID(DataInputStream in) throws IOException {
+        byte[] id = new byte[ID_LENGTH];
+        in.readFully(id);
+        return Utils.bytesToHex(id);
+    }
+
+    // write an ID that may be null, behind a presence flag
+    static void writeOptionalID(DataOutputStream out, String id) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null){
+            writeID(out, id);
+        }
+    }
+
+    static String readOptionalID(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readID(in) : null;
+    }
+
+    static void writeStringSet(DataOutputStream out, Set<String> values) throws IOException {
+        writeVarint(out, values.size());
+        for (String value : new TreeSet<>(values)){
+            writeString(out, value);
+        }
+    }
+
+    static Set<String> readStringSet(DataInputStream in) throws IOException {
+        int count = (int) readVarint(in);
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < count; i++){
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    // write a mapping from file-name to blobID, sorted by file-name
+    static void writeFileMap(DataOutputStream out, Map<String, String> fileToBlobID) throws IOException {
+        writeVarint(out, fileToBlobID.size());
+        for (Map.Entry<String, String> entry : new TreeMap<>(fileToBlobID).entrySet()){
+            writeString(out, entry.getKey());
+            writeID(out, entry.getValue());
+        }
+    }
+
+    static Map<String, String> readFileMap(DataInputStream in) throws IOException {
+        int count = (int) readVarint(in);
+        Map<String, String> fileToBlobID = new HashMap<>();
+        for (int i = 0; i < count; i++){
+            String fileName = readString(in);
+            fileToBlobID.put(fileName, readID(in));
+        }
+        return fileToBlobID;
+    }
+
+    // the codec for CONTENT: raw if compression is off, the contents are tiny
+    // or a quickly deflated sample of the first bytes barely shrinks, as for
+    // binary or already compressed data
+    private static byte chooseCodec(byte[] content, int level){
+
+        if (level == 0 || content.length < MIN_COMPRESS_LENGTH){
+            return CODEC_RAW;
+        }
+
+        int sampleLength = Math.min(SAMPLE_LENGTH, content.length);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(content, 0, sampleLength);
+        deflater.finish();
+
+        int compressedLength = deflater.deflate(new byte[sampleLength]);
+        boolean shrinks = deflater.finished() && compressedLength <= sampleLength * MAX_SAMPLE_RATIO;
+        deflater.end();
+
+        return shrinks ? CODEC_DEFLATE : CODEC_RAW;
+    }
+
+    // write file contents as: codec byte, varint length, varint stored
+    // length, stored bytes
+    static void writeContent(DataOutputStream out, byte[] content, int level) throws IOException {
+
+        byte codec = chooseCodec(content, level);
+        byte[] stored = content;
+
+        if (codec == CODEC_DEFLATE){
+            Deflater deflater = new Deflater(level);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4 + 64);
+
+            try (DeflaterOutputStream deflated = new DeflaterOutputStream(compressed, deflater)) {
+                deflated.write(content);
+            } finally {
+                deflater.end();
+            }
+            stored = compressed.toByteArray();
+        }
+
+        out.writeByte(codec);
+        writeVarint(out, content.length);
+        writeBytes(out, stored);
+    }
+
+    static byte[] readContent(DataInputStream in) throws IOException {
+
+        byte codec = in.readByte();
+        byte[] content = new byte[(int) readVarint(in)];
+        byte[] stored = readBytes(in);
+
+        if (codec == CODEC_RAW){
+            return stored;
+        }
+        if (codec != CODEC_DEFLATE){
+            throw new IOException("unknown content codec " + codec);
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            if (inflater.inflate(content) != content.length || !inflater.finished()){
+                throw new IOException("corrupt compressed content");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        return content;
+    }
+
+    // stream over contents written by writeContent, decompressed as they are
+    // read. The contents must be the last field of the object.
+    static InputStream openContent(DataInputStream in) throws IOException {
+
+        byte codec = in.readByte();
+        // the length and stored length are not needed when streaming
+        readVarint(in);
+        readVarint(in);
+
+        if (codec == CODEC_RAW){
+            return in;
+        }
+        if (codec != CODEC_DEFLATE){
+            throw new IOException("unknown content codec " + codec);
+        }
+        return new InflaterInputStream(in);
+    }
+
+    // true if the file holds an object written with Java serialization
+    private static boolean isLegacyFile(File file) throws IOException {
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return isLegacy(in);
+        }
+    }
+
+    // rewrite every object of a repository written by an older build in the
+    // binary format. Packed objects are unpacked and rewritten, and true is
+    // returned if they should be packed again.
+    static boolean migrate(){
+
+        int migrated = 0;
+        boolean hadPacks = false;
+
+        // unpacking writes every packed object loose in the binary format
+        for (String blobID : PackFile.listObjects(PackFile.TYPE_BLOB)){
+            Blob.readBlobFromDisk(blobID).writeBlobToDisk();
+            hadPacks = true;
+            migrated++;
+        }
+        for (String commitID : PackFile.listObjects(PackFile.TYPE_COMMIT)){
+            Commit.readCommitFromDisk(commitID).writeCommitToDisk();
+            hadPacks = true;
+            migrated++;
+        }
+
+        try {
+            // trees are never in the old format, so they are unpacked as they are
+            for (String treeID : PackFile.listObjects(PackFile.TYPE_TREE)){
+                Tree.unpack(treeID);
+                hadPacks = true;
+            }
+            PackFile.deletePacks();
+
+            File blobDir = Utils.join(Utils.GITLET_DIR, Utils.BLOBS_DIR);
+            for (String blobID : Utils.plainFilenamesIn(blobDir)){
+                if (isLegacyFile(Utils.join(blobDir, blobID))){
+                    Blob.readBlobFromDisk(blobID).writeBlobToDisk();
+                    migrated++;
+                }
+            }
+
+            File commitDir = Utils.join(Utils.GITLET_DIR, Utils.COMMIT_DIR);
+            for (String commitID : Utils.plainFilenamesIn(commitDir)){
+                if (isLegacyFile(Utils.join(commitDir, commitID))){
+                    Commit.readCommitFromDisk(commitID).writeCommitToDisk();
+                    migrated++;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        System.out.println(String.format("Migrated %d objects.", migrated));
+        return hadPacks;
+    }
+}
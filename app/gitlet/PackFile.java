@@ -0,0 +1,746 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/* A packfile holds many objects in a single file, storing each one either in
+   full or as a delta against a similar object. Every pack has an index that is
+   memory-mapped for lookups:
+
+   pack-<id>.pack : "PACK", int version, int count, then one entry per object:
+                    byte kind (full/delta, plus a deflated flag), byte type
+                    (blob/commit/tree), [20-byte base ID if delta],
+                    [varint inflated length if deflated], varint length, data
+   pack-<id>.idx  : "PIDX", int version, int[256] fan-out table of cumulative
+                    counts keyed on the first ID byte, count sorted 20-byte IDs,
+                    count long offsets into the pack
+
+   Blobs are packed with their contents raw so that deltas find the shared
+   bytes; the entry data is deflated instead when that makes it smaller.
+
+   repack reads each object only when it is written, holding no more than
+   the window of delta candidates in memory, and starts another pack before
+   one would grow past MAX_PACK_SIZE, so that every pack can be mapped. A
+   delta's base may be in another pack. */
+class PackFile {
+
+    static final byte TYPE_BLOB = 1;
+    static final byte TYPE_COMMIT = 2;
+    static final byte TYPE_TREE = 3;
+
+    private static final byte KIND_FULL = 0;
+    private static final byte KIND_DELTA = 1;
+    // set on the kind of an entry whose data is deflated
+    private static final byte KIND_DEFLATED = 0x10;
+
+    private static final int VERSION = 1;
+    private static final int ID_LENGTH = 20;
+    private static final int FANOUT_OFFSET = 8;
+    private static final int IDS_OFFSET = FANOUT_OFFSET + 256 * 4;
+
+    // number of preceding candidates tried as a delta base
+    private static final int DELTA_WINDOW = 10;
+    // longest chain of deltas that a read has to resolve
+    private static final int MAX_DELTA_DEPTH = 50;
+    // a new pack is started rather than let one grow past this, well below
+    // the 2 GB that one mapping can hold
+    private static final long MAX_PACK_SIZE = 1L << 30;
+
+    // packs present in the repository, opened on first use
+    private static List<PackFile> packs_;
+
+    private final File packFile_;
+    private final File indexFile_;
+    private final MappedByteBuffer pack_;
+    private final MappedByteBuffer index_;
+    private final int count_;
+
+    private PackFile(File packFile, File indexFile) throws IOException {
+        packFile_ = packFile;
+        indexFile_ = indexFile;
+        pack_ = map(packFile);
+        index_ = map(indexFile);
+        count_ = index_.getInt(FANOUT_OFFSET + 255 * 4);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE){
+                throw new IOException(file + " is too large to map");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static synchronized List<PackFile> getPacks(){
+
+        if (packs_ != null){
+            return packs_;
+        }
+
+        packs_ = new ArrayList<>();
+        File packDir = Utils.join(Utils.GITLET_DIR, Utils.PACKS_DIR);
+        List<String> files = Utils.plainFilenamesIn(packDir);
+
+        if (files == null){
+            return packs_;
+        }
+
+        for (String name : files){
+            if (!name.endsWith(".idx")){
+                continue;
+            }
+
+            String base = name.substring(0, name.length() - ".idx".length());
+            try {
+                packs_.add(new PackFile(Utils.join(packDir, base + ".pack"), Utils.join(packDir, name)));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return packs_;
+    }
+
+    // forget the packs, so that those added or deleted by another process
+    // are seen on next use
+    static synchronized void reset(){
+        packs_ = null;
+    }
+
+    // return the position of ID in this pack's index, or -1
+    private int find(byte[] id){
+
+        int first = id[0] & 0xff;
+        int low = first == 0 ? 0 : index_.getInt(FANOUT_OFFSET + (first - 1) * 4);
+        int high = index_.getInt(FANOUT_OFFSET + first * 4) - 1;
+
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            int cmp = compareId(mid, id);
+
+            if (cmp < 0){
+                low = mid + 1;
+            } else if (cmp > 0){
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareId(int position, byte[] id){
+        int base = IDS_OFFSET + position * ID_LENGTH;
+        for (int i = 0; i < ID_LENGTH; i++){
+            int cmp = Integer.compare(index_.get(base + i) & 0xff, id[i] & 0xff);
+            if (cmp != 0){
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private long offsetOf(int position){
+        return index_.getLong(IDS_OFFSET + count_ * ID_LENGTH + position * 8);
+    }
+
+    // the type of the entry at OFFSET, which is its second byte
+    private byte typeAt(long offset){
+        return pack_.get(Math.toIntExact(offset + 1));
+    }
+
+    // read the full contents of the entry at OFFSET, resolving deltas
+    private byte[] readEntry(long offset, byte type, int depth) throws IOException {
+
+        ByteBuffer entry = pack_.duplicate();
+        entry.position(Math.toIntExact(offset));
+
+        byte kind = entry.get();
+        boolean deflated = (kind & KIND_DEFLATED) != 0;
+        kind &= ~KIND_DEFLATED;
+        byte entryType = entry.get();
+        if (entryType != type){
+            return null;
+        }
+
+        byte[] baseID = null;
+        if (kind == KIND_DELTA){
+            baseID = new byte[ID_LENGTH];
+            entry.get(baseID);
+        }
+
+        int inflatedLength = deflated ? (int) readVarint(entry) : 0;
+        byte[] data = new byte[(int) readVarint(entry)];
+        entry.get(data);
+
+        if (deflated){
+            data = inflate(data, inflatedLength);
+        }
+
+        if (kind == KIND_FULL){
+            return data;
+        }
+
+        if (depth > MAX_DELTA_DEPTH){
+            throw new IOException("delta chain too long in pack");
+        }
+
+        byte[] base = readObject(type, baseID, depth + 1);
+        if (base == null){
+            throw new IOException("missing delta base " + Utils.bytesToHex(baseID));
+        }
+        return Delta.apply(base, data);
+    }
+
+    private static byte[] readObject(byte type, byte[] id, int depth) throws IOException {
+        for (PackFile pack : getPacks()){
+            int position = pack.find(id);
+            if (position >= 0){
+                return pack.readEntry(pack.offsetOf(position), type, depth);
+            }
+        }
+        return null;
+    }
+
+    // true if the object with the given ID is stored in some pack
+    static boolean contains(String objectID){
+        byte[] id = Utils.hexToBytes(objectID);
+        for (PackFile pack : getPacks()){
+            if (pack.find(id) >= 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the IDs of all packed objects of TYPE
+    static List<String> listObjects(byte type){
+        List<String> objectIDs = new ArrayList<>();
+
+        for (PackFile pack : getPacks()){
+            for (int i = 0; i < pack.count_; i++){
+                if (pack.typeAt(pack.offsetOf(i)) != type){
+                    continue;
+                }
+
+                objectIDs.add(pack.idAt(i));
+            }
+        }
+        return objectIDs;
+    }
+
+    // delete every pack, once its objects are stored elsewhere
+    static synchronized void deletePacks(){
+        List<String> files = Utils.plainFilenamesIn(Utils.join(Utils.GITLET_DIR, Utils.PACKS_DIR));
+
+        if (files != null){
+            for (String name : files){
+                Utils.join(Utils.GITLET_DIR, Utils.PACKS_DIR, name).delete();
+            }
+        }
+        packs_ = null;
+    }
+
+    // stream for the contents of a packed object of TYPE
+    static InputStream openObject(byte type, String objectID) throws IOException {
+        byte[] contents = readObject(type, Utils.hexToBytes(objectID), 0);
+
+        if (contents == null){
+            throw new FileNotFoundException("object " + objectID + " not found");
+        }
+        return new ByteArrayInputStream(contents);
+    }
+
+    // an object to be written into a new pack. Its contents are read again
+    // when it is written, from a loose file or from an old pack.
+    private static class PackEntry {
+        private final byte type_;
+        private final String id_;
+        private final long size_;
+        // objects with equal keys are likely to delta well against each other
+        private final String similarityKey_;
+        private final File looseFile_;
+        private final PackFile pack_;
+        private final long packOffset_;
+        private int depth_;
+        // the offset of the entry in the pack it is written to
+        private long offset_;
+
+        PackEntry(byte type, String id, long size, String similarityKey, File looseFile, PackFile pack, long packOffset){
+            type_ = type;
+            id_ = id;
+            size_ = size;
+            similarityKey_ = similarityKey;
+            looseFile_ = looseFile;
+            pack_ = pack;
+            packOffset_ = packOffset;
+        }
+
+        byte[] readContents() throws IOException {
+            if (pack_ != null){
+                return pack_.readEntry(packOffset_, type_, 0);
+            }
+            if (type_ == TYPE_BLOB){
+                // compressed contents share almost no bytes with similar blobs
+                Blob blob = Blob.readBlobUncached(id_);
+                if (blob == null){
+                    throw new IOException("cannot read blob " + id_);
+                }
+                return blob.toBytes(0);
+            }
+            return Utils.readContents(looseFile_);
+        }
+    }
+
+    // the similarity key of a blob, commit or tree
+    private static String similarityKey(byte type, byte[] contents) throws IOException {
+        return type == TYPE_BLOB ? Blob.fromBytes(contents).getFileName_() : "";
+    }
+
+    // fold the reachable loose blobs, commits and trees, and the reachable
+    // objects of every existing pack, into new packs, then delete the loose
+    // files and the old packs. Objects that are not reachable are left
+    // loose, and those of the old packs are written loose again, dated when
+    // their pack was written, so that gc removes them after the grace period.
+    static void repack(Set<String> reachable){
+
+        // keyed on the object ID, so that an object both loose and packed is packed once
+        Map<String, PackEntry> entries = new LinkedHashMap<>();
+        List<File> looseFiles = new ArrayList<>();
+
+        // objects are sorted by their stored size, compressed for loose blobs
+        File blobDir = Utils.join(Utils.GITLET_DIR, Utils.BLOBS_DIR);
+        try {
+            for (String blobID : Utils.plainFilenamesIn(blobDir)){
+                if (!reachable.contains(blobID)){
+                    continue;
+                }
+                File file = Utils.join(blobDir, blobID);
+                entries.put(blobID, new PackEntry(TYPE_BLOB, blobID, file.length(), Blob.readFileName(blobID), file, null, 0));
+                looseFiles.add(file);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        File commitDir = Utils.join(Utils.GITLET_DIR, Utils.COMMIT_DIR);
+        for (String commitID : Utils.plainFilenamesIn(commitDir)){
+            if (!reachable.contains(commitID)){
+                continue;
+            }
+            File file = Utils.join(commitDir, commitID);
+            entries.put(commitID, new PackEntry(TYPE_COMMIT, commitID, file.length(), "", file, null, 0));
+            looseFiles.add(file);
+        }
+
+        File treeDir = Utils.join(Utils.GITLET_DIR, Utils.TREES_DIR);
+        List<String> treeIDs = treeDir.isDirectory() ? Utils.plainFilenamesIn(treeDir) : Collections.emptyList();
+        for (String treeID : treeIDs){
+            if (!reachable.contains(treeID)){
+                continue;
+            }
+            File file = Utils.join(treeDir, treeID);
+            entries.put(treeID, new PackEntry(TYPE_TREE, treeID, file.length(), "", file, null, 0));
+            looseFiles.add(file);
+        }
+
+        List<PackFile> oldPacks = new ArrayList<>(getPacks());
+        boolean packsReachable = true;
+        for (PackFile pack : oldPacks){
+            packsReachable &= pack.isReachable(reachable);
+        }
+        if (looseFiles.isEmpty() && oldPacks.size() <= 1 && packsReachable){
+            System.out.println("Nothing to repack.");
+            return;
+        }
+
+        int unpacked = 0;
+        Set<File> newPacks;
+        try {
+            for (PackFile pack : oldPacks){
+                unpacked += pack.addEntries(entries, reachable);
+            }
+            newPacks = writePacks(new ArrayList<>(entries.values()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        // the new packs and the unpacked objects are on disk, so nothing is
+        // lost if this is interrupted
+        for (File file : looseFiles){
+            file.delete();
+        }
+        for (PackFile pack : oldPacks){
+            if (!newPacks.contains(pack.packFile_)){
+                pack.indexFile_.delete();
+                pack.packFile_.delete();
+            }
+        }
+        packs_ = null;
+        CommitIndex.compact();
+
+        System.out.println(String.format("Packed %d objects.", entries.size()));
+        if (unpacked > 0){
+            System.out.println(String.format("Left %d unreachable objects loose.", unpacked));
+        }
+    }
+
+    // the ID at POSITION in this pack's index
+    private String idAt(int position){
+        byte[] id = new byte[ID_LENGTH];
+        index_.duplicate().position(IDS_OFFSET + position * ID_LENGTH).get(id);
+        return Utils.bytesToHex(id);
+    }
+
+    // true if every object in this pack is in REACHABLE
+    private boolean isReachable(Set<String> reachable){
+        for (int i = 0; i < count_; i++){
+            if (!reachable.contains(idAt(i))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // add every reachable object in this pack that is not in ENTRIES
+    // already, and write the others loose. Returns the number written loose.
+    private int addEntries(Map<String, PackEntry> entries, Set<String> reachable) throws IOException {
+        int unpacked = 0;
+
+        for (int i = 0; i < count_; i++){
+            String objectID = idAt(i);
+            if (entries.containsKey(objectID)){
+                continue;
+            }
+
+            long offset = offsetOf(i);
+            byte type = typeAt(offset);
+            byte[] contents = readEntry(offset, type, 0);
+
+            if (!reachable.contains(objectID)){
+                if (unpack(type, objectID, contents)){
+                    unpacked++;
+                }
+                continue;
+            }
+
+            // the contents are dropped, and read again when they are written
+            entries.put(objectID, new PackEntry(type, objectID, contents.length,
+                    similarityKey(type, contents), null, this, offset));
+        }
+
+        if (unpacked > 0){
+            syncDirectory(Utils.join(Utils.GITLET_DIR, Utils.BLOBS_DIR));
+            syncDirectory(Utils.join(Utils.GITLET_DIR, Utils.COMMIT_DIR));
+            syncDirectory(Utils.join(Utils.GITLET_DIR, Utils.TREES_DIR));
+        }
+        return unpacked;
+    }
+
+    // write an object of this pack loose, dated when the pack was written,
+    // unless it is loose already. Packed contents are a valid loose object
+    // of their type. Returns true if the object was written.
+    private boolean unpack(byte type, String objectID, byte[] contents) throws IOException {
+
+        String dir = type == TYPE_BLOB ? Utils.BLOBS_DIR : type == TYPE_COMMIT ? Utils.COMMIT_DIR : Utils.TREES_DIR;
+        Utils.join(Utils.GITLET_DIR, dir).mkdir();
+        File file = Utils.join(Utils.GITLET_DIR, dir, objectID);
+        if (file.exists()){
+            return false;
+        }
+
+        File tempFile = File.createTempFile("unpack-", ".tmp", new File(Utils.GITLET_DIR));
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(contents);
+            out.getChannel().force(true);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        // the date survives the rename
+        tempFile.setLastModified(packFile_.lastModified());
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    // write ENTRIES into new packs, each object stored in full or as a delta
+    // against one of the similar objects written just before it, and return
+    // the pack files. Objects are read one at a time as they are written.
+    private static Set<File> writePacks(List<PackEntry> entries) throws IOException {
+
+        entries.sort(Comparator.comparing((PackEntry e) -> e.type_)
+                .thenComparing(e -> e.similarityKey_)
+                .thenComparing(e -> e.size_, Comparator.reverseOrder()));
+
+        File packDir = Utils.join(Utils.GITLET_DIR, Utils.PACKS_DIR);
+        packDir.mkdir();
+        int compressionLevel = Config.getCompressionLevel();
+
+        // the entries written last, with their contents, as delta bases
+        Deque<PackEntry> window = new ArrayDeque<>();
+        Map<PackEntry, byte[]> windowContents = new HashMap<>();
+
+        Set<File> packFiles = new HashSet<>();
+        PackWriter writer = null;
+        try {
+            for (PackEntry entry : entries){
+                byte[] contents = entry.readContents();
+
+                PackEntry base = null;
+                byte[] delta = null;
+                for (PackEntry candidate : window){
+                    if (candidate.type_ != entry.type_ || candidate.depth_ >= MAX_DELTA_DEPTH){
+                        continue;
+                    }
+
+                    byte[] candidateDelta = Delta.create(windowContents.get(candidate), contents);
+                    int best = delta != null ? delta.length : contents.length / 2;
+
+                    if (candidateDelta.length < best){
+                        base = candidate;
+                        delta = candidateDelta;
+                    }
+                }
+                entry.depth_ = base != null ? base.depth_ + 1 : 0;
+
+                byte[] data = base != null ? delta : contents;
+                if (writer != null && writer.size() > 0 && writer.size() + data.length > MAX_PACK_SIZE){
+                    packFiles.add(writer.finish());
+                    writer = null;
+                }
+                if (writer == null){
+                    writer = new PackWriter(packDir, compressionLevel);
+                }
+                writer.write(entry, base, data);
+
+                window.addLast(entry);
+                windowContents.put(entry, contents);
+                if (window.size() > DELTA_WINDOW){
+                    windowContents.remove(window.removeFirst());
+                }
+            }
+
+            if (writer != null){
+                packFiles.add(writer.finish());
+                writer = null;
+            }
+        } finally {
+            if (writer != null){
+                writer.abandon();
+            }
+        }
+
+        syncDirectory(packDir);
+        return packFiles;
+    }
+
+    /* One pack being written, through a temporary file that is given its
+       name when the pack is finished. */
+    private static class PackWriter {
+        private final File packDir_;
+        private final int compressionLevel_;
+        private final File tempPack_;
+        private final FileOutputStream file_;
+        private final CountingOutputStream counted_;
+        private final DataOutputStream out_;
+        private final List<PackEntry> entries_ = new ArrayList<>();
+
+        PackWriter(File packDir, int compressionLevel) throws IOException {
+            packDir_ = packDir;
+            compressionLevel_ = compressionLevel;
+            tempPack_ = File.createTempFile("pack-", ".tmp", packDir);
+            file_ = new FileOutputStream(tempPack_);
+            counted_ = new CountingOutputStream(new BufferedOutputStream(file_));
+            out_ = new DataOutputStream(counted_);
+
+            // the count is written when the pack is finished
+            out_.writeBytes("PACK");
+            out_.writeInt(VERSION);
+            out_.writeInt(0);
+        }
+
+        // the bytes written so far, after the header
+        long size(){
+            return counted_.count_ - 12;
+        }
+
+        // write ENTRY, whose DATA is its contents or its delta against BASE
+        void write(PackEntry entry, PackEntry base, byte[] data) throws IOException {
+            entry.offset_ = counted_.count_;
+
+            byte[] deflated = compressionLevel_ > 0 ? deflate(data, compressionLevel_) : data;
+            boolean useDeflated = deflated.length < data.length;
+
+            byte kind = base != null ? KIND_DELTA : KIND_FULL;
+            out_.writeByte(useDeflated ? kind | KIND_DEFLATED : kind);
+            out_.writeByte(entry.type_);
+
+            if (base != null){
+                out_.write(Utils.hexToBytes(base.id_));
+            }
+
+            if (useDeflated){
+                writeVarint(out_, data.length);
+                data = deflated;
+            }
+            writeVarint(out_, data.length);
+            out_.write(data);
+            entries_.add(entry);
+        }
+
+        // write the count and the index, force both files to disk and give
+        // them their names, returning the pack file
+        File finish() throws IOException {
+            out_.flush();
+            ByteBuffer count = ByteBuffer.allocate(4).putInt(entries_.size());
+            count.flip();
+            while (count.hasRemaining()){
+                file_.getChannel().write(count, 8 + count.position());
+            }
+            file_.getChannel().force(true);
+            out_.close();
+
+            entries_.sort(Comparator.comparing(e -> e.id_));
+            ByteArrayOutputStream idBytes = new ByteArrayOutputStream();
+            int[] fanout = new int[256];
+            for (PackEntry entry : entries_){
+                idBytes.write(Utils.hexToBytes(entry.id_));
+                fanout[Integer.parseInt(entry.id_.substring(0, 2), 16)]++;
+            }
+            for (int i = 1; i < 256; i++){
+                fanout[i] += fanout[i - 1];
+            }
+            String packName = "pack-" + Utils.sha1(idBytes.toByteArray());
+
+            // the index is written last: a pack without an index is never read
+            File tempIndex = File.createTempFile("pack-", ".tmp", packDir_);
+            try (FileOutputStream file = new FileOutputStream(tempIndex);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeBytes("PIDX");
+                out.writeInt(VERSION);
+                for (int fanoutCount : fanout){
+                    out.writeInt(fanoutCount);
+                }
+                out.write(idBytes.toByteArray());
+                for (PackEntry entry : entries_){
+                    out.writeLong(entry.offset_);
+                }
+
+                out.flush();
+                file.getChannel().force(true);
+            } catch (IOException e) {
+                tempIndex.delete();
+                tempPack_.delete();
+                throw e;
+            }
+
+            // renaming leaves a pack that is mapped already intact
+            File packFile = Utils.join(packDir_, packName + ".pack");
+            Files.move(tempPack_.toPath(), packFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempIndex.toPath(), Utils.join(packDir_, packName + ".idx").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return packFile;
+        }
+
+        // delete the pack after a failed write
+        void abandon(){
+            try {
+                out_.close();
+            } catch (IOException e) {
+                // deleted regardless
+            }
+            tempPack_.delete();
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count_;
+
+        CountingOutputStream(OutputStream out){
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count_++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count_ += len;
+        }
+    }
+
+    // force the names in DIR to disk, where the platform allows it
+    private static void syncDirectory(File dir){
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened on some platforms
+        }
+    }
+
+    private static byte[] deflate(byte[] data, int level){
+        Deflater deflater = new Deflater(level);
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()){
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        byte[] inflated = new byte[length];
+        try {
+            inflater.setInput(data);
+            if (inflater.inflate(inflated) != length || !inflater.finished()){
+                throw new IOException("corrupt deflated entry in pack");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        return inflated;
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0){
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in){
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
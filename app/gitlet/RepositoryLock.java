@@ -0,0 +1,74 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+/* A lock on the objects and branches of a repository, held on .gitlet/lock
+   for the length of a command. Every command that writes objects, moves
+   branches or stages files holds it exclusively, from reading HEAD, the
+   branches and the staging area until it has saved them, so that commands
+   change the repository one at a time. gc holds it so that nothing it found
+   unreachable is made reachable again before it is deleted, and repack so
+   that nothing reads the files it deletes. Read-only commands write
+   nothing and take no lock, except in a daemon, which holds it shared to
+   save the caches they brought up to date, and skips that rather than
+   wait.
+
+   File locks belong to a whole process, which may not hold two that
+   overlap, so a process holds at most one at a time: a daemon runs such
+   commands one after another. */
+class RepositoryLock implements Closeable {
+
+    private final FileChannel channel_;
+    private final FileLock lock_;
+
+    private RepositoryLock(FileChannel channel, FileLock lock){
+        channel_ = channel;
+        lock_ = lock;
+    }
+
+    // wait for the lock, held exclusively
+    static RepositoryLock acquire() throws IOException {
+        File file = Utils.join(Utils.GITLET_DIR, Utils.LOCK_FILE);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            return new RepositoryLock(channel, channel.lock());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // take the lock shared if no command holds it exclusively, otherwise
+    // return null
+    static RepositoryLock tryAcquireShared() throws IOException {
+        File file = Utils.join(Utils.GITLET_DIR, Utils.LOCK_FILE);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            FileLock lock = channel.tryLock(0, Long.MAX_VALUE, true);
+            if (lock == null){
+                channel.close();
+                return null;
+            }
+            return new RepositoryLock(channel, lock);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            lock_.release();
+        } finally {
+            channel_.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/* The mutable state of a repository, stored as independent files so that a
+   command reads and writes only the parts it uses:
+
+   HEAD          : the name of the active branch
+   refs/<branch> : one file per branch with its head and branch pointers
+   staging       : the staging area
+
+   Every file is replaced atomically. */
+class RepositoryState {
+
+    // true if the repository state has been written in this layout
+    static boolean exists(){
+        return Utils.join(Utils.GITLET_DIR, Utils.HEAD_FILE).isFile();
+    }
+
+    // a value that changes whenever HEAD, a branch or the staging area is
+    // rewritten. Every file is replaced by a rename, which gives it a new
+    // file key and changes the modification time of its directory. It also
+    // changes when repack replaces the packs or gc deletes loose objects,
+    // both of which change the directories that hold them.
+    static String stamp(){
+        StringBuilder stamp = new StringBuilder();
+
+        for (File file : new File[]{Utils.join(Utils.GITLET_DIR, Utils.HEAD_FILE),
+                Utils.join(Utils.GITLET_DIR, Utils.STAGING_FILE), Utils.join(Utils.GITLET_DIR, Utils.REFS_DIR),
+                Utils.join(Utils.GITLET_DIR, Utils.PACKS_DIR), Utils.join(Utils.GITLET_DIR, Utils.COMMIT_DIR),
+                Utils.join(Utils.GITLET_DIR, Utils.TREES_DIR), Utils.join(Utils.GITLET_DIR, Utils.BLOBS_DIR)}){
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                stamp.append(attributes.fileKey()).append(' ').append(attributes.lastModifiedTime()).append(';');
+            } catch (IOException e) {
+                stamp.append("-;");
+            }
+        }
+        return stamp.toString();
+    }
+
+    static String readHead(){
+        return new String(Utils.readContents(Utils.join(Utils.GITLET_DIR, Utils.HEAD_FILE)), StandardCharsets.UTF_8);
+    }
+
+    static void writeHead(String branchName){
+        Utils.writeContentsAtomically(Utils.join(Utils.GITLET_DIR, Utils.HEAD_FILE), branchName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // branch names are encoded so that any name is a valid file name
+    private static File branchFile(String branchName){
+        return Utils.join(Utils.GITLET_DIR, Utils.REFS_DIR, URLEncoder.encode(branchName, StandardCharsets.UTF_8));
+    }
+
+    static List<String> listBranchNames(){
+        List<String> branchNames = new ArrayList<>();
+        List<String> files = Utils.plainFilenamesIn(Utils.join(Utils.GITLET_DIR, Utils.REFS_DIR));
+
+        if (files != null){
+            for (String file : files){
+                branchNames.add(URLDecoder.decode(file, StandardCharsets.UTF_8));
+            }
+        }
+        return branchNames;
+    }
+
+    // the branch with the given name, or null if there is none
+    static Branch readBranch(String branchName){
+        File file = branchFile(branchName);
+
+        if (!file.isFile()){
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            ObjectCodec.readHeader(in, ObjectCodec.TYPE_BRANCH);
+            return Branch.decode(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    static void writeBranch(Branch branch){
+        Utils.join(Utils.GITLET_DIR, Utils.REFS_DIR).mkdir();
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            ObjectCodec.writeHeader(out, ObjectCodec.TYPE_BRANCH);
+            branch.encode(out);
+
+            Utils.writeContentsAtomically(branchFile(branch.getBranchName_()), bytes.toByteArray());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static void deleteBranch(String branchName){
+        branchFile(branchName).delete();
+    }
+
+    static StagingArea readStagingArea(){
+        File file = Utils.join(Utils.GITLET_DIR, Utils.STAGING_FILE);
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Utils.readContents(file)))) {
+            int version = ObjectCodec.readHeader(in, ObjectCodec.TYPE_STAGING_AREA);
+            return StagingArea.decode(in, version);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // the staging area as it is stored, used to tell whether it changed
+    static byte[] encodeStagingArea(StagingArea stagingArea){
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            ObjectCodec.writeHeader(out, ObjectCodec.TYPE_STAGING_AREA);
+            stagingArea.encode(out);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void writeStagingArea(byte[] encodedStagingArea){
+        Utils.writeContentsAtomically(Utils.join(Utils.GITLET_DIR, Utils.STAGING_FILE), encodedStagingArea);
+    }
+}
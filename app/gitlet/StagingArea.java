@@ -1,24 +1,42 @@
 package gitlet;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 class StagingArea implements Serializable {
 
+    // pinned so that repositories written by earlier builds stay readable
+    private static final long serialVersionUID = -2374286830786915715L;
+
     // the files to-be-tracked from the next commit
     private Set<String> filesToAdd_;
     // the files to-be-removed from the next commit
     private Set<String> filesToRemove_;
     // mapping from file-name to BlobID (files currently being tracked)
     private Map<String, String> prevCommitFileToBlobIDMap;
+    // the commit the mapping above is taken from, so that only its ID is
+    // stored; null if the mapping is stored in full, as by older builds
+    private String baseCommitID_;
 
-    // use the mapping from the previous commit for tracking files
+    // use the mapping from the previous commit for tracking files. It is
+    // read from the commit's tree when first used.
     StagingArea(Commit previousCommit){
         filesToAdd_ = new HashSet<>();
         filesToRemove_ = new HashSet<>();
-        prevCommitFileToBlobIDMap = previousCommit.getFileToBlobIDMap_();
+        baseCommitID_ = previousCommit.getThisCommitID_();
+    }
+
+    private StagingArea(Set<String> filesToAdd, Set<String> filesToRemove, Map<String, String> prevCommitFileToBlobIDMap, String baseCommitID){
+        filesToAdd_ = filesToAdd;
+        filesToRemove_ = filesToRemove;
+        this.prevCommitFileToBlobIDMap = prevCommitFileToBlobIDMap;
+        baseCommitID_ = baseCommitID;
     }
 
     Set<String> getFileToAdd_() {
@@ -29,11 +47,69 @@ class StagingArea implements Serializable {
         return filesToRemove_;
     }
 
+    // the mapping is read from the base commit on first use
     Map<String, String> getPrevCommitFileToBlobIDMap() {
+        if (prevCommitFileToBlobIDMap == null){
+            prevCommitFileToBlobIDMap = Commit.readCommitFromDisk(baseCommitID_).getFileToBlobIDMap_();
+        }
         return prevCommitFileToBlobIDMap;
     }
 
+    // the BlobID of a tracked file, or null, without reading every tracked
+    // file from the base commit
+    String getBlobID(String fileName) {
+        if (prevCommitFileToBlobIDMap == null){
+            return Commit.readCommitFromDisk(baseCommitID_).getBlobID(fileName);
+        }
+        return prevCommitFileToBlobIDMap.get(fileName);
+    }
+
+    // write the tree of the tracked files with CHANGES applied, a mapping
+    // from file-name to BlobID or null for a removed file, and return its
+    // ID. Only the trees on the paths of the changes are written when the
+    // tracked files are those of the base commit.
+    String writeTree(Map<String, String> changes) {
+        if (baseCommitID_ != null){
+            return Tree.update(Commit.readCommitFromDisk(baseCommitID_).getTreeID_(), changes);
+        }
+
+        Map<String, String> files = new HashMap<>(prevCommitFileToBlobIDMap);
+        for (Map.Entry<String, String> change : changes.entrySet()){
+            if (change.getValue() == null){
+                files.remove(change.getKey());
+            } else {
+                files.put(change.getKey(), change.getValue());
+            }
+        }
+        return Tree.write(files);
+    }
+
     void setPrevCommitFileToBlobIDMap(Map<String, String> prevCommitFileToBlobIDMap) {
         this.prevCommitFileToBlobIDMap = prevCommitFileToBlobIDMap;
+        baseCommitID_ = null;
+    }
+
+    // write this staging area in the binary object format. The tracked files
+    // are stored as the ID of their commit when they are that commit's, so
+    // the size of the staging file does not grow with the tree.
+    void encode(DataOutputStream out) throws IOException {
+        ObjectCodec.writeStringSet(out, filesToAdd_);
+        ObjectCodec.writeStringSet(out, filesToRemove_);
+        ObjectCodec.writeOptionalID(out, baseCommitID_);
+
+        if (baseCommitID_ == null){
+            ObjectCodec.writeFileMap(out, prevCommitFileToBlobIDMap);
+        }
+    }
+
+    // read a staging area written with the given format version; versions
+    // before 3 always store the tracked files in full
+    static StagingArea decode(DataInputStream in, int version) throws IOException {
+        Set<String> filesToAdd = ObjectCodec.readStringSet(in);
+        Set<String> filesToRemove = ObjectCodec.readStringSet(in);
+
+        String baseCommitID = version >= 3 ? ObjectCodec.readOptionalID(in) : null;
+        Map<String, String> fileMap = baseCommitID == null ? ObjectCodec.readFileMap(in) : null;
+        return new StagingArea(filesToAdd, filesToRemove, fileMap, baseCommitID);
     }
 }
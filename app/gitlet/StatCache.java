@@ -0,0 +1,278 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/* Cache of the stat data of working files and the blob ID of their contents,
+   so that a file whose size, modification time and file key are unchanged is
+   not read and hashed again. The file holds one record per path:
+
+   UTF path, long size, long modification time in nanoseconds, UTF file key,
+   20-byte blob ID, long time at which the record was made
+
+   The file starts with the number of records written by the last full
+   rewrite. Records changed since then are appended after them, and a later
+   record for a path replaces an earlier one; a record with an all-zero blob
+   ID drops its path. The file is only rewritten once the appended records
+   outnumber the current ones, so recording one file does not rewrite the
+   whole cache. Commands that change the repository save the cache, and so
+   does a daemon after the read-only commands it runs; a read-only command
+   run on its own writes nothing.
+
+   Lookups and records may be made from several threads at once. */
+class StatCache {
+
+    // a file modified this close to when it was hashed may have changed again
+    // within the timestamp resolution, so its record is not trusted
+    private static final long RACY_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // the cache of the repository, opened on first use
+    private static StatCache cache_;
+
+    private static final byte[] REMOVED_ID = new byte[20];
+
+    private static class Entry {
+        private final long size_;
+        private final long modifiedNanos_;
+        private final String fileKey_;
+        private final String blobID_;
+        private final long recordedNanos_;
+
+        Entry(long size, long modifiedNanos, String fileKey, String blobID, long recordedNanos){
+            size_ = size;
+            modifiedNanos_ = modifiedNanos;
+            fileKey_ = fileKey;
+            blobID_ = blobID;
+            recordedNanos_ = recordedNanos;
+        }
+
+        boolean matches(BasicFileAttributes attributes){
+            return size_ == attributes.size()
+                    && modifiedNanos_ == modifiedNanos(attributes)
+                    && fileKey_.equals(fileKey(attributes))
+                    && modifiedNanos_ + RACY_WINDOW_NANOS <= recordedNanos_;
+        }
+    }
+
+    private final File file_;
+    private final Map<String, Entry> entries_;
+    // paths whose records changed since the file was last written
+    private final Set<String> changed_;
+    // records appended to the file since it was last rewritten
+    private int appended_;
+
+    private StatCache(File file){
+        file_ = file;
+        entries_ = new ConcurrentHashMap<>();
+        changed_ = ConcurrentHashMap.newKeySet();
+
+        if (file_.exists()){
+            load();
+        }
+    }
+
+    static synchronized StatCache get(){
+        if (cache_ == null){
+            cache_ = new StatCache(Utils.join(Utils.GITLET_DIR, Utils.STAT_CACHE));
+        }
+        return cache_;
+    }
+
+    // forget the cache, so that it is read again on next use
+    static synchronized void reset(){
+        cache_ = null;
+    }
+
+    private static long modifiedNanos(BasicFileAttributes attributes){
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    private static String fileKey(BasicFileAttributes attributes){
+        Object key = attributes.fileKey();
+        return key != null ? key.toString() : "";
+    }
+
+    private void load(){
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file_)))) {
+            int count = in.readInt();
+
+            for (int i = 0; i < count; i++){
+                readRecord(in);
+            }
+
+            // appended records, the last of which may have been cut short
+            try {
+                while (true){
+                    readRecord(in);
+                    appended_++;
+                }
+            } catch (EOFException e) {
+                // end of the appended records
+            }
+        } catch (IOException e) {
+            // an unreadable cache only costs rehashing
+            entries_.clear();
+        }
+    }
+
+    private void readRecord(DataInputStream in) throws IOException {
+        byte[] blobID = new byte[20];
+
+        String path = in.readUTF();
+        long size = in.readLong();
+        long modified = in.readLong();
+        String fileKey = in.readUTF();
+        in.readFully(blobID);
+        long recorded = in.readLong();
+
+        if (Arrays.equals(blobID, REMOVED_ID)){
+            entries_.remove(path);
+        } else {
+            entries_.put(path, new Entry(size, modified, fileKey, Utils.bytesToHex(blobID), recorded));
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, String path, Entry entry) throws IOException {
+        out.writeUTF(path);
+        if (entry == null){
+            out.writeLong(0);
+            out.writeLong(0);
+            out.writeUTF("");
+            out.write(REMOVED_ID);
+            out.writeLong(0);
+            return;
+        }
+        out.writeLong(entry.size_);
+        out.writeLong(entry.modifiedNanos_);
+        out.writeUTF(entry.fileKey_);
+        out.write(Utils.hexToBytes(entry.blobID_));
+        out.writeLong(entry.recordedNanos_);
+    }
+
+    // the stat data of fileName if it is a plain file, otherwise null
+    private static BasicFileAttributes readAttributes(String fileName){
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(fileName), BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // the blob ID recorded for fileName if its stat data is unchanged,
+    // otherwise null
+    String getCachedBlobID(String fileName){
+        BasicFileAttributes attributes = readAttributes(fileName);
+        Entry entry = entries_.get(fileName);
+
+        return attributes != null && entry != null && entry.matches(attributes) ? entry.blobID_ : null;
+    }
+
+    // record that fileName, as it is now, holds the contents with blobID.
+    // Called right after reading the file, so a change made in between has a
+    // recent modification time and is caught by the racy window.
+    void record(String fileName, String blobID){
+        BasicFileAttributes attributes = readAttributes(fileName);
+
+        if (attributes == null){
+            if (entries_.remove(fileName) != null){
+                changed_.add(fileName);
+            }
+            return;
+        }
+
+        long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        entries_.put(fileName, new Entry(attributes.size(), modifiedNanos(attributes), fileKey(attributes), blobID, now));
+        changed_.add(fileName);
+    }
+
+    // the blob ID of the current contents of fileName, or null if it is not a
+    // plain file. The file is only read when its stat data has changed.
+    String getBlobID(String fileName){
+
+        String blobID = getCachedBlobID(fileName);
+        if (blobID != null){
+            return blobID;
+        }
+
+        if (readAttributes(fileName) == null){
+            record(fileName, null);
+            return null;
+        }
+
+        blobID = Utils.sha1(Utils.readContents(new File(fileName)));
+        record(fileName, blobID);
+
+        return blobID;
+    }
+
+    // write the cache back if this command changed it
+    static synchronized void save(){
+
+        if (cache_ == null || cache_.changed_.isEmpty()){
+            return;
+        }
+
+        if (cache_.file_.exists() && cache_.appended_ + cache_.changed_.size() <= cache_.entries_.size()){
+            cache_.append();
+        } else {
+            cache_.rewrite();
+        }
+    }
+
+    // append the changed records to the end of the file
+    private void append(){
+        List<String> paths = new ArrayList<>(changed_);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file_, true)))) {
+            for (String path : paths){
+                writeRecord(out, path, entries_.get(path));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        changed_.removeAll(paths);
+        appended_ += paths.size();
+    }
+
+    // replace the file with one holding only the current records
+    private void rewrite(){
+        List<String> paths = new ArrayList<>(changed_);
+        Map<String, Entry> entries = new HashMap<>(entries_);
+
+        File tempFile;
+        try {
+            tempFile = File.createTempFile(file_.getName() + "-", ".tmp", file_.getParentFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(entries.size());
+
+            for (Map.Entry<String, Entry> mapping : entries.entrySet()){
+                writeRecord(out, mapping.getKey(), mapping.getValue());
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file_.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed_.removeAll(paths);
+            appended_ = 0;
+        } catch (IOException e) {
+            tempFile.delete();
+            e.printStackTrace();
+        }
+    }
+}
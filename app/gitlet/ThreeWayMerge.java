@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/* Line-level three-way merge in the style of diff3. Each side is diffed
+   against the common ancestor; lines that both sides kept unchanged split
+   the files into chunks. A chunk changed on one side only takes that
+   side's lines, a chunk changed the same way on both sides is taken once,
+   and only chunks changed differently on both sides are written between
+   conflict markers.
+
+   Lines shared by all three versions at the start and the end are copied
+   straight to the output, so the diffs, and the line numbering they need,
+   only cover the region between the first and the last change. The merged
+   file is written to the output stream as it is produced. */
+class ThreeWayMerge {
+
+    private static final byte[] OURS_MARKER = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEPARATOR = "=======\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] THEIRS_MARKER = ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    private final OutputStream out_;
+    // last byte written, so that markers always start on a line of their own
+    private int lastByte_ = '\n';
+
+    private ThreeWayMerge(OutputStream out){
+        out_ = out;
+    }
+
+    // merge OURS and THEIRS, both derived from BASE, into OUT. Returns false
+    // if some lines were changed differently on both sides.
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs, OutputStream out) throws IOException {
+
+        FileLines baseLines = new FileLines(base);
+        FileLines ourLines = new FileLines(ours);
+        FileLines theirLines = new FileLines(theirs);
+        ThreeWayMerge merge = new ThreeWayMerge(out);
+
+        // lines shared by all three versions at either end
+        int prefix = 0;
+        while (prefix < baseLines.count() && prefix < ourLines.count() && prefix < theirLines.count()
+                && baseLines.equals(prefix, ourLines, prefix) && baseLines.equals(prefix, theirLines, prefix)){
+            prefix++;
+        }
+
+        int suffix = 0;
+        while (suffix < baseLines.count() - prefix && suffix < ourLines.count() - prefix && suffix < theirLines.count() - prefix
+                && baseLines.equals(baseLines.count() - 1 - suffix, ourLines, ourLines.count() - 1 - suffix)
+                && baseLines.equals(baseLines.count() - 1 - suffix, theirLines, theirLines.count() - 1 - suffix)){
+            suffix++;
+        }
+
+        merge.write(baseLines, 0, prefix);
+        boolean clean = merge.mergeRegion(baseLines, ourLines, theirLines, prefix,
+                baseLines.count() - suffix, ourLines.count() - suffix, theirLines.count() - suffix);
+        merge.write(baseLines, baseLines.count() - suffix, baseLines.count());
+        return clean;
+    }
+
+    // write OURS and THEIRS whole between conflict markers, as when a file
+    // was changed on one side and removed on the other
+    static void writeConflict(byte[] ours, byte[] theirs, OutputStream out) throws IOException {
+        ThreeWayMerge merge = new ThreeWayMerge(out);
+        FileLines ourLines = new FileLines(ours);
+        FileLines theirLines = new FileLines(theirs);
+        merge.writeConflict(ourLines, 0, ourLines.count(), theirLines, 0, theirLines.count());
+    }
+
+    // merge the lines from START up to each END, past the shared prefix
+    private boolean mergeRegion(FileLines base, FileLines ours, FileLines theirs, int start, int baseEnd, int ourEnd, int theirEnd) throws IOException {
+
+        // number the lines of the region so that equal lines get equal numbers
+        FileLines.Numbering numbering = new FileLines.Numbering();
+        int[] baseNumbers = numbering.number(base, start, baseEnd);
+        int[] ourNumbers = numbering.number(ours, start, ourEnd);
+        int[] theirNumbers = numbering.number(theirs, start, theirEnd);
+
+        // for each base line, the line it matches on either side, or -1
+        int[] inOurs = matchedLines(baseNumbers, ourNumbers);
+        int[] inTheirs = matchedLines(baseNumbers, theirNumbers);
+
+        boolean clean = true;
+        int i = 0;
+        int j = 0;
+        int k = 0;
+
+        while (i < baseNumbers.length || j < ourNumbers.length || k < theirNumbers.length){
+
+            // a line both sides kept: copy it
+            if (i < baseNumbers.length && inOurs[i] == j && inTheirs[i] == k){
+                write(base, start + i, start + i + 1);
+                i++;
+                j++;
+                k++;
+                continue;
+            }
+
+            // the chunk runs up to the next line both sides kept
+            int nextI = i;
+            while (nextI < baseNumbers.length && (inOurs[nextI] < 0 || inTheirs[nextI] < 0)){
+                nextI++;
+            }
+            int nextJ = nextI < baseNumbers.length ? inOurs[nextI] : ourNumbers.length;
+            int nextK = nextI < baseNumbers.length ? inTheirs[nextI] : theirNumbers.length;
+
+            boolean oursChanged = !sameLines(baseNumbers, i, nextI, ourNumbers, j, nextJ);
+            boolean theirsChanged = !sameLines(baseNumbers, i, nextI, theirNumbers, k, nextK);
+
+            if (!theirsChanged || sameLines(ourNumbers, j, nextJ, theirNumbers, k, nextK)){
+                write(ours, start + j, start + nextJ);
+            } else if (!oursChanged){
+                write(theirs, start + k, start + nextK);
+            } else {
+                writeConflict(ours, start + j, start + nextJ, theirs, start + k, start + nextK);
+                clean = false;
+            }
+
+            i = nextI;
+            j = nextJ;
+            k = nextK;
+        }
+        return clean;
+    }
+
+    private static int[] matchedLines(int[] base, int[] side){
+        int[] matched = new int[base.length];
+        Arrays.fill(matched, -1);
+
+        List<LineDiff.Match> matches = LineDiff.matches(base, side);
+        for (LineDiff.Match match : matches){
+            for (int offset = 0; offset < match.length_; offset++){
+                matched[match.aStart_ + offset] = match.bStart_ + offset;
+            }
+        }
+        return matched;
+    }
+
+    private static boolean sameLines(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd){
+        return Arrays.equals(a, aStart, aEnd, b, bStart, bEnd);
+    }
+
+    private void write(FileLines lines, int startLine, int endLine) throws IOException {
+        int last = lines.write(out_, startLine, endLine);
+        if (last >= 0){
+            lastByte_ = last;
+        }
+    }
+
+    private void writeMarker(byte[] marker) throws IOException {
+        if (lastByte_ != '\n'){
+            out_.write('\n');
+        }
+        out_.write(marker);
+        lastByte_ = '\n';
+    }
+
+    private void writeConflict(FileLines ours, int ourStart, int ourEnd, FileLines theirs, int theirStart, int theirEnd) throws IOException {
+        writeMarker(OURS_MARKER);
+        write(ours, ourStart, ourEnd);
+        writeMarker(SEPARATOR);
+        write(theirs, theirStart, theirEnd);
+        writeMarker(THEIRS_MARKER);
+    }
+}
@@ -0,0 +1,560 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* A directory of the files tracked by a commit, stored as an object named by
+   the hash of its contents. A commit refers to the tree of its root
+   directory, and a tree to the blobs of its files and the trees of its
+   subdirectories, so commits share every directory they have in common: a
+   commit writes new trees only along the paths it changes, and diffs skip
+   two trees with the same ID without reading them.
+
+   A directory of more than MAX_ENTRIES entries is split into up to 256
+   shards by a hash of the entry names, and a shard that is still too large
+   by the next byte of the hash, so that changing one file of a large
+   directory rewrites only its shard. The shape depends only on the entries,
+   so equal directories always have equal IDs.
+
+   Trees are stored loose in .gitlet/Trees or in packs:
+   header, varint number of entries in the directory under this tree,
+   boolean sharded, varint count, then count entries sorted by name: string
+   name (the two hex digits of the shard in a sharded tree), byte kind,
+   20-byte ID. The ID of a tree is the SHA-1 of everything after the header. */
+class Tree {
+
+    static final byte KIND_BLOB = 0;
+    static final byte KIND_TREE = 1;
+    static final byte KIND_SHARD = 2;
+
+    // a directory with more entries than this is split into shards
+    private static final int MAX_ENTRIES = 512;
+    // shards this deep are not split again
+    private static final int MAX_DEPTH = 4;
+
+    // trees known to be stored, so that unchanged trees are not written again.
+    // Only gc removes stored objects, and it empties this set.
+    private static final Set<String> storedTrees_ = ConcurrentHashMap.newKeySet();
+
+    // trees read or written by this process; commits share most of them
+    private static final ObjectCache<Tree> cache_ = new ObjectCache<>("tree", 32L << 20, Tree::estimateSize);
+
+    /* The kind and ID of a named entry. */
+    private static final class Entry {
+        private final byte kind_;
+        private final String id_;
+
+        Entry(byte kind, String id){
+            kind_ = kind;
+            id_ = id;
+        }
+    }
+
+    /* A file that differs between two trees. */
+    static final class Change {
+        private final String path_;
+        // the blob IDs on either side, null where the file is absent
+        private final String oldBlobID_;
+        private final String newBlobID_;
+
+        Change(String path, String oldBlobID, String newBlobID){
+            path_ = path;
+            oldBlobID_ = oldBlobID;
+            newBlobID_ = newBlobID;
+        }
+
+        String getPath_() {
+            return path_;
+        }
+
+        String getOldBlobID_() {
+            return oldBlobID_;
+        }
+
+        String getNewBlobID_() {
+            return newBlobID_;
+        }
+    }
+
+    private final String id_;
+    // entries in the part of the directory under this tree
+    private final int size_;
+    // true if the entries are shards rather than files and subdirectories
+    private final boolean sharded_;
+    private final TreeMap<String, Entry> entries_;
+
+    private Tree(String id, int size, boolean sharded, TreeMap<String, Entry> entries){
+        id_ = id;
+        size_ = size;
+        sharded_ = sharded;
+        entries_ = entries;
+    }
+
+    static ObjectCache<Tree> getCache(){
+        return cache_;
+    }
+
+    // forget which trees are stored, after gc deleted some
+    static void forgetStored(){
+        storedTrees_.clear();
+    }
+
+    // rough number of bytes this tree holds in memory
+    private long estimateSize(){
+        long size = 128;
+        for (String name : entries_.keySet()){
+            size += 2L * name.length() + 160;
+        }
+        return size;
+    }
+
+    /* WRITING */
+
+    // write the tree of FILES, a mapping from path to blobID, returning its ID
+    static String write(Map<String, String> files){
+        return updateDirectory(null, files).id_;
+    }
+
+    // write the tree that differs from TREEID by CHANGES, a mapping from path
+    // to the new blobID or null for a removed file, returning its ID. Only
+    // the trees on the paths of the changes are read and written.
+    static String update(String treeID, Map<String, String> changes){
+        return updateDirectory(read(treeID), changes).id_;
+    }
+
+    // DIRECTORY with CHANGES applied, keyed by paths relative to it; a null
+    // directory is empty
+    private static Tree updateDirectory(Tree directory, Map<String, String> changes){
+
+        Map<String, Entry> entryChanges = new HashMap<>();
+        Map<String, Map<String, String>> subdirectoryChanges = new HashMap<>();
+
+        for (Map.Entry<String, String> change : changes.entrySet()){
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+
+            if (slash < 0){
+                entryChanges.put(path, change.getValue() == null ? null : new Entry(KIND_BLOB, change.getValue()));
+            } else {
+                subdirectoryChanges.computeIfAbsent(path.substring(0, slash), k -> new HashMap<>())
+                        .put(path.substring(slash + 1), change.getValue());
+            }
+        }
+
+        for (Map.Entry<String, Map<String, String>> subdirectory : subdirectoryChanges.entrySet()){
+            String name = subdirectory.getKey();
+            Entry current = directory != null ? findEntry(directory, 0, name) : null;
+            Tree before = current != null && current.kind_ == KIND_TREE ? read(current.id_) : null;
+            Tree after = updateDirectory(before, subdirectory.getValue());
+
+            // empty directories are not kept
+            if (after.size_ > 0){
+                entryChanges.put(name, new Entry(KIND_TREE, after.id_));
+            } else if (before != null && !entryChanges.containsKey(name)){
+                entryChanges.put(name, null);
+            }
+        }
+
+        return updateEntries(directory, 0, entryChanges);
+    }
+
+    // NODE, the part of a directory at DEPTH, with the entries in CHANGES
+    // replaced or, where null, removed
+    private static Tree updateEntries(Tree node, int depth, Map<String, Entry> changes){
+
+        if (node == null || !node.sharded_){
+            TreeMap<String, Entry> entries = node != null ? new TreeMap<>(node.entries_) : new TreeMap<>();
+            for (Map.Entry<String, Entry> change : changes.entrySet()){
+                if (change.getValue() == null){
+                    entries.remove(change.getKey());
+                } else {
+                    entries.put(change.getKey(), change.getValue());
+                }
+            }
+            return build(entries, depth);
+        }
+
+        Map<String, Map<String, Entry>> shardChanges = new HashMap<>();
+        for (Map.Entry<String, Entry> change : changes.entrySet()){
+            shardChanges.computeIfAbsent(shardName(change.getKey(), depth), k -> new HashMap<>())
+                    .put(change.getKey(), change.getValue());
+        }
+
+        TreeMap<String, Entry> shards = new TreeMap<>(node.entries_);
+        int size = node.size_;
+
+        for (Map.Entry<String, Map<String, Entry>> shardChange : shardChanges.entrySet()){
+            Entry current = shards.get(shardChange.getKey());
+            Tree before = current != null ? read(current.id_) : null;
+            Tree after = updateEntries(before, depth + 1, shardChange.getValue());
+
+            size += after.size_ - (before != null ? before.size_ : 0);
+            if (after.size_ > 0){
+                shards.put(shardChange.getKey(), new Entry(KIND_SHARD, after.id_));
+            } else {
+                shards.remove(shardChange.getKey());
+            }
+        }
+
+        // a directory that shrank enough is a single tree again
+        if (size <= MAX_ENTRIES){
+            TreeMap<String, Entry> entries = new TreeMap<>();
+            for (Entry shard : shards.values()){
+                addEntries(read(shard.id_), entries);
+            }
+            return build(entries, depth);
+        }
+        return store(size, true, shards);
+    }
+
+    // store the part of a directory at DEPTH holding ENTRIES, in shards if
+    // there are too many
+    private static Tree build(TreeMap<String, Entry> entries, int depth){
+
+        if (entries.size() <= MAX_ENTRIES || depth >= MAX_DEPTH){
+            return store(entries.size(), false, entries);
+        }
+
+        Map<String, TreeMap<String, Entry>> shardEntries = new HashMap<>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()){
+            shardEntries.computeIfAbsent(shardName(entry.getKey(), depth), k -> new TreeMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+
+        TreeMap<String, Entry> shards = new TreeMap<>();
+        for (Map.Entry<String, TreeMap<String, Entry>> shard : shardEntries.entrySet()){
+            shards.put(shard.getKey(), new Entry(KIND_SHARD, build(shard.getValue(), depth + 1).id_));
+        }
+        return store(entries.size(), true, shards);
+    }
+
+    // the shard of a directory at DEPTH that holds the entry NAME. The hash
+    // of a String is fixed by the language, so shards are the same on
+    // every machine.
+    private static String shardName(String name, int depth){
+        int hash = name.hashCode();
+        // spread the bits, so that names differing only at the end, such
+        // as numbered files, spread over all shards at every depth
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+
+        int shard = (hash >>> (24 - 8 * depth)) & 0xff;
+        return String.format("%02x", shard);
+    }
+
+    // the tree with these contents, written unless it is already stored
+    private static Tree store(int size, boolean sharded, TreeMap<String, Entry> entries){
+
+        byte[] body;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + entries.size() * 40);
+            DataOutputStream out = new DataOutputStream(bytes);
+            ObjectCodec.writeVarint(out, size);
+            out.writeBoolean(sharded);
+            ObjectCodec.writeVarint(out, entries.size());
+
+            for (Map.Entry<String, Entry> entry : entries.entrySet()){
+                ObjectCodec.writeString(out, entry.getKey());
+                out.writeByte(entry.getValue().kind_);
+                ObjectCodec.writeID(out, entry.getValue().id_);
+            }
+            body = bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Tree tree = new Tree(Utils.sha1(body), size, sharded, entries);
+        if (!exists(tree.id_)){
+            writeTreeToDisk(tree.id_, body);
+        }
+        cache_.put(tree.id_, tree);
+        return tree;
+    }
+
+    private static boolean exists(String treeID){
+
+        if (storedTrees_.contains(treeID)){
+            return true;
+        }
+
+        boolean stored = Utils.join(Utils.GITLET_DIR, Utils.TREES_DIR, treeID).exists() || PackFile.contains(treeID);
+        if (stored){
+            storedTrees_.add(treeID);
+        }
+        return stored;
+    }
+
+    // write a tree to a temporary file, sync it and rename it, so that it is
+    // durable before the commit that refers to it is written and a partially
+    // written tree is never visible under its ID
+    private static void writeTreeToDisk(String treeID, byte[] body){
+
+        File treeDir = Utils.join(Utils.GITLET_DIR, Utils.TREES_DIR);
+        treeDir.mkdir();
+
+        Metrics.Timer timer = Metrics.start(Metrics.Phase.TREE_OBJECT_WRITE);
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile("tree", ".tmp", new File(Utils.GITLET_DIR));
+            try (FileOutputStream fileStream = new FileOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream))) {
+                ObjectCodec.writeHeader(out, ObjectCodec.TYPE_TREE);
+                out.write(body);
+                out.flush();
+                fileStream.getFD().sync();
+            }
+
+            Files.move(tempFile.toPath(), Utils.join(treeDir, treeID).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            storedTrees_.add(treeID);
+            Metrics.end(timer, body.length);
+        } catch (IOException e) {
+            if (tempFile != null){
+                tempFile.delete();
+            }
+            e.printStackTrace();
+        }
+    }
+
+    // write a packed tree as a loose object, before its pack is deleted
+    static void unpack(String treeID) throws IOException {
+        try (DataInputStream in = new DataInputStream(PackFile.openObject(PackFile.TYPE_TREE, treeID))) {
+            ObjectCodec.readHeader(in, ObjectCodec.TYPE_TREE);
+            writeTreeToDisk(treeID, in.readAllBytes());
+        }
+        if (!Utils.join(Utils.GITLET_DIR, Utils.TREES_DIR, treeID).exists()){
+            throw new IOException("cannot unpack tree " + treeID);
+        }
+    }
+
+    /* READING */
+
+    // read a tree, or take it from the cache if it was read before
+    private static Tree read(String treeID){
+        return cache_.get(treeID, Tree::loadTree);
+    }
+
+    private static Tree loadTree(String treeID){
+
+        Tree tree = null;
+        File inFile = Utils.join(Utils.GITLET_DIR, Utils.TREES_DIR, treeID);
+        Metrics.Timer timer = Metrics.start(Metrics.Phase.TREE_OBJECT_READ);
+        try {
+            // loose objects take precedence, otherwise look in the packs
+            InputStream in = inFile.exists() ? new FileInputStream(inFile) : PackFile.openObject(PackFile.TYPE_TREE, treeID);
+            InputStream counted = Metrics.count(in, timer);
+
+            try (DataInputStream inp = new DataInputStream(new BufferedInputStream(counted))) {
+                tree = decode(inp, treeID);
+            }
+            Metrics.end(timer, Metrics.countOf(counted));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return tree;
+    }
+
+    private static Tree decode(DataInputStream in, String treeID) throws IOException {
+        ObjectCodec.readHeader(in, ObjectCodec.TYPE_TREE);
+
+        int size = (int) ObjectCodec.readVarint(in);
+        boolean sharded = in.readBoolean();
+        int count = (int) ObjectCodec.readVarint(in);
+
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        for (int i = 0; i < count; i++){
+            String name = ObjectCodec.readString(in);
+            byte kind = in.readByte();
+            entries.put(name, new Entry(kind, ObjectCodec.readID(in)));
+        }
+        return new Tree(treeID, size, sharded, entries);
+    }
+
+    // the entry NAME of the directory whose part at DEPTH is NODE, or null
+    private static Entry findEntry(Tree node, int depth, String name){
+        while (node.sharded_){
+            Entry shard = node.entries_.get(shardName(name, depth));
+            if (shard == null){
+                return null;
+            }
+            node = read(shard.id_);
+            depth++;
+        }
+        return node.entries_.get(name);
+    }
+
+    // the blobID of the file at PATH in the tree, or null if there is none
+    static String getBlobID(String treeID, String path){
+
+        Tree directory = read(treeID);
+        String[] names = path.split("/");
+
+        for (int i = 0; i < names.length - 1; i++){
+            Entry entry = findEntry(directory, 0, names[i]);
+            if (entry == null || entry.kind_ != KIND_TREE){
+                return null;
+            }
+            directory = read(entry.id_);
+        }
+
+        Entry entry = findEntry(directory, 0, names[names.length - 1]);
+        return entry != null && entry.kind_ == KIND_BLOB ? entry.id_ : null;
+    }
+
+    // mapping from path to blobID of every file in the tree
+    static Map<String, String> getFiles(String treeID){
+        Map<String, String> files = new HashMap<>();
+        addFiles(read(treeID), "", files);
+        return files;
+    }
+
+    private static void addFiles(Tree node, String prefix, Map<String, String> files){
+        for (Map.Entry<String, Entry> entry : node.entries_.entrySet()){
+            Entry value = entry.getValue();
+
+            if (value.kind_ == KIND_SHARD){
+                addFiles(read(value.id_), prefix, files);
+            } else if (value.kind_ == KIND_TREE){
+                addFiles(read(value.id_), prefix + entry.getKey() + "/", files);
+            } else {
+                files.put(prefix + entry.getKey(), value.id_);
+            }
+        }
+    }
+
+    // add the entries of the directory part NODE, across its shards
+    private static void addEntries(Tree node, TreeMap<String, Entry> entries){
+        if (!node.sharded_){
+            entries.putAll(node.entries_);
+            return;
+        }
+        for (Entry shard : node.entries_.values()){
+            addEntries(read(shard.id_), entries);
+        }
+    }
+
+    // add the IDs of the trees and blobs reachable from TREEID to TREES and
+    // BLOBS, skipping trees already in TREES. Returns the ID of a tree that
+    // could not be read, or null.
+    static String collect(String treeID, Set<String> trees, Set<String> blobs){
+
+        if (!trees.add(treeID)){
+            return null;
+        }
+
+        Tree node = read(treeID);
+        if (node == null){
+            return treeID;
+        }
+
+        for (Entry entry : node.entries_.values()){
+            if (entry.kind_ == KIND_BLOB){
+                blobs.add(entry.id_);
+            } else {
+                String missing = collect(entry.id_, trees, blobs);
+                if (missing != null){
+                    return missing;
+                }
+            }
+        }
+        return null;
+    }
+
+    /* DIFFS */
+
+    // the files that differ between two trees, sorted by path. Subtrees with
+    // the same ID on both sides are not read.
+    static List<Change> diff(String oldTreeID, String newTreeID){
+        List<Change> changes = new ArrayList<>();
+        diffNodes(read(oldTreeID), read(newTreeID), 0, "", changes);
+        changes.sort(Comparator.comparing(Change::getPath_));
+        return changes;
+    }
+
+    // the files that differ between two mappings from path to blobID, sorted
+    // by path, for commits written before trees
+    static List<Change> diff(Map<String, String> oldFiles, Map<String, String> newFiles){
+        List<Change> changes = new ArrayList<>();
+
+        for (Map.Entry<String, String> entry : oldFiles.entrySet()){
+            String newBlobID = newFiles.get(entry.getKey());
+            if (!entry.getValue().equals(newBlobID)){
+                changes.add(new Change(entry.getKey(), entry.getValue(), newBlobID));
+            }
+        }
+        for (Map.Entry<String, String> entry : newFiles.entrySet()){
+            if (!oldFiles.containsKey(entry.getKey())){
+                changes.add(new Change(entry.getKey(), null, entry.getValue()));
+            }
+        }
+
+        changes.sort(Comparator.comparing(Change::getPath_));
+        return changes;
+    }
+
+    // add the differences between the parts at DEPTH of a directory in two
+    // trees, null where the directory is absent, to CHANGES
+    private static void diffNodes(Tree oldNode, Tree newNode, int depth, String prefix, List<Change> changes){
+
+        if (oldNode != null && newNode != null && oldNode.id_.equals(newNode.id_)){
+            return;
+        }
+
+        // shards with the same name hold the same names on both sides
+        if (oldNode != null && newNode != null && oldNode.sharded_ && newNode.sharded_){
+            Set<String> shards = new TreeSet<>(oldNode.entries_.keySet());
+            shards.addAll(newNode.entries_.keySet());
+
+            for (String shard : shards){
+                Entry oldShard = oldNode.entries_.get(shard);
+                Entry newShard = newNode.entries_.get(shard);
+                if (oldShard != null && newShard != null && oldShard.id_.equals(newShard.id_)){
+                    continue;
+                }
+                diffNodes(oldShard != null ? read(oldShard.id_) : null, newShard != null ? read(newShard.id_) : null,
+                        depth + 1, prefix, changes);
+            }
+            return;
+        }
+
+        TreeMap<String, Entry> oldEntries = new TreeMap<>();
+        TreeMap<String, Entry> newEntries = new TreeMap<>();
+        if (oldNode != null){
+            addEntries(oldNode, oldEntries);
+        }
+        if (newNode != null){
+            addEntries(newNode, newEntries);
+        }
+
+        Set<String> names = new TreeSet<>(oldEntries.keySet());
+        names.addAll(newEntries.keySet());
+
+        for (String name : names){
+            Entry oldEntry = oldEntries.get(name);
+            Entry newEntry = newEntries.get(name);
+
+            if (oldEntry != null && newEntry != null && oldEntry.kind_ == newEntry.kind_ && oldEntry.id_.equals(newEntry.id_)){
+                continue;
+            }
+
+            // a name may be a file on one side and a directory on the other
+            Tree oldDirectory = oldEntry != null && oldEntry.kind_ == KIND_TREE ? read(oldEntry.id_) : null;
+            Tree newDirectory = newEntry != null && newEntry.kind_ == KIND_TREE ? read(newEntry.id_) : null;
+            if (oldDirectory != null || newDirectory != null){
+                diffNodes(oldDirectory, newDirectory, 0, prefix + name + "/", changes);
+            }
+
+            String oldBlobID = oldEntry != null && oldEntry.kind_ == KIND_BLOB ? oldEntry.id_ : null;
+            String newBlobID = newEntry != null && newEntry.kind_ == KIND_BLOB ? newEntry.id_ : null;
+            if (oldBlobID != null || newBlobID != null){
+                changes.add(new Change(prefix + name, oldBlobID, newBlobID));
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.function.Function;
+
+/* Prints the differences between two versions of a set of files, each given
+   as a mapping from file-name to blobID. Files are compared by blob ID
+   first, so unchanged files are never read, and the contents of a changed
+   file are only read to print its diff or its line counts.
+
+   Content diffs are in the unified format with three lines of context.
+   Files holding a NUL byte near the start, or larger than MAX_TEXT_SIZE, are
+   treated as binary and only reported as differing. */
+class UnifiedDiff {
+
+    static final int MODE_PATCH = 0;
+    static final int MODE_NAME_ONLY = 1;
+    static final int MODE_STAT = 2;
+
+    private static final int CONTEXT = 3;
+    private static final int MAX_TEXT_SIZE = 16 << 20;
+    // leading bytes searched for a NUL to recognise binary files
+    private static final int BINARY_PROBE = 8000;
+    // widest bar of + and - printed by the stat mode
+    private static final int STAT_WIDTH = 40;
+
+    /* A run of lines removed from the old version and added in the new one. */
+    private static class Change {
+        final int oldStart_;
+        final int oldEnd_;
+        final int newStart_;
+        final int newEnd_;
+
+        Change(int oldStart, int oldEnd, int newStart, int newEnd){
+            oldStart_ = oldStart;
+            oldEnd_ = oldEnd;
+            newStart_ = newStart;
+            newEnd_ = newEnd;
+        }
+    }
+
+    private final Function<String, byte[]> oldContents_;
+    private final Function<String, byte[]> newContents_;
+    private final PrintStream out_ = System.out;
+
+    private UnifiedDiff(Function<String, byte[]> oldContents, Function<String, byte[]> newContents){
+        oldContents_ = oldContents;
+        newContents_ = newContents;
+    }
+
+    // print the differences from OLD_FILES to NEW_FILES. The contents
+    // functions return the contents of a file-name on either side.
+    static void print(Map<String, String> oldFiles, Map<String, String> newFiles,
+                      Function<String, byte[]> oldContents, Function<String, byte[]> newContents, int mode){
+
+        SortedSet<String> changed = changedFiles(oldFiles, newFiles);
+        UnifiedDiff diff = new UnifiedDiff(oldContents, newContents);
+
+        if (mode == MODE_NAME_ONLY){
+            for (String file : changed){
+                System.out.println(file);
+            }
+        } else if (mode == MODE_STAT){
+            diff.printStat(changed, oldFiles, newFiles);
+        } else {
+            for (String file : changed){
+                diff.printPatch(file, oldFiles.containsKey(file), newFiles.containsKey(file));
+            }
+        }
+    }
+
+    // the files whose blob IDs differ between the versions, sorted
+    private static SortedSet<String> changedFiles(Map<String, String> oldFiles, Map<String, String> newFiles){
+        SortedSet<String> changed = new TreeSet<>();
+
+        for (Map.Entry<String, String> entry : oldFiles.entrySet()){
+            if (!entry.getValue().equals(newFiles.get(entry.getKey()))){
+                changed.add(entry.getKey());
+            }
+        }
+        for (String file : newFiles.keySet()){
+            if (!oldFiles.containsKey(file)){
+                changed.add(file);
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isBinary(byte[] contents){
+
+        if (contents.length > MAX_TEXT_SIZE){
+            return true;
+        }
+        for (int i = 0; i < Math.min(contents.length, BINARY_PROBE); i++){
+            if (contents[i] == 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the runs of changed lines between two versions of a file
+    private static List<Change> changes(FileLines oldLines, FileLines newLines){
+
+        FileLines.Numbering numbering = new FileLines.Numbering();
+        int[] oldNumbers = numbering.number(oldLines, 0, oldLines.count());
+        int[] newNumbers = numbering.number(newLines, 0, newLines.count());
+
+        List<Change> changes = new ArrayList<>();
+        int oldPosition = 0;
+        int newPosition = 0;
+
+        for (LineDiff.Match match : LineDiff.matches(oldNumbers, newNumbers)){
+            if (match.aStart_ > oldPosition || match.bStart_ > newPosition){
+                changes.add(new Change(oldPosition, match.aStart_, newPosition, match.bStart_));
+            }
+            oldPosition = match.aStart_ + match.length_;
+            newPosition = match.bStart_ + match.length_;
+        }
+        if (oldPosition < oldNumbers.length || newPosition < newNumbers.length){
+            changes.add(new Change(oldPosition, oldNumbers.length, newPosition, newNumbers.length));
+        }
+        return changes;
+    }
+
+    private void printPatch(String file, boolean inOld, boolean inNew){
+
+        byte[] oldContents = inOld ? oldContents_.apply(file) : new byte[0];
+        byte[] newContents = inNew ? newContents_.apply(file) : new byte[0];
+
+        out_.println("diff a/" + file + " b/" + file);
+
+        if (isBinary(oldContents) || isBinary(newContents)){
+            out_.println(String.format("Binary files %s and %s differ",
+                    inOld ? "a/" + file : "/dev/null", inNew ? "b/" + file : "/dev/null"));
+            return;
+        }
+
+        out_.println(inOld ? "--- a/" + file : "--- /dev/null");
+        out_.println(inNew ? "+++ b/" + file : "+++ /dev/null");
+
+        FileLines oldLines = new FileLines(oldContents);
+        FileLines newLines = new FileLines(newContents);
+        List<Change> changes = changes(oldLines, newLines);
+
+        // changes less than two contexts apart share a hunk
+        int first = 0;
+        while (first < changes.size()){
+            int last = first;
+            while (last + 1 < changes.size() && changes.get(last + 1).oldStart_ - changes.get(last).oldEnd_ <= 2 * CONTEXT){
+                last++;
+            }
+            printHunk(changes.subList(first, last + 1), oldLines, newLines);
+            first = last + 1;
+        }
+    }
+
+    private void printHunk(List<Change> hunk, FileLines oldLines, FileLines newLines){
+
+        Change first = hunk.get(0);
+        Change last = hunk.get(hunk.size() - 1);
+
+        int oldStart = Math.max(0, first.oldStart_ - CONTEXT);
+        int oldEnd = Math.min(oldLines.count(), last.oldEnd_ + CONTEXT);
+        int newStart = first.newStart_ - (first.oldStart_ - oldStart);
+        int newEnd = last.newEnd_ + (oldEnd - last.oldEnd_);
+
+        out_.println(String.format("@@ -%s +%s @@", range(oldStart, oldEnd), range(newStart, newEnd)));
+
+        int position = oldStart;
+        for (Change change : hunk){
+            printLines(' ', oldLines, position, change.oldStart_);
+            printLines('-', oldLines, change.oldStart_, change.oldEnd_);
+            printLines('+', newLines, change.newStart_, change.newEnd_);
+            position = change.oldEnd_;
+        }
+        printLines(' ', oldLines, position, oldEnd);
+    }
+
+    // a hunk range as printed in its header; empty ranges name the line before
+    private static String range(int start, int end){
+        int length = end - start;
+        return (length == 0 ? start : start + 1) + "," + length;
+    }
+
+    private void printLines(char prefix, FileLines lines, int start, int end){
+        try {
+            for (int line = start; line < end; line++){
+                out_.write(prefix);
+                lines.write(out_, line, line + 1);
+
+                if (lines.isUnterminated(line)){
+                    out_.println();
+                    out_.println("\\ No newline at end of file");
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void printStat(SortedSet<String> changed, Map<String, String> oldFiles, Map<String, String> newFiles){
+
+        if (changed.isEmpty()){
+            return;
+        }
+
+        List<String> names = new ArrayList<>();
+        List<int[]> counts = new ArrayList<>();
+        int insertions = 0;
+        int deletions = 0;
+        int nameWidth = 0;
+        int maxCount = 0;
+
+        for (String file : changed){
+            byte[] oldContents = oldFiles.containsKey(file) ? oldContents_.apply(file) : new byte[0];
+            byte[] newContents = newFiles.containsKey(file) ? newContents_.apply(file) : new byte[0];
+
+            int[] count = null;
+            if (!isBinary(oldContents) && !isBinary(newContents)){
+                count = new int[2];
+                for (Change change : changes(new FileLines(oldContents), new FileLines(newContents))){
+                    count[0] += change.newEnd_ - change.newStart_;
+                    count[1] += change.oldEnd_ - change.oldStart_;
+                }
+                insertions += count[0];
+                deletions += count[1];
+                maxCount = Math.max(maxCount, count[0] + count[1]);
+            }
+
+            names.add(file);
+            counts.add(count);
+            nameWidth = Math.max(nameWidth, file.length());
+        }
+
+        for (int i = 0; i < names.size(); i++){
+            int[] count = counts.get(i);
+            String summary;
+
+            if (count == null){
+                summary = "Bin";
+            } else {
+                // scale the bar down when some file has more changes than fit
+                int plus = count[0];
+                int minus = count[1];
+                if (maxCount > STAT_WIDTH){
+                    plus = (int) Math.ceil((double) plus * STAT_WIDTH / maxCount);
+                    minus = (int) Math.ceil((double) minus * STAT_WIDTH / maxCount);
+                }
+                summary = (count[0] + count[1]) + " " + "+".repeat(plus) + "-".repeat(minus);
+            }
+            out_.println(String.format(" %-" + nameWidth + "s | %s", names.get(i), summary));
+        }
+
+        out_.println(String.format(" %d file%s changed, %d insertion%s(+), %d deletion%s(-)",
+                names.size(), names.size() == 1 ? "" : "s",
+                insertions, insertions == 1 ? "" : "s",
+                deletions, deletions == 1 ? "" : "s"));
+    }
+}
@@ -5,6 +5,7 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -18,7 +19,27 @@ class Utils {
     static final String GITLET_DIR = ".gitlet";
     static final String COMMIT_DIR = "Commits";
     static final String BLOBS_DIR = "Blobs";
+    static final String TREES_DIR = "Trees";
+    static final String PACKS_DIR = "Packs";
     static final String COMMIT_TREE = "commitTree";
+    static final String HEAD_FILE = "HEAD";
+    static final String REFS_DIR = "refs";
+    static final String STAGING_FILE = "staging";
+    static final String CONFIG_FILE = "config";
+    static final String DAEMON_SOCKET = "daemon.sock";
+    static final String COMMIT_GRAPH = "commit-graph";
+    static final String COMMIT_GRAPH_LOOKUP = "commit-graph-lookup";
+    static final String COMMIT_INDEX = "commit-index";
+    static final String COMMIT_INDEX_OVERFLOW = "commit-index-overflow";
+    static final String MESSAGE_INDEX = "message-index";
+    static final String MESSAGE_CHECKPOINT = "message-index-checkpoint";
+    static final String STAT_CACHE = "index";
+    static final String LOCK_FILE = "lock";
+    static final String IGNORE_FILE = ".gitletignore";
+    static final String WATCH_JOURNAL = "watch-journal";
+    static final String WATCH_LOCK = "watch-lock";
+    static final String WATCH_COOKIES = "watch-cookies";
+    static final String WATCH_INDEX = "watch-index";
     static final String WORKING_DIR = System.getProperty("user.dir");
 
 
@@ -27,13 +48,18 @@ class Utils {
     /* Returns the SHA-1 hash of the concatenation of VALS, which may be any
        mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
+        Metrics.Timer timer = Metrics.start(Metrics.Phase.HASH);
+        long hashed = 0;
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
             for (Object val : vals) {
                 if (val instanceof byte[]) {
                     md.update((byte[]) val);
+                    hashed += ((byte[]) val).length;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    byte[] bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
+                    md.update(bytes);
+                    hashed += bytes.length;
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
@@ -42,6 +68,7 @@ class Utils {
             for (byte b : md.digest()) {
                 result.format("%02x", b);
             }
+            Metrics.end(timer, hashed);
             return result.toString();
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
@@ -53,6 +80,26 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /* Returns the raw bytes of the hexadecimal string HEX, which must have an
+       even number of digits. */
+    static byte[] hexToBytes(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /* Returns the lower-case hexadecimal representation of BYTES. */
+    static String bytesToHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
     /* FILE DELETION */
 
     /* Deletes FILE if it exists and is not a directory.  Returns true if FILE
@@ -107,6 +154,28 @@ class Utils {
         }
     }
 
+    /* Write the entire contents of BYTES to FILE through a temporary file of
+       its own in the .gitlet directory that is then renamed over FILE, so
+       that readers see either the old or the new contents and writers never
+       share a temporary file. Prints the error and returns false in case of
+       problems, leaving FILE as it was. */
+    static boolean writeContentsAtomically(File file, byte[] bytes) {
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile("tmp-" + file.getName() + "-", ".tmp", new File(GITLET_DIR));
+            Files.write(tempFile.toPath(), bytes);
+            Files.move(tempFile.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException excp) {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+            excp.printStackTrace();
+            return false;
+        }
+    }
+
     /* OTHER FILE UTILITIES */
 
     /* Return the concatenation of FIRST and OTHERS into a File designator,
@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* The files of the working directory as of a position in the WatchJournal,
+   with the blob IDs of those whose contents were checked since. While a
+   watcher runs, status and add take the files from here: only the paths
+   that the journal names after the position are listed and hashed again,
+   and the index moves on to the journal's end. When no watcher runs, or the
+   journal is stale, the working directory is walked whole as before.
+
+   A blob ID is kept only if it was checked after the position, so that any
+   later change to its file is in the journal after the position too.
+
+   A daemon keeps the index in memory; commands run on their own read it
+   from .gitlet/watch-index, which holds the UTF token of the journal, the
+   long position, the int number of files, and for each file its UTF path
+   and a boolean telling whether its 20-byte blob ID follows. */
+class WatchIndex {
+
+    // the index that follows the watcher, if one runs
+    private static WatchIndex current_;
+
+    // the journal followed, or null if there is no watcher
+    private final String token_;
+    private final long position_;
+    // the files that are not ignored, sorted; null if there is no watcher,
+    // in which case they are listed when asked for
+    private final NavigableSet<String> files_;
+    private final Map<String, String> blobIDs_;
+    private final IgnoreRules rules_;
+    // true if the index differs from the one saved
+    private volatile boolean changed_;
+
+    private WatchIndex(String token, long position, NavigableSet<String> files, Map<String, String> blobIDs, IgnoreRules rules){
+        token_ = token;
+        position_ = position;
+        files_ = files;
+        blobIDs_ = blobIDs;
+        rules_ = rules;
+    }
+
+    // the index as of now, with the files changed since the last one listed
+    // again, or every file if the journal does not tell which changed
+    static synchronized WatchIndex get(){
+
+        IgnoreRules rules = IgnoreRules.load();
+        WatchIndex previous = current_ != null ? current_ : load(rules);
+
+        WatchJournal.Changes changes = previous != null
+                ? WatchJournal.sync(previous.token_, previous.position_)
+                : WatchJournal.sync(null, 0);
+
+        if (changes == null){
+            current_ = null;
+            return new WatchIndex(null, 0, null, new ConcurrentHashMap<>(), rules);
+        }
+
+        Set<String> paths = changes.getPaths_();
+        if (previous == null || paths == null || paths.contains(Utils.IGNORE_FILE)){
+            current_ = new WatchIndex(changes.getToken_(), changes.getPosition_(),
+                    new TreeSet<>(WorkingTree.listFiles("", rules)), new ConcurrentHashMap<>(), rules);
+            current_.changed_ = true;
+        } else if (paths.isEmpty()){
+            current_ = new WatchIndex(changes.getToken_(), changes.getPosition_(), previous.files_, previous.blobIDs_, rules);
+            current_.changed_ = previous.changed_;
+        } else {
+            current_ = previous.update(changes, rules);
+        }
+        return current_;
+    }
+
+    // forget the index, so that it is read again from disk on next use
+    static synchronized void reset(){
+        current_ = null;
+    }
+
+    // a new index with PATHS listed again
+    private WatchIndex update(WatchJournal.Changes changes, IgnoreRules rules){
+
+        NavigableSet<String> files = new TreeSet<>(files_);
+        Map<String, String> blobIDs = new ConcurrentHashMap<>(blobIDs_);
+
+        // drop what was at each path, whether a file or a directory
+        for (String path : changes.getPaths_()){
+            files.remove(path);
+            blobIDs.remove(path);
+
+            SortedSet<String> below = files.subSet(path + "/", path + "0");
+            for (String file : below){
+                blobIDs.remove(file);
+            }
+            below.clear();
+        }
+
+        // and list what is there now
+        for (String path : changes.getPaths_()){
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                continue;
+            }
+
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            if (attributes.isRegularFile() && !rules.isIgnoredWithParents(path, false)){
+                files.add(path);
+            } else if (attributes.isDirectory() && !name.equals(Utils.GITLET_DIR)){
+                files.addAll(WorkingTree.listFiles(path, rules));
+            }
+        }
+
+        WatchIndex index = new WatchIndex(changes.getToken_(), changes.getPosition_(), files, blobIDs, rules);
+        index.changed_ = true;
+        return index;
+    }
+
+    // the files under DIRECTORY, a path from the top or empty for the whole
+    // working directory, that are not ignored, sorted
+    Collection<String> listFiles(String directory){
+
+        if (files_ == null){
+            return WorkingTree.listFiles(directory, rules_);
+        }
+        if (directory.isEmpty()){
+            return Collections.unmodifiableSet(files_);
+        }
+        return Collections.unmodifiableSet(files_.subSet(directory + "/", directory + "0"));
+    }
+
+    // true if FILENAME is a plain file
+    boolean isFile(String fileName){
+        return files_ != null && files_.contains(fileName) || new File(fileName).isFile();
+    }
+
+    // the blob ID of the current contents of FILENAME, or null if it is not
+    // a plain file; only files that changed are stat'ed, or read if the stat
+    // cache does not know them
+    String getBlobID(String fileName){
+
+        String blobID = blobIDs_.get(fileName);
+        if (blobID != null){
+            return blobID;
+        }
+
+        blobID = StatCache.get().getBlobID(fileName);
+        if (blobID != null && files_ != null && files_.contains(fileName)){
+            blobIDs_.put(fileName, blobID);
+            changed_ = true;
+        }
+        return blobID;
+    }
+
+    private static WatchIndex load(IgnoreRules rules){
+
+        File file = Utils.join(Utils.GITLET_DIR, Utils.WATCH_INDEX);
+        if (!file.exists()){
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            String token = in.readUTF();
+            long position = in.readLong();
+            int count = in.readInt();
+
+            NavigableSet<String> files = new TreeSet<>();
+            Map<String, String> blobIDs = new ConcurrentHashMap<>();
+            byte[] blobID = new byte[20];
+
+            for (int i = 0; i < count; i++){
+                String path = in.readUTF();
+                files.add(path);
+                if (in.readBoolean()){
+                    in.readFully(blobID);
+                    blobIDs.put(path, Utils.bytesToHex(blobID));
+                }
+            }
+            return new WatchIndex(token, position, files, blobIDs, rules);
+        } catch (IOException e) {
+            // an unreadable index only costs a scan
+            return null;
+        }
+    }
+
+    // write the index back if it changed
+    static synchronized void save(){
+
+        WatchIndex index = current_;
+        if (index == null || !index.changed_){
+            return;
+        }
+        index.changed_ = false;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(index.token_);
+            out.writeLong(index.position_);
+            out.writeInt(index.files_.size());
+
+            for (String path : index.files_){
+                String blobID = index.blobIDs_.get(path);
+                out.writeUTF(path);
+                out.writeBoolean(blobID != null);
+                if (blobID != null){
+                    out.write(Utils.hexToBytes(blobID));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        Utils.writeContentsAtomically(Utils.join(Utils.GITLET_DIR, Utils.WATCH_INDEX), bytes.toByteArray());
+    }
+}
@@ -0,0 +1,267 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* The journal in which a daemon's Watcher records the paths of the working
+   directory that changed, so that status and add look at those alone rather
+   than at every file. The file .gitlet/watch-journal holds a UTF token that
+   names this journal, and then records of a byte kind and a UTF path:
+
+   DIRTY, a file or directory that was created, changed or deleted
+   COOKIE, the name of a cookie file that a reader created
+   OVERFLOW, changes were lost and every path may have changed
+
+   A reader remembers the token and the position after the last record it
+   read. Events reach the watcher late, so to be sure that every change made
+   before it looks is recorded, a reader creates a cookie file in
+   .gitlet/watch-cookies and reads on until the watcher records it; events
+   arrive in order, so every earlier change is recorded by then.
+
+   The journal is stale, and a reader scans the whole working directory, if
+   no watcher holds .gitlet/watch-lock, if the token changed since the
+   reader last read it, if changes overflowed, or if the cookie is not
+   recorded in time. A journal that grows too large is started again under
+   a new token. */
+class WatchJournal {
+
+    static final byte DIRTY = 1;
+    static final byte COOKIE = 2;
+    static final byte OVERFLOW = 3;
+
+    // a journal is started again once it is this large
+    private static final long MAX_SIZE = 8L << 20;
+    // how long a reader waits for its cookie before it scans instead
+    private static final long SYNC_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    // cookies created by this process
+    private static final AtomicInteger cookies_ = new AtomicInteger();
+
+    /* The paths recorded since a reader's position, up to its cookie. */
+    static final class Changes {
+        private final String token_;
+        private final long position_;
+        private final Set<String> paths_;
+
+        Changes(String token, long position, Set<String> paths){
+            token_ = token;
+            position_ = position;
+            paths_ = paths;
+        }
+
+        String getToken_() {
+            return token_;
+        }
+
+        // the position after the cookie
+        long getPosition_() {
+            return position_;
+        }
+
+        // the paths that changed, or null if any path may have
+        Set<String> getPaths_() {
+            return paths_;
+        }
+    }
+
+    private final File file_;
+    private OutputStream out_;
+    private long size_;
+    // records since the last flush, written at once so that readers seldom
+    // see part of a record
+    private final ByteArrayOutputStream batch_ = new ByteArrayOutputStream();
+    private final DataOutputStream batchOut_ = new DataOutputStream(batch_);
+    // paths recorded since the last flush, as an edit raises many events
+    private final Set<String> batchPaths_ = new HashSet<>();
+
+    private WatchJournal(File file){
+        file_ = file;
+    }
+
+    private static File journalFile(){
+        return Utils.join(Utils.GITLET_DIR, Utils.WATCH_JOURNAL);
+    }
+
+    // start a journal under a new token, replacing any earlier one
+    static WatchJournal create() throws IOException {
+        WatchJournal journal = new WatchJournal(journalFile());
+        journal.start();
+        return journal;
+    }
+
+    private void start() throws IOException {
+        if (out_ != null){
+            out_.close();
+        }
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        new DataOutputStream(header).writeUTF(UUID.randomUUID().toString());
+
+        File tempFile = File.createTempFile(file_.getName() + "-", ".tmp", file_.getAbsoluteFile().getParentFile());
+        try {
+            Files.write(tempFile.toPath(), header.toByteArray());
+            Files.move(tempFile.toPath(), file_.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        out_ = new FileOutputStream(file_, true);
+        size_ = header.size();
+    }
+
+    void dirty(String path) throws IOException {
+        if (batchPaths_.add(path)){
+            batchOut_.writeByte(DIRTY);
+            batchOut_.writeUTF(path);
+        }
+    }
+
+    void cookie(String name) throws IOException {
+        batchOut_.writeByte(COOKIE);
+        batchOut_.writeUTF(name);
+    }
+
+    void overflow() throws IOException {
+        batchOut_.writeByte(OVERFLOW);
+        batchOut_.writeUTF("");
+    }
+
+    // write the records since the last flush
+    void flush() throws IOException {
+        if (batch_.size() == 0){
+            return;
+        }
+
+        // readers of the old journal scan once, as its token is gone
+        if (size_ + batch_.size() > MAX_SIZE){
+            start();
+        }
+
+        out_.write(batch_.toByteArray());
+        size_ += batch_.size();
+        batch_.reset();
+        batchPaths_.clear();
+    }
+
+    // true if a watcher is recording changes to this repository
+    static boolean isWatched(){
+
+        if (Watcher.isRunning()){
+            return true;
+        }
+
+        File file = Utils.join(Utils.GITLET_DIR, Utils.WATCH_LOCK);
+        if (!file.exists()){
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null){
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // the changes recorded after POSITION in the journal named TOKEN, up to
+    // and including every change made before this call. The paths are null
+    // if the journal has another token or overflowed, and the whole result
+    // is null if no watcher records changes.
+    static Changes sync(String token, long position){
+
+        if (!isWatched()){
+            return null;
+        }
+
+        File cookie = Utils.join(Utils.GITLET_DIR, Utils.WATCH_COOKIES,
+                "cookie-" + ProcessHandle.current().pid() + "-" + cookies_.incrementAndGet());
+        try {
+            if (!cookie.createNewFile()){
+                return null;
+            }
+
+            long deadline = System.nanoTime() + SYNC_TIMEOUT_NANOS;
+            while (true){
+                Changes changes = read(cookie.getName(), token, position);
+                if (changes != null){
+                    return changes;
+                }
+                if (System.nanoTime() > deadline){
+                    return null;
+                }
+                Thread.sleep(1);
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    // the changes up to COOKIE, or null if it is not recorded yet
+    private static Changes read(String cookie, String token, long position) throws IOException {
+
+        File file = journalFile();
+        if (!file.exists()){
+            return null;
+        }
+
+        byte[] records;
+        String current;
+        boolean complete;
+        long start;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            current = in.readUTF();
+            // a reader of another journal starts over from its beginning
+            complete = current.equals(token) && position >= in.getFilePointer();
+            start = complete ? position : in.getFilePointer();
+
+            in.seek(start);
+            records = new byte[(int) (in.length() - start)];
+            in.readFully(records);
+        } catch (EOFException e) {
+            // the header is being written
+            return null;
+        }
+
+        Set<String> paths = new HashSet<>();
+
+        ByteArrayInputStream bytes = new ByteArrayInputStream(records);
+        DataInputStream in = new DataInputStream(bytes);
+        try {
+            while (true){
+                byte kind = in.readByte();
+                String path = in.readUTF();
+
+                if (kind == DIRTY){
+                    paths.add(path);
+                } else if (kind == OVERFLOW){
+                    complete = false;
+                } else if (kind == COOKIE && path.equals(cookie)){
+                    long end = start + records.length - bytes.available();
+                    return new Changes(current, end, complete ? paths : null);
+                }
+            }
+        } catch (EOFException e) {
+            // the cookie, or the rest of a record, is not written yet
+            return null;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/* Watches the working directory from a daemon, when core.watch is set, and
+   records the paths that change in the WatchJournal. Every directory that
+   is not ignored is registered with a WatchService, including those created
+   later; moving a directory is seen as deleting it and creating another,
+   and deleting one drops the registrations under it. A change to
+   .gitletignore registers the directories again and, like events that the
+   WatchService dropped, makes readers scan the whole working directory.
+
+   One watcher runs per repository, holding .gitlet/watch-lock until it
+   stops, and its thread does not keep the daemon alive. */
+class Watcher implements Runnable {
+
+    private static volatile boolean running_;
+
+    private final FileChannel lockChannel_;
+    private final WatchService service_;
+    private WatchJournal journal_;
+    private IgnoreRules rules_;
+    private WatchKey cookieKey_;
+    // the path from the top of each registered directory, empty for the top
+    private final Map<WatchKey, String> directories_ = new HashMap<>();
+    private final TreeMap<String, WatchKey> keys_ = new TreeMap<>();
+
+    private Watcher(FileChannel lockChannel, WatchService service){
+        lockChannel_ = lockChannel;
+        service_ = service;
+    }
+
+    // true if this process watches the working directory
+    static boolean isRunning(){
+        return running_;
+    }
+
+    // start watching the working directory. Returns false if another
+    // process watches it.
+    static boolean start() throws IOException {
+
+        File lockFile = Utils.join(Utils.GITLET_DIR, Utils.WATCH_LOCK);
+        FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = channel.tryLock();
+        if (lock == null){
+            channel.close();
+            return false;
+        }
+
+        Watcher watcher;
+        try {
+            watcher = new Watcher(channel, FileSystems.getDefault().newWatchService());
+
+            // the journal is started before anything is registered, so a
+            // reader cannot take the old journal for current, and no cookie
+            // is recorded until the registrations are complete
+            watcher.journal_ = WatchJournal.create();
+
+            File cookies = Utils.join(Utils.GITLET_DIR, Utils.WATCH_COOKIES);
+            cookies.mkdir();
+            watcher.cookieKey_ = cookies.toPath().register(watcher.service_, ENTRY_CREATE);
+
+            watcher.rules_ = IgnoreRules.load();
+            watcher.register("");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        running_ = true;
+        Thread thread = new Thread(watcher, "gitlet-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    @Override
+    public void run(){
+        try {
+            while (true){
+                WatchKey key = service_.take();
+                do {
+                    handle(key);
+                    key = service_.poll();
+                } while (key != null);
+
+                journal_.flush();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            // readers scan again once the lock is released
+            running_ = false;
+            try {
+                lockChannel_.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void handle(WatchKey key) throws IOException {
+
+        for (WatchEvent<?> event : key.pollEvents()){
+            WatchEvent.Kind<?> kind = event.kind();
+
+            if (kind == OVERFLOW){
+                journal_.overflow();
+                continue;
+            }
+
+            String name = event.context().toString();
+            if (key == cookieKey_){
+                journal_.cookie(name);
+                continue;
+            }
+
+            String directory = directories_.get(key);
+            if (directory == null || name.equals(Utils.GITLET_DIR)){
+                continue;
+            }
+            String path = directory.isEmpty() ? name : directory + "/" + name;
+
+            // a path ignored both as a file and as a directory never matters
+            if (rules_.isIgnored(path, false) && rules_.isIgnored(path, true)){
+                continue;
+            }
+            journal_.dirty(path);
+
+            if (path.equals(Utils.IGNORE_FILE)){
+                registerAgain();
+            } else if (kind == ENTRY_DELETE){
+                cancel(path);
+            } else if (kind == ENTRY_CREATE){
+                register(path);
+            }
+        }
+
+        if (!key.reset()){
+            String directory = directories_.remove(key);
+            if (directory != null){
+                keys_.remove(directory, key);
+            }
+        }
+    }
+
+    // register the directory at PATH and those under it that are not
+    // ignored; anything else at PATH is skipped
+    private void register(String path) throws IOException {
+
+        Path dir = Paths.get(path.isEmpty() ? "." : path);
+        try {
+            if (!Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory()){
+                return;
+            }
+        } catch (IOException e) {
+            // already gone
+            return;
+        }
+        if (!path.isEmpty() && rules_.isIgnored(path, true)){
+            return;
+        }
+
+        WatchKey key = dir.register(service_, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        directories_.put(key, path);
+        keys_.put(path, key);
+
+        String prefix = path.isEmpty() ? "" : path + "/";
+        List<String> subdirectories = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries){
+                String name = entry.getFileName().toString();
+                if (!name.equals(Utils.GITLET_DIR) && Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)){
+                    subdirectories.add(prefix + name);
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            // removed while it was read; its deletion is an event
+            return;
+        }
+
+        for (String subdirectory : subdirectories){
+            register(subdirectory);
+        }
+    }
+
+    // drop the registrations of the directory at PATH and those under it
+    private void cancel(String path){
+
+        SortedMap<String, WatchKey> below = keys_.subMap(path + "/", path + "0");
+        List<WatchKey> cancelled = new ArrayList<>(below.values());
+        below.clear();
+
+        WatchKey key = keys_.remove(path);
+        if (key != null){
+            cancelled.add(key);
+        }
+
+        for (WatchKey each : cancelled){
+            each.cancel();
+            directories_.remove(each);
+        }
+    }
+
+    // register every directory under new ignore rules
+    private void registerAgain() throws IOException {
+        for (WatchKey key : new ArrayList<>(keys_.values())){
+            key.cancel();
+        }
+        keys_.clear();
+        directories_.clear();
+
+        rules_ = IgnoreRules.load();
+        register("");
+        journal_.overflow();
+    }
+}
@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/* The files of the working directory, which may be nested in directories.
+   Files are named by their path from the top of the working directory with
+   / separators, as they are tracked on every platform.
+
+   Listing walks the directories in parallel on the common fork-join pool,
+   one task per directory. Directories that .gitletignore excludes are not
+   read, and neither is .gitlet. Symbolic links are not followed. */
+class WorkingTree {
+
+    /* Lists one directory and forks a walk of each of its subdirectories. */
+    private static final class Walk extends RecursiveTask<List<String>> {
+        // fork-join tasks are Serializable, though walks are never serialized
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir_;
+        // the path of the directory with a trailing /, or empty at the top
+        private final String prefix_;
+        private final IgnoreRules rules_;
+
+        Walk(Path dir, String prefix, IgnoreRules rules){
+            dir_ = dir;
+            prefix_ = prefix;
+            rules_ = rules;
+        }
+
+        @Override
+        protected List<String> compute(){
+
+            List<String> files = new ArrayList<>();
+            List<Walk> subdirectories = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir_)) {
+                for (Path entry : entries){
+                    String name = entry.getFileName().toString();
+                    String path = prefix_ + name;
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+                    if (attributes.isDirectory()){
+                        if (!name.equals(Utils.GITLET_DIR) && !rules_.isIgnored(path, true)){
+                            subdirectories.add(new Walk(entry, path + "/", rules_));
+                        }
+                    } else if (attributes.isRegularFile() && !rules_.isIgnored(path, false)){
+                        files.add(path);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                e.printStackTrace();
+            }
+
+            for (Walk walk : invokeAll(subdirectories)){
+                files.addAll(walk.join());
+            }
+            return files;
+        }
+    }
+
+    // the files under DIRECTORY, a path from the top or empty for the whole
+    // working directory, that are not ignored, sorted
+    static List<String> listFiles(String directory, IgnoreRules rules){
+
+        if (!directory.isEmpty() && rules.isIgnoredWithParents(directory, true)){
+            return Collections.emptyList();
+        }
+
+        Path dir = Paths.get(directory.isEmpty() ? "." : directory);
+        String prefix = directory.isEmpty() ? "" : directory + "/";
+        List<String> files = ForkJoinPool.commonPool().invoke(new Walk(dir, prefix, rules));
+
+        Collections.sort(files);
+        return files;
+    }
+
+    // the path of FILENAME, as given on the command line, from the top of
+    // the working directory; empty for the top itself, and null for a file
+    // outside it
+    static String toPath(String fileName){
+
+        Path root = Paths.get(Utils.WORKING_DIR).toAbsolutePath().normalize();
+        Path path;
+        try {
+            path = root.resolve(fileName).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+
+        if (!path.startsWith(root)){
+            return null;
+        }
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    // create the directories that the file at PATH is in
+    static void createParents(String path){
+        File parent = new File(path).getParentFile();
+        if (parent != null){
+            parent.mkdirs();
+        }
+    }
+
+    // delete the file at PATH, and then the directories it leaves empty, as
+    // directories are not tracked. Refuses to delete anything outside a
+    // working directory, like Utils.restrictedDelete.
+    static boolean deleteFile(String path){
+
+        if (!new File(Utils.GITLET_DIR).isDirectory()){
+            throw new IllegalArgumentException("not .gitlet working directory");
+        }
+
+        File file = new File(path);
+        if (file.isDirectory() || !file.delete()){
+            return false;
+        }
+
+        for (File dir = file.getParentFile(); dir != null; dir = dir.getParentFile()){
+            String[] entries = dir.list();
+            if (entries == null || entries.length > 0 || !dir.delete()){
+                break;
+            }
+        }
+        return true;
+    }
+}
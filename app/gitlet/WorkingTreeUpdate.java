@@ -0,0 +1,92 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/* The minimal set of file writes and deletes that turns a working directory
+   holding one commit's files into one holding another's, from the diff of
+   their trees. Files whose blob ID is the same in both commits are not
+   touched, unless the caller adds those changed in the working directory.
+   Writes run on a bounded pool of workers, and each blob is read
+   once however many files share it. */
+class WorkingTreeUpdate {
+
+    private static final int MAX_WORKERS = 8;
+
+    // mapping of blobID to the files that are written with its contents
+    private final Map<String, List<String>> blobToFiles_;
+    // files tracked now that the target does not track
+    private final List<String> filesToDelete_;
+
+    // CHANGES are the files that differ from the current commit, or from the
+    // working directory, to the target
+    WorkingTreeUpdate(List<Tree.Change> changes){
+        blobToFiles_ = new HashMap<>();
+        filesToDelete_ = new ArrayList<>();
+
+        for (Tree.Change change : changes){
+            if (change.getNewBlobID_() != null){
+                blobToFiles_.computeIfAbsent(change.getNewBlobID_(), k -> new ArrayList<>()).add(change.getPath_());
+            } else {
+                filesToDelete_.add(change.getPath_());
+            }
+        }
+    }
+
+    void apply(){
+
+        for (String fileName : filesToDelete_){
+            WorkingTree.deleteFile(fileName);
+        }
+
+        if (blobToFiles_.isEmpty()){
+            return;
+        }
+
+        int workers = Math.min(MAX_WORKERS, Math.min(blobToFiles_.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (Map.Entry<String, List<String>> entry : blobToFiles_.entrySet()){
+                writes.add(pool.submit(() -> writeBlob(entry.getKey(), entry.getValue())));
+            }
+
+            for (Future<?> write : writes){
+                write.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // stream the blob into the first file and copy that file to the others
+    private static void writeBlob(String blobID, List<String> fileNames){
+        Path first = Paths.get(fileNames.get(0));
+        Metrics.Timer timer = Metrics.start(Metrics.Phase.WORKING_FILE_WRITE);
+
+        try (InputStream contents = Blob.openContent(blobID)) {
+            WorkingTree.createParents(fileNames.get(0));
+            long size = Files.copy(contents, first, StandardCopyOption.REPLACE_EXISTING);
+
+            for (String fileName : fileNames.subList(1, fileNames.size())){
+                WorkingTree.createParents(fileName);
+                Files.copy(first, Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Metrics.end(timer, size * fileNames.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package gitlet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitGraphTest {
+
+    private String emptyTree_;
+    private int commits_;
+
+    @BeforeEach
+    void setUp(){
+        TestRepository.init();
+        emptyTree_ = Tree.write(Collections.emptyMap());
+    }
+
+    // add a commit with PARENTS, first parent first, to the graph
+    private String commit(String... parents){
+        Commit commit = new Commit("commit " + commits_++, parents.length > 0 ? parents[0] : null,
+                parents.length > 1 ? parents[1] : null, emptyTree_);
+        CommitGraph.get().add(commit);
+        return commit.getThisCommitID_();
+    }
+
+    private static Set<String> mergeBases(String a, String b){
+        List<String> bases = CommitGraph.get().getMergeBases(a, b);
+        Set<String> unique = new HashSet<>(bases);
+        assertEquals(bases.size(), unique.size(), "no base is reported twice");
+        return unique;
+    }
+
+    @Test
+    void baseOfACommitAndItsDescendantIsTheCommit(){
+        String root = commit();
+        String middle = commit(root);
+        String tip = commit(middle);
+
+        assertEquals(Set.of(middle), mergeBases(middle, tip));
+        assertEquals(Set.of(middle), mergeBases(tip, middle));
+        assertEquals(Set.of(tip), mergeBases(tip, tip));
+    }
+
+    @Test
+    void baseOfTwoBranchesIsWhereTheyForked(){
+        String root = commit();
+        String fork = commit(root);
+        String a = commit(commit(fork));
+        String b = commit(fork);
+
+        assertEquals(Set.of(fork), mergeBases(a, b));
+    }
+
+    @Test
+    void crissCrossHistoryHasTwoBases(){
+        //   root - a1 - m1 - a2
+        //      \     \ /
+        //       \     X
+        //        \   / \
+        //         b1 --- m2 - b2
+        String root = commit();
+        String a1 = commit(root);
+        String b1 = commit(root);
+        String m1 = commit(a1, b1);
+        String m2 = commit(b1, a1);
+        String a2 = commit(m1);
+        String b2 = commit(m2);
+
+        assertEquals(Set.of(a1, b1), mergeBases(a2, b2));
+        assertEquals(Set.of(a1, b1), mergeBases(m1, m2));
+    }
+
+    @Test
+    void basesThatAreAncestorsOfAnotherBaseAreDropped(){
+        // both merges join x and y, which share the root and y's parent
+        // as ancestors; those are common ancestors too, but not best ones
+        String root = commit();
+        String x = commit(root);
+        String y = commit(commit(root));
+        String m1 = commit(x, y);
+        String m2 = commit(y, x);
+        String longer = commit(commit(commit(m2)));
+
+        assertEquals(Set.of(x, y), mergeBases(commit(m1), longer));
+    }
+
+    @Test
+    void mergeAfterACrissCrossHasOneBase(){
+        String root = commit();
+        String a1 = commit(root);
+        String b1 = commit(root);
+        String m1 = commit(a1, b1);
+        String m2 = commit(b1, a1);
+        // the criss-cross is resolved by merging the merges
+        String resolved = commit(m1, m2);
+        String a2 = commit(resolved);
+        String b2 = commit(resolved);
+
+        assertEquals(Set.of(resolved), mergeBases(a2, b2));
+    }
+
+    @Test
+    void addReadsRecordsAppendedByAnotherProcess(){
+        String root = commit();
+        CommitGraph stale = CommitGraph.get();
+
+        // a graph opened afterwards stands in for another process
+        CommitGraph.reset();
+        String elsewhere = commit(root);
+
+        Commit child = new Commit("child", elsewhere, null, emptyTree_);
+        stale.add(child);
+
+        CommitGraph.reset();
+        CommitGraph graph = CommitGraph.get();
+        assertEquals(List.of(elsewhere), graph.getParents(child.getThisCommitID_()));
+        assertEquals(List.of(root), graph.getParents(elsewhere));
+        assertEquals(3, graph.getGeneration(child.getThisCommitID_()));
+    }
+
+    @Test
+    void lookupFindsCommitsAfterTheGraphIsOpenedAgain(){
+        String root = commit();
+        String side = commit(root);
+        String tip = root;
+        List<String> chain = new ArrayList<>();
+        for (int i = 0; i < CommitGraph.MAX_UNSORTED + 10; i++){
+            tip = commit(tip);
+            chain.add(tip);
+        }
+        assertTrue(Utils.join(Utils.GITLET_DIR, Utils.COMMIT_GRAPH_LOOKUP).exists());
+
+        CommitGraph.reset();
+        CommitGraph graph = CommitGraph.get();
+        assertEquals(List.of(root), graph.getParents(side));
+        assertEquals(List.of(chain.get(99)), graph.getParents(chain.get(100)));
+        assertEquals(List.of(chain.get(chain.size() - 2)), graph.getParents(tip));
+        assertEquals(chain.size() + 1, graph.getGeneration(tip));
+        assertFalse(graph.contains(Utils.sha1("not a commit")));
+        assertEquals(Set.of(root), mergeBases(side, tip));
+    }
+
+    @Test
+    void lookupIsWrittenAgainWhenCommitsAreRemoved(){
+        String root = commit();
+        String side = commit(root);
+        String tip = root;
+        for (int i = 0; i < CommitGraph.MAX_UNSORTED; i++){
+            tip = commit(tip);
+        }
+
+        CommitGraph.remove(Set.of(side));
+        CommitGraph graph = CommitGraph.get();
+        assertFalse(graph.contains(side));
+        assertTrue(graph.contains(root));
+
+        // positions after the removed record moved down by one
+        String child = commit(tip);
+        CommitGraph.reset();
+        assertEquals(List.of(tip), CommitGraph.get().getParents(child));
+        assertEquals(CommitGraph.MAX_UNSORTED + 2, CommitGraph.get().getGeneration(child));
+    }
+
+    @Test
+    void addReachableLeavesOutCommitsThatCannotBeRead(){
+        Commit root = new Commit("root", null, null, emptyTree_);
+        root.writeCommitToDisk();
+        Commit orphan = new Commit("orphan", Utils.sha1("missing"), null, emptyTree_);
+        orphan.writeCommitToDisk();
+        Commit child = new Commit("child", orphan.getThisCommitID_(), null, emptyTree_);
+        child.writeCommitToDisk();
+
+        CommitGraph graph = CommitGraph.get();
+        assertFalse(graph.addReachable(List.of(child.getThisCommitID_(), root.getThisCommitID_())));
+        assertTrue(graph.contains(root.getThisCommitID_()));
+        assertFalse(graph.contains(orphan.getThisCommitID_()));
+        assertFalse(graph.contains(child.getThisCommitID_()));
+    }
+}
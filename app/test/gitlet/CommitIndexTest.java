@@ -0,0 +1,100 @@
+package gitlet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitIndexTest {
+
+    @BeforeEach
+    void setUp(){
+        TestRepository.init();
+    }
+
+    // a commit ID starting with PREFIX
+    private static String id(String prefix){
+        return (prefix + Utils.sha1(prefix)).substring(0, 40);
+    }
+
+    private static List<String> find(String prefix){
+        return CommitIndex.get().findByPrefix(prefix, 10);
+    }
+
+    private static File overflowFile(){
+        return Utils.join(Utils.GITLET_DIR, Utils.COMMIT_INDEX_OVERFLOW);
+    }
+
+    @Test
+    void ambiguousPrefixFindsEveryMatch(){
+        String first = id("abcd0");
+        String second = id("abcd1");
+        String other = id("abce");
+        for (String commitID : List.of(second, other, first)){
+            CommitIndex.get().add(commitID);
+        }
+
+        assertEquals(List.of(first, second), find("abcd"));
+        assertEquals(List.of(first), CommitIndex.get().findByPrefix("abcd", 1));
+        assertEquals(List.of(first), find("abcd0"));
+        assertEquals(List.of(other), find(other));
+        assertEquals(List.of(), find("abcf"));
+    }
+
+    @Test
+    void prefixesThatAreNotLowerCaseHexFindNothing(){
+        String commitID = id("abcd");
+        CommitIndex.get().add(commitID);
+
+        assertEquals(List.of(), find(""));
+        assertEquals(List.of(), find("ABCD"));
+        assertEquals(List.of(), find("abcg"));
+        assertEquals(List.of(), find("ab.d"));
+        assertEquals(List.of(), find(commitID + "0"));
+    }
+
+    @Test
+    void overflowIsFoundBeforeAndAfterCompact(){
+        String packed = id("1234");
+        CommitIndex.get().add(packed);
+        assertTrue(overflowFile().length() > 0);
+        assertEquals(List.of(packed), find("1234"));
+
+        // as another process reads it
+        CommitIndex.reset();
+        assertEquals(List.of(packed), find("1234"));
+
+        CommitIndex.compact();
+        assertEquals(0, overflowFile().length());
+        assertEquals(List.of(packed), find("1234"));
+        CommitIndex.reset();
+        assertEquals(List.of(packed), find("1234"));
+
+        // a prefix matching IDs in both the sorted file and the overflow
+        String loose = id("12345");
+        String earlier = id("12340");
+        CommitIndex.get().add(loose);
+        CommitIndex.get().add(earlier);
+        CommitIndex.get().add(packed);
+        List<String> sorted = new ArrayList<>(List.of(earlier, packed, loose));
+        Collections.sort(sorted);
+        assertEquals(sorted, find("1234"));
+        assertEquals(sorted.subList(0, 2), CommitIndex.get().findByPrefix("1234", 2));
+    }
+
+    @Test
+    void compactSeesIdsAddedByAnotherProcess(){
+        CommitIndex stale = CommitIndex.get();
+        String commitID = id("feed");
+
+        CommitIndex.reset();
+        CommitIndex.get().add(commitID);
+
+        assertEquals(List.of(commitID), stale.findByPrefix("feed", 10));
+        CommitIndex.compact();
+        assertEquals(List.of(commitID), stale.findByPrefix("feed", 10));
+    }
+}
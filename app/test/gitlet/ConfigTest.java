@@ -0,0 +1,65 @@
+package gitlet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigTest {
+
+    private TestRepository repo_;
+
+    @BeforeEach
+    void setUp(){
+        repo_ = TestRepository.init();
+    }
+
+    // write the config file as if it were edited by hand
+    private static void writeConfig(String contents){
+        Utils.writeContents(Utils.join(Utils.GITLET_DIR, Utils.CONFIG_FILE), contents.getBytes());
+        Config.reset();
+    }
+
+    @Test
+    void unsetValuesAreTheDefaults(){
+        assertEquals(Config.DEFAULT_COMPRESSION_LEVEL, Config.getCompressionLevel());
+        assertEquals(Config.DEFAULT_GC_GRACE_MINUTES, Config.getGcGraceMinutes());
+        assertFalse(Config.isWatchEnabled());
+    }
+
+    @Test
+    void valuesSetByTheConfigCommandAreRead(){
+        repo_.run("config", "core.compression", "0");
+        repo_.run("config", "gc.graceMinutes", "30");
+        Config.reset();
+
+        assertEquals(0, Config.getCompressionLevel());
+        assertEquals(30, Config.getGcGraceMinutes());
+    }
+
+    @Test
+    void invalidValuesAreRejectedByTheConfigCommand(){
+        repo_.run("config", "core.compression", "fast");
+        repo_.run("config", "gc.graceMinutes", "-1");
+        Config.reset();
+
+        assertNull(Config.get(Config.COMPRESSION_LEVEL));
+        assertNull(Config.get(Config.GC_GRACE_MINUTES));
+    }
+
+    @Test
+    void invalidValuesInTheFileFallBackToTheDefaults(){
+        writeConfig("core.compression=fast\ngc.graceMinutes=99999999999\n");
+        assertEquals(Config.DEFAULT_COMPRESSION_LEVEL, Config.getCompressionLevel());
+        assertEquals(Config.DEFAULT_GC_GRACE_MINUTES, Config.getGcGraceMinutes());
+
+        writeConfig("core.compression=12\ngc.graceMinutes=two weeks\n");
+        assertEquals(Config.DEFAULT_COMPRESSION_LEVEL, Config.getCompressionLevel());
+        assertEquals(Config.DEFAULT_GC_GRACE_MINUTES, Config.getGcGraceMinutes());
+
+        // commands that read them still run
+        repo_.commit("a.txt", "a", "first");
+        repo_.run("gc");
+        assertEquals("a", new String(Blob.readBlobFromDisk(Commit.readCommitFromDisk(repo_.head()).getBlobID("a.txt")).getContentAsBytes_()));
+    }
+}
@@ -0,0 +1,73 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaTest {
+
+    private final Random random_ = new Random(42);
+
+    private byte[] randomBytes(int length){
+        byte[] bytes = new byte[length];
+        random_.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] roundTrip(byte[] base, byte[] target){
+        return Delta.apply(base, Delta.create(base, target));
+    }
+
+    @Test
+    void rebuildsATargetWithEditsAgainstItsBase(){
+        byte[] base = randomBytes(64 * 1024);
+
+        // insert, delete and overwrite runs at several places
+        byte[] target = new byte[base.length + 100];
+        System.arraycopy(base, 0, target, 0, 1000);
+        System.arraycopy(randomBytes(300), 0, target, 1000, 300);
+        System.arraycopy(base, 1000, target, 1300, 20000);
+        System.arraycopy(base, 21200, target, 21300, base.length - 21200);
+        System.arraycopy(randomBytes(100), 0, target, target.length - 100, 100);
+
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        // mostly copies, so far smaller than the target
+        assertTrue(delta.length < target.length / 10, "delta of " + delta.length + " bytes");
+    }
+
+    @Test
+    void rebuildsUnrelatedAndIdenticalContents(){
+        byte[] base = randomBytes(10000);
+        assertArrayEquals(base, roundTrip(base, base));
+
+        byte[] other = randomBytes(7777);
+        assertArrayEquals(other, roundTrip(base, other));
+    }
+
+    @Test
+    void handlesEmptyAndShortInputs(){
+        byte[] empty = new byte[0];
+        byte[] shortBytes = {1, 2, 3};
+
+        assertArrayEquals(empty, roundTrip(empty, empty));
+        assertArrayEquals(shortBytes, roundTrip(empty, shortBytes));
+        assertArrayEquals(empty, roundTrip(shortBytes, empty));
+        assertArrayEquals(shortBytes, roundTrip(shortBytes, shortBytes));
+    }
+
+    @Test
+    void copiesRepeatedBlocks(){
+        byte[] block = randomBytes(256);
+        byte[] base = new byte[block.length * 8];
+        for (int i = 0; i < 8; i++){
+            System.arraycopy(block, 0, base, i * block.length, block.length);
+        }
+        byte[] target = Arrays.copyOfRange(base, 17, base.length - 5);
+
+        assertArrayEquals(target, roundTrip(base, target));
+    }
+}
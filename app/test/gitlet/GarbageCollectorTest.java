@@ -0,0 +1,152 @@
+package gitlet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GarbageCollectorTest {
+
+    private TestRepository repo_;
+
+    @BeforeEach
+    void setUp(){
+        repo_ = TestRepository.init();
+    }
+
+    private static File commitFile(String commitID){
+        return Utils.join(Utils.GITLET_DIR, Utils.COMMIT_DIR, commitID);
+    }
+
+    private static File blobFile(String blobID){
+        return Utils.join(Utils.GITLET_DIR, Utils.BLOBS_DIR, blobID);
+    }
+
+    // date every loose object from before the default grace period
+    private static void ageObjects(){
+        long old = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(Config.DEFAULT_GC_GRACE_MINUTES + 60);
+        for (String dir : List.of(Utils.COMMIT_DIR, Utils.TREES_DIR, Utils.BLOBS_DIR)){
+            for (String objectID : Utils.plainFilenamesIn(Utils.join(Utils.GITLET_DIR, dir))){
+                assertTrue(Utils.join(Utils.GITLET_DIR, dir, objectID).setLastModified(old));
+            }
+        }
+    }
+
+    // commit each of CONTENTS in turn to side.txt on a new branch and delete
+    // the branch, leaving the commits unreachable; returns their IDs
+    private List<String> commitOnRemovedBranch(String... contents){
+        repo_.run("branch", "side");
+        repo_.run("checkout", "side");
+        List<String> commitIDs = new ArrayList<>();
+        for (String content : contents){
+            commitIDs.add(repo_.commit("side.txt", content, "on side " + content));
+        }
+        repo_.run("checkout", "master");
+        repo_.run("rm-branch", "side");
+        return commitIDs;
+    }
+
+    private static String blobOf(String commitID){
+        return Commit.readCommitFromDisk(commitID).getBlobID("side.txt");
+    }
+
+    @Test
+    void unreachableObjectsAreKeptForTheGracePeriod(){
+        String first = repo_.commit("a.txt", "a", "first");
+        String side = commitOnRemovedBranch("side").get(0);
+        String sideBlob = blobOf(side);
+
+        repo_.run("gc");
+        assertTrue(commitFile(side).exists());
+        assertTrue(blobFile(sideBlob).exists());
+
+        ageObjects();
+        repo_.run("gc");
+        assertFalse(commitFile(side).exists());
+        assertFalse(blobFile(sideBlob).exists());
+        assertTrue(commitFile(first).exists());
+        assertTrue(blobFile(Commit.readCommitFromDisk(first).getBlobID("a.txt")).exists());
+    }
+
+    @Test
+    void youngCommitsKeepTheirHistory(){
+        repo_.commit("a.txt", "a", "first");
+        List<String> side = commitOnRemovedBranch("older", "newer");
+
+        ageObjects();
+        assertTrue(commitFile(side.get(1)).setLastModified(System.currentTimeMillis()));
+        repo_.run("gc");
+
+        // the old parent of a young commit is kept, with its files
+        assertTrue(commitFile(side.get(0)).exists());
+        assertTrue(blobFile(blobOf(side.get(0))).exists());
+        assertTrue(commitFile(side.get(1)).exists());
+
+        ageObjects();
+        repo_.run("gc");
+        assertFalse(commitFile(side.get(0)).exists());
+        assertFalse(commitFile(side.get(1)).exists());
+    }
+
+    @Test
+    void blobsOfTheStagingAreaAreKept(){
+        String first = repo_.commit("a.txt", "a", "first");
+        String side = commitOnRemovedBranch("staged").get(0);
+        String sideBlob = blobOf(side);
+
+        ageObjects();
+        GarbageCollector.collect(Set.of(first), Set.of(sideBlob));
+
+        assertFalse(commitFile(side).exists());
+        assertTrue(blobFile(sideBlob).exists());
+    }
+
+    @Test
+    void stagedFilesAreCommittedAfterGc(){
+        repo_.commit("a.txt", "a", "first");
+        repo_.write("b.txt", "b");
+        repo_.run("add", "b.txt");
+
+        ageObjects();
+        repo_.run("gc");
+        repo_.run("commit", "second");
+
+        assertTrue(new File("b.txt").delete());
+        repo_.run("checkout", "--", "b.txt");
+        assertEquals("b", repo_.read("b.txt"));
+    }
+
+    @Test
+    void indexesAndGraphDropRemovedCommits(){
+        String first = repo_.commit("a.txt", "a", "first");
+        String side = commitOnRemovedBranch("side").get(0);
+
+        assertTrue(CommitGraph.get().contains(side));
+        ageObjects();
+        repo_.run("gc");
+        assertFalse(commitFile(side).exists());
+
+        // as seen by this process, and opened again from disk
+        for (int pass = 0; pass < 2; pass++){
+            assertEquals(List.of(), CommitIndex.get().findByPrefix(side.substring(0, 8), 2));
+            assertEquals(List.of(first), CommitIndex.get().findByPrefix(first.substring(0, 8), 2));
+            assertEquals(List.of(), MessageIndex.get().findExact("on side side"));
+            assertEquals(List.of(first), MessageIndex.get().findExact("first"));
+            assertFalse(CommitGraph.get().contains(side));
+            assertTrue(CommitGraph.get().contains(first));
+
+            CommitIndex.reset();
+            MessageIndex.reset();
+            CommitGraph.reset();
+        }
+
+        // later commits are added after the remaining records
+        String second = repo_.commit("a.txt", "b", "second");
+        assertEquals(List.of(first), CommitGraph.get().getParents(second));
+        assertEquals(List.of(second), MessageIndex.get().findExact("second"));
+    }
+}
@@ -0,0 +1,86 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IgnoreRulesTest {
+
+    private static IgnoreRules rules(String... lines){
+        return IgnoreRules.parse(String.join("\n", lines));
+    }
+
+    @Test
+    void commentsAndBlankLinesAreSkipped(){
+        IgnoreRules rules = rules("# a.txt", "", "   ", "\\#b.txt");
+        assertFalse(rules.isIgnored("a.txt", false));
+        assertTrue(rules.isIgnored("#b.txt", false));
+    }
+
+    @Test
+    void unanchoredPatternsMatchAtAnyDepth(){
+        IgnoreRules rules = rules("build", "*.log", "temp?.txt");
+        assertTrue(rules.isIgnored("build", false));
+        assertTrue(rules.isIgnored("src/deep/build", true));
+        assertTrue(rules.isIgnored("a.log", false));
+        assertTrue(rules.isIgnored("logs/today.log", false));
+        assertTrue(rules.isIgnored("dir/temp1.txt", false));
+        assertFalse(rules.isIgnored("dir/temp10.txt", false));
+        assertFalse(rules.isIgnored("builder", false));
+    }
+
+    @Test
+    void anchoredPatternsMatchFromTheTop(){
+        IgnoreRules rules = rules("/out", "docs/*.html", "src/gen*/");
+        assertTrue(rules.isIgnored("out", true));
+        assertFalse(rules.isIgnored("app/out", true));
+        assertTrue(rules.isIgnored("docs/index.html", false));
+        assertFalse(rules.isIgnored("site/docs/index.html", false));
+        assertFalse(rules.isIgnored("docs/api/index.html", false));
+        assertTrue(rules.isIgnored("src/generated", true));
+    }
+
+    @Test
+    void directoryPatternsSkipFiles(){
+        IgnoreRules rules = rules("cache/");
+        assertTrue(rules.isIgnored("cache", true));
+        assertTrue(rules.isIgnored("a/cache", true));
+        assertFalse(rules.isIgnored("cache", false));
+        assertTrue(rules.isIgnoredWithParents("a/cache/file.txt", false));
+    }
+
+    @Test
+    void negationIncludesAgainWhatAnEarlierPatternExcluded(){
+        IgnoreRules rules = rules("*.log", "!keep.log", "/logs/", "!logs/important.txt");
+        assertTrue(rules.isIgnored("debug.log", false));
+        assertFalse(rules.isIgnored("keep.log", false));
+        assertFalse(rules.isIgnored("dir/keep.log", false));
+
+        // the last matching pattern decides
+        assertTrue(rules("!keep.log", "*.log").isIgnored("keep.log", false));
+
+        // nothing inside an excluded directory is included again
+        assertTrue(rules.isIgnoredWithParents("logs/important.txt", false));
+    }
+
+    @Test
+    void doubleStarMatchesAnyNumberOfDirectories(){
+        IgnoreRules rules = rules("**/tmp", "assets/**/*.psd", "vendor/**");
+        assertTrue(rules.isIgnored("tmp", true));
+        assertTrue(rules.isIgnored("a/b/tmp", true));
+        assertTrue(rules.isIgnored("assets/logo.psd", false));
+        assertTrue(rules.isIgnored("assets/icons/large/logo.psd", false));
+        assertFalse(rules.isIgnored("other/logo.psd", false));
+        assertTrue(rules.isIgnored("vendor/lib/code.java", false));
+        assertFalse(rules.isIgnored("vendor", true));
+    }
+
+    @Test
+    void characterClassesMatchOneCharacter(){
+        IgnoreRules rules = rules("file[0-9].txt", "note[!a].md");
+        assertTrue(rules.isIgnored("file3.txt", false));
+        assertFalse(rules.isIgnored("fileA.txt", false));
+        assertTrue(rules.isIgnored("noteb.md", false));
+        assertFalse(rules.isIgnored("notea.md", false));
+    }
+}
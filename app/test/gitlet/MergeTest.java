@@ -0,0 +1,59 @@
+package gitlet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergeTest {
+
+    private TestRepository repo_;
+
+    @BeforeEach
+    void setUp(){
+        repo_ = TestRepository.init();
+    }
+
+    @Test
+    void mergeTakesFilesChangedOnlyInTheGivenBranch(){
+        repo_.write("kept.txt", "kept");
+        repo_.write("changed.txt", "old");
+        repo_.write("removed.txt", "removed");
+        repo_.run("add", "kept.txt");
+        repo_.run("add", "changed.txt");
+        repo_.run("add", "removed.txt");
+        repo_.run("commit", "split");
+        repo_.run("branch", "other");
+
+        repo_.commit("ours.txt", "ours", "on master");
+
+        repo_.run("checkout", "other");
+        repo_.write("changed.txt", "new");
+        repo_.write("dir/added.txt", "added");
+        repo_.write("dir/copy.txt", "added");
+        repo_.run("add", "changed.txt");
+        repo_.run("add", "dir/added.txt");
+        repo_.run("add", "dir/copy.txt");
+        repo_.run("rm", "removed.txt");
+        repo_.run("commit", "on other");
+        repo_.run("checkout", "master");
+
+        repo_.run("merge", "other");
+
+        assertEquals("new", repo_.read("changed.txt"));
+        assertEquals("added", repo_.read("dir/added.txt"));
+        assertEquals("added", repo_.read("dir/copy.txt"));
+        assertEquals("kept", repo_.read("kept.txt"));
+        assertEquals("ours", repo_.read("ours.txt"));
+        assertFalse(new File("removed.txt").exists());
+
+        Map<String, String> files = Commit.readCommitFromDisk(repo_.head()).getFileToBlobIDMap_();
+        assertEquals(Map.of("changed.txt", Utils.sha1("new".getBytes()), "dir/added.txt", Utils.sha1("added".getBytes()),
+                "dir/copy.txt", Utils.sha1("added".getBytes()), "kept.txt", Utils.sha1("kept".getBytes()),
+                "ours.txt", Utils.sha1("ours".getBytes())), files);
+        assertEquals(2, Commit.readCommitFromDisk(repo_.head()).getParentCommitIDs_().size());
+    }
+}
@@ -0,0 +1,188 @@
+package gitlet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectCodecTest {
+
+    // a blob of a.txt holding "legacy contents\n" and a commit tracking it,
+    // as Java serialization wrote them before the binary format
+    private static final String LEGACY_BLOB_ID = "9972de9893cd1ef9fd832e7ece8ca1e741bf16d2";
+    private static final String LEGACY_BLOB = "rO0ABXNyAAtnaXRsZXQuQmxvYmGxOzJn26XkAgADWwAPY29udGVudEFzQnl0ZXNfdAACW0JMAAxj"
+            + "b250ZW50SGFzaF90ABJMamF2YS9sYW5nL1N0cmluZztMAAlmaWxlTmFtZV9xAH4AAnhwdXIAAltCrPMX+AYIVOACAAB4cAAA"
+            + "ABBsZWdhY3kgY29udGVudHMKdAAoOTk3MmRlOTg5M2NkMWVmOWZkODMyZTdlY2U4Y2ExZTc0MWJmMTZkMnQABWEudHh0";
+    private static final String LEGACY_COMMIT_ID = "1790402d362574e091b83e2511770b8a8b7049c8";
+    private static final String LEGACY_COMMIT = "rO0ABXNyAA1naXRsZXQuQ29tbWl0bNrowh1BBTkCAAVMAA5jb21taXRNZXNzYWdlX3QAEkxqYXZhL2xh"
+            + "bmcvU3RyaW5nO0wAEGZpbGVUb0Jsb2JJRE1hcF90AA9MamF2YS91dGlsL01hcDtMAA9wYXJlbnRDb21taXRJRF9xAH4AAUwA"
+            + "DXRoaXNDb21taXRJRF9xAH4AAUwACnRpbWVzdGFtcF9xAH4AAXhwdAANbGVnYWN5IGNvbW1pdHNyABFqYXZhLnV0aWwuSGFz"
+            + "aE1hcAUH2sHDFmDRAwACRgAKbG9hZEZhY3RvckkACXRocmVzaG9sZHhwP0AAAAAAAAF3CAAAAAIAAAABdAAFYS50eHR0ACg5"
+            + "OTcyZGU5ODkzY2QxZWY5ZmQ4MzJlN2VjZThjYTFlNzQxYmYxNmQyeHQAKGQ4ZmQzOWQwYmJkZDJkY2YzMjJkOGIxMTM5MGE0"
+            + "YzU4MjViMTE0OTV0ACgxNzkwNDAyZDM2MjU3NGUwOTFiODNlMjUxMTc3MGI4YThiNzA0OWM4dAATMjAyNi0xMC0xOCAwMjoz"
+            + "OToyNw==";
+
+    private TestRepository repo_;
+
+    @BeforeEach
+    void setUp(){
+        repo_ = TestRepository.init();
+    }
+
+    private static File objectFile(String dir, String objectID){
+        return Utils.join(Utils.GITLET_DIR, dir, objectID);
+    }
+
+    private static void writeLegacyObjects(){
+        Utils.writeContents(objectFile(Utils.BLOBS_DIR, LEGACY_BLOB_ID), Base64.getDecoder().decode(LEGACY_BLOB));
+        Utils.writeContents(objectFile(Utils.COMMIT_DIR, LEGACY_COMMIT_ID), Base64.getDecoder().decode(LEGACY_COMMIT));
+    }
+
+    private static boolean isLegacy(File file) throws IOException {
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return ObjectCodec.isLegacy(in);
+        }
+    }
+
+    private static void assertLegacyObjectsRead() throws IOException {
+        Blob blob = Blob.readBlobFromDisk(LEGACY_BLOB_ID);
+        assertEquals("a.txt", blob.getFileName_());
+        assertEquals("legacy contents\n", new String(blob.getContentAsBytes_()));
+        try (InputStream in = Blob.openContent(LEGACY_BLOB_ID)) {
+            assertEquals("legacy contents\n", new String(in.readAllBytes()));
+        }
+
+        Commit commit = Commit.readCommitFromDisk(LEGACY_COMMIT_ID);
+        assertEquals(LEGACY_COMMIT_ID, commit.getThisCommitID_());
+        assertEquals("legacy commit", commit.getCommitMessage_());
+        assertEquals(List.of(Utils.sha1("parent")), commit.getParentCommitIDs_());
+        assertEquals("2026-10-18 02:39:27", commit.getTimestamp_());
+        assertEquals(LEGACY_BLOB_ID, commit.getBlobID("a.txt"));
+    }
+
+    private static void clearCaches(){
+        Commit.getCache().clear();
+        Blob.getCache().clear();
+        Tree.getCache().clear();
+    }
+
+    @Test
+    void commitRoundTrip() throws IOException {
+        String treeID = Tree.write(Map.of("a.txt", Utils.sha1("a")));
+        Commit commit = new Commit("merge", Utils.sha1("first"), Utils.sha1("second"), treeID);
+
+        Commit decoded = Commit.fromBytes(commit.toBytes());
+        assertEquals(commit.getThisCommitID_(), decoded.getThisCommitID_());
+        assertEquals(commit.getParentCommitIDs_(), decoded.getParentCommitIDs_());
+        assertEquals("merge", decoded.getCommitMessage_());
+        assertEquals(commit.getTimestamp_(), decoded.getTimestamp_());
+        assertEquals(treeID, decoded.getTreeID_());
+
+        Commit root = Commit.fromBytes(new Commit("root", null, null, treeID).toBytes());
+        assertEquals(List.of(), root.getParentCommitIDs_());
+    }
+
+    @Test
+    void blobRoundTripRawAndDeflated() throws IOException {
+        repo_.write("notes.txt", "a line that repeats\n".repeat(200));
+        Blob blob = new Blob("notes.txt");
+
+        byte[] raw = blob.toBytes(0);
+        byte[] deflated = blob.toBytes(9);
+        assertTrue(deflated.length < raw.length);
+
+        for (byte[] encoded : List.of(raw, deflated)){
+            Blob decoded = Blob.fromBytes(encoded);
+            assertEquals("notes.txt", decoded.getFileName_());
+            assertEquals(blob.getContentHash_(), decoded.getContentHash_());
+            assertArrayEquals(blob.getContentAsBytes_(), decoded.getContentAsBytes_());
+        }
+    }
+
+    @Test
+    void treeRoundTrip(){
+        Map<String, String> files = Map.of("a.txt", Utils.sha1("a"), "dir/b.txt", Utils.sha1("b"),
+                "dir/sub/c.txt", Utils.sha1("c"));
+        String treeID = Tree.write(files);
+
+        clearCaches();
+        assertEquals(files, Tree.getFiles(treeID));
+    }
+
+    @Test
+    void branchRoundTrip(){
+        Branch branch = new Branch("feature", Utils.sha1("head"));
+        branch.setBranchPtr_(Utils.sha1("pointer"));
+        RepositoryState.writeBranch(branch);
+
+        Branch decoded = RepositoryState.readBranch("feature");
+        assertEquals("feature", decoded.getBranchName_());
+        assertEquals(Utils.sha1("head"), decoded.getHeadCommit_());
+        assertEquals(Utils.sha1("pointer"), decoded.getBranchPtr_());
+    }
+
+    @Test
+    void stagingAreaRoundTrip(){
+        String head = repo_.commit("a.txt", "a", "first");
+        StagingArea stagingArea = new StagingArea(Commit.readCommitFromDisk(head));
+        stagingArea.getFileToAdd_().add("b.txt");
+        stagingArea.getFileToRemove_().add("a.txt");
+
+        // the tracked files are stored as the ID of their commit
+        RepositoryState.writeStagingArea(RepositoryState.encodeStagingArea(stagingArea));
+        clearCaches();
+        StagingArea decoded = RepositoryState.readStagingArea();
+        assertEquals(Set.of("b.txt"), decoded.getFileToAdd_());
+        assertEquals(Set.of("a.txt"), decoded.getFileToRemove_());
+        assertEquals(Commit.readCommitFromDisk(head).getFileToBlobIDMap_(), decoded.getPrevCommitFileToBlobIDMap());
+
+        // and in full once they are no longer a commit's
+        Map<String, String> files = Map.of("c.txt", Utils.sha1("c"));
+        stagingArea.setPrevCommitFileToBlobIDMap(new HashMap<>(files));
+        RepositoryState.writeStagingArea(RepositoryState.encodeStagingArea(stagingArea));
+        assertEquals(files, RepositoryState.readStagingArea().getPrevCommitFileToBlobIDMap());
+    }
+
+    @Test
+    void legacySerializedObjectsAreRead() throws IOException {
+        writeLegacyObjects();
+        assertLegacyObjectsRead();
+    }
+
+    @Test
+    void migrateRewritesLegacyObjects() throws IOException {
+        writeLegacyObjects();
+
+        assertFalse(ObjectCodec.migrate(), "nothing was packed");
+        assertFalse(isLegacy(objectFile(Utils.BLOBS_DIR, LEGACY_BLOB_ID)));
+        assertFalse(isLegacy(objectFile(Utils.COMMIT_DIR, LEGACY_COMMIT_ID)));
+
+        // the commit's files are now a tree
+        clearCaches();
+        assertTrue(Commit.readCommitFromDisk(LEGACY_COMMIT_ID).hasTree());
+        assertLegacyObjectsRead();
+    }
+
+    @Test
+    void migrateUnpacksPackedObjects(){
+        String head = repo_.commit("a.txt", "a", "first");
+        String blobID = Commit.readCommitFromDisk(head).getBlobID("a.txt");
+        repo_.run("repack");
+        assertTrue(PackFile.contains(head));
+
+        assertTrue(ObjectCodec.migrate(), "the objects should be packed again");
+        assertFalse(PackFile.contains(head));
+        assertTrue(objectFile(Utils.COMMIT_DIR, head).exists());
+        assertTrue(objectFile(Utils.BLOBS_DIR, blobID).exists());
+
+        clearCaches();
+        assertEquals("a", new String(Blob.readBlobFromDisk(blobID).getContentAsBytes_()));
+    }
+}
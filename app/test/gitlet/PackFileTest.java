@@ -0,0 +1,179 @@
+package gitlet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackFileTest {
+
+    private TestRepository repo_;
+
+    @BeforeEach
+    void setUp(){
+        repo_ = TestRepository.init();
+    }
+
+    private static List<String> loose(String dir){
+        return Utils.plainFilenamesIn(Utils.join(Utils.GITLET_DIR, dir));
+    }
+
+    private static List<String> packFiles(){
+        return Utils.plainFilenamesIn(Utils.join(Utils.GITLET_DIR, Utils.PACKS_DIR));
+    }
+
+    private static byte[] readPacked(byte type, String objectID) throws IOException {
+        try (InputStream in = PackFile.openObject(type, objectID)) {
+            return in.readAllBytes();
+        }
+    }
+
+    // a file of numbered lines, with line CHANGED edited
+    private static String lines(int count, int changed){
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++){
+            text.append(i == changed ? "edited line " : "line ").append(i).append('\n');
+        }
+        return text.toString();
+    }
+
+    @Test
+    void repackKeepsEveryObjectReadable() throws IOException {
+        for (int i = 0; i < 5; i++){
+            repo_.commit("notes.txt", lines(2000, i * 100), "edit " + i);
+            repo_.commit("dir/other" + i + ".txt", "other " + i, "add other " + i);
+        }
+
+        Map<String, byte[]> blobs = new HashMap<>();
+        for (String blobID : loose(Utils.BLOBS_DIR)){
+            blobs.put(blobID, Blob.readBlobFromDisk(blobID).getContentAsBytes_());
+        }
+        Map<String, byte[]> commits = new HashMap<>();
+        for (String commitID : loose(Utils.COMMIT_DIR)){
+            commits.put(commitID, Utils.readContents(Utils.join(Utils.GITLET_DIR, Utils.COMMIT_DIR, commitID)));
+        }
+        Map<String, byte[]> trees = new HashMap<>();
+        for (String treeID : loose(Utils.TREES_DIR)){
+            trees.put(treeID, Utils.readContents(Utils.join(Utils.GITLET_DIR, Utils.TREES_DIR, treeID)));
+        }
+
+        repo_.run("repack");
+
+        assertTrue(loose(Utils.BLOBS_DIR).isEmpty());
+        assertTrue(loose(Utils.COMMIT_DIR).isEmpty());
+        assertTrue(loose(Utils.TREES_DIR).isEmpty());
+
+        Blob.getCache().clear();
+        for (Map.Entry<String, byte[]> blob : blobs.entrySet()){
+            assertTrue(PackFile.contains(blob.getKey()));
+            assertArrayEquals(blob.getValue(), Blob.readBlobFromDisk(blob.getKey()).getContentAsBytes_());
+        }
+        for (Map.Entry<String, byte[]> commit : commits.entrySet()){
+            assertArrayEquals(commit.getValue(), readPacked(PackFile.TYPE_COMMIT, commit.getKey()));
+        }
+        for (Map.Entry<String, byte[]> tree : trees.entrySet()){
+            assertArrayEquals(tree.getValue(), readPacked(PackFile.TYPE_TREE, tree.getKey()));
+        }
+
+        assertEquals(new TreeSet<>(commits.keySet()), new TreeSet<>(PackFile.listObjects(PackFile.TYPE_COMMIT)));
+    }
+
+    @Test
+    void repackFoldsEarlierPacksIntoOne() throws IOException {
+        repo_.commit("a.txt", lines(500, 1), "first");
+        repo_.run("repack");
+        List<String> firstBlobs = PackFile.listObjects(PackFile.TYPE_BLOB);
+
+        repo_.commit("a.txt", lines(500, 2), "second");
+        repo_.run("repack");
+
+        List<String> files = packFiles();
+        assertEquals(2, files.size(), "one pack and its index: " + files);
+
+        Blob.getCache().clear();
+        for (String blobID : firstBlobs){
+            assertTrue(PackFile.contains(blobID));
+        }
+        repo_.run("checkout", "--", "a.txt");
+        assertEquals(lines(500, 2), repo_.read("a.txt"));
+    }
+
+    @Test
+    void repackWithNothingNewLeavesThePackAlone(){
+        repo_.commit("a.txt", "a", "first");
+        repo_.run("repack");
+        List<String> files = packFiles();
+
+        repo_.run("repack");
+        assertEquals(files, packFiles());
+    }
+
+    @Test
+    void packedObjectsAreNotFoundUnderOtherTypes(){
+        repo_.commit("a.txt", "a", "first");
+        repo_.run("repack");
+
+        String commitID = PackFile.listObjects(PackFile.TYPE_COMMIT).get(0);
+        assertThrows(IOException.class, () -> readPacked(PackFile.TYPE_BLOB, commitID));
+    }
+
+    // commit a file on a new branch and delete the branch, leaving the
+    // commit unreachable; returns its ID
+    private String commitOnRemovedBranch(String contents){
+        repo_.run("branch", "side");
+        repo_.run("checkout", "side");
+        String commitID = repo_.commit("side.txt", contents, "on side");
+        repo_.run("checkout", "master");
+        repo_.run("rm-branch", "side");
+        return commitID;
+    }
+
+    @Test
+    void repackLeavesUnreachableObjectsLoose(){
+        String first = repo_.commit("a.txt", "a", "first");
+        String side = commitOnRemovedBranch("side");
+        repo_.run("repack");
+
+        assertTrue(PackFile.contains(first));
+        assertFalse(PackFile.contains(side));
+        assertEquals(List.of(side), loose(Utils.COMMIT_DIR));
+    }
+
+    @Test
+    void repackUnpacksObjectsThatAreNoLongerReachable() throws IOException {
+        repo_.commit("a.txt", "a", "first");
+        repo_.run("branch", "side");
+        repo_.run("checkout", "side");
+        String side = repo_.commit("side.txt", lines(100, 1), "on side");
+        String sideBlob = Commit.readCommitFromDisk(side).getBlobID("side.txt");
+        repo_.run("checkout", "master");
+
+        repo_.run("repack");
+        assertTrue(PackFile.contains(side));
+        File pack = Utils.join(Utils.GITLET_DIR, Utils.PACKS_DIR, packFiles().get(1));
+        assertTrue(pack.setLastModified(pack.lastModified() - 60_000));
+        long packed = pack.lastModified();
+
+        repo_.run("rm-branch", "side");
+        repo_.run("repack");
+
+        assertFalse(PackFile.contains(side));
+        assertFalse(PackFile.contains(sideBlob));
+        File commitFile = Utils.join(Utils.GITLET_DIR, Utils.COMMIT_DIR, side);
+        assertEquals(List.of(side), loose(Utils.COMMIT_DIR));
+        assertEquals(packed, commitFile.lastModified());
+        Blob.getCache().clear();
+        assertEquals(lines(100, 1), new String(Blob.readBlobFromDisk(sideBlob).getContentAsBytes_()));
+
+        // gc removes them once they are older than the grace period
+        repo_.run("config", "gc.graceMinutes", "0");
+        repo_.run("gc");
+        assertFalse(commitFile.exists());
+        assertFalse(Utils.join(Utils.GITLET_DIR, Utils.BLOBS_DIR, sideBlob).exists());
+    }
+}
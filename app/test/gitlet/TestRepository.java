@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/* A scratch repository in the working directory of the tests, which the
+   build sets to target/test-repo. Each test class runs in a JVM of its own,
+   and the indexes that gitlet holds statically are forgotten whenever a
+   test starts a new repository. */
+final class TestRepository {
+
+    private final Main program_;
+
+    private TestRepository(Main program){
+        program_ = program;
+    }
+
+    // empty the working directory and initialize a repository in it
+    static TestRepository init(){
+
+        File dir = new File(Utils.WORKING_DIR);
+        // never empty a directory the build did not make for the tests
+        if (!dir.getName().equals("test-repo")){
+            throw new IllegalStateException("tests must run in target/test-repo, not " + dir);
+        }
+
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                    .filter(path -> !path.equals(dir.toPath()))
+                    .forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Main program = new Main();
+        program.reload();
+        program.execute("init");
+        return new TestRepository(program);
+    }
+
+    // write CONTENTS to the file at PATH in the working directory
+    void write(String path, String contents){
+        File file = new File(path);
+        if (file.getParentFile() != null){
+            file.getParentFile().mkdirs();
+        }
+        Utils.writeContents(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    String read(String path){
+        return new String(Utils.readContents(new File(path)), StandardCharsets.UTF_8);
+    }
+
+    // run a gitlet command against the repository
+    void run(String... args){
+        program_.execute(args);
+    }
+
+    // the ID of the commit at the head of the current branch
+    String head(){
+        return RepositoryState.readBranch(RepositoryState.readHead()).getHeadCommit_();
+    }
+
+    // write the file at PATH, stage it and commit it with MESSAGE, returning
+    // the new commit's ID
+    String commit(String path, String contents, String message){
+        write(path, contents);
+        run("add", path);
+        run("commit", message);
+        return head();
+    }
+}
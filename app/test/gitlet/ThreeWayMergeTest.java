@@ -0,0 +1,99 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThreeWayMergeTest {
+
+    /* The merged text and whether it merged cleanly. */
+    private static final class Result {
+        private final String text_;
+        private final boolean clean_;
+
+        Result(String text, boolean clean){
+            text_ = text;
+            clean_ = clean;
+        }
+    }
+
+    private static Result merge(String base, String ours, String theirs) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean clean = ThreeWayMerge.merge(bytes(base), bytes(ours), bytes(theirs), out);
+        return new Result(out.toString(StandardCharsets.UTF_8), clean);
+    }
+
+    private static byte[] bytes(String text){
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void takesChangesMadeOnOneSideOnly() throws IOException {
+        Result result = merge("1\n2\n3\n4\n5\n", "1\ntwo\n3\n4\n5\n", "1\n2\n3\n4\nfive\n");
+
+        assertTrue(result.clean_);
+        assertEquals("1\ntwo\n3\n4\nfive\n", result.text_);
+    }
+
+    @Test
+    void takesTheSameChangeOnBothSidesOnce() throws IOException {
+        Result result = merge("a\nb\nc\n", "a\nB\nc\nd\n", "a\nB\nc\n");
+
+        assertTrue(result.clean_);
+        assertEquals("a\nB\nc\nd\n", result.text_);
+    }
+
+    @Test
+    void marksLinesChangedDifferentlyOnBothSides() throws IOException {
+        Result result = merge("a\nb\nc\n", "a\nours\nc\n", "a\ntheirs\nc\n");
+
+        assertFalse(result.clean_);
+        assertEquals("a\n<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\nc\n", result.text_);
+    }
+
+    @Test
+    void keepsCleanChunksAroundAConflict() throws IOException {
+        Result result = merge("1\n2\n3\n4\n5\n6\n7\n",
+                "one\n2\n3\nours\n5\n6\n7\n",
+                "1\n2\n3\ntheirs\n5\n6\nseven\n");
+
+        assertFalse(result.clean_);
+        assertEquals("one\n2\n3\n<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\n5\n6\nseven\n", result.text_);
+    }
+
+    @Test
+    void marksALineDeletedOnOneSideAndChangedOnTheOther() throws IOException {
+        Result result = merge("a\nb\nc\n", "a\nc\n", "a\nB\nc\n");
+
+        assertFalse(result.clean_);
+        assertEquals("a\n<<<<<<< HEAD\n=======\nB\n>>>>>>>\nc\n", result.text_);
+    }
+
+    @Test
+    void marksDifferentInsertionsAtTheSamePlace() throws IOException {
+        Result result = merge("a\nc\n", "a\nx\nc\n", "a\ny\nc\n");
+
+        assertFalse(result.clean_);
+        assertEquals("a\n<<<<<<< HEAD\nx\n=======\ny\n>>>>>>>\nc\n", result.text_);
+    }
+
+    @Test
+    void startsMarkersOnTheirOwnLine() throws IOException {
+        Result result = merge("a\nb", "a\nours", "a\ntheirs");
+
+        assertFalse(result.clean_);
+        assertEquals("a\n<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\n", result.text_);
+    }
+
+    @Test
+    void writesWholeFilesAsAConflict() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ThreeWayMerge.writeConflict(bytes("changed\n"), new byte[0], out);
+
+        assertEquals("<<<<<<< HEAD\nchanged\n=======\n>>>>>>>\n", out.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,162 @@
+package gitlet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TreeTest {
+
+    @BeforeEach
+    void setUp(){
+        TestRepository.init();
+    }
+
+    private static String blob(String contents){
+        return Utils.sha1(contents);
+    }
+
+    // a few nested directories and one directory large enough to be sharded
+    private static Map<String, String> files(int large){
+        Map<String, String> files = new HashMap<>();
+        files.put("README", blob("readme"));
+        files.put("src/Main.java", blob("main"));
+        files.put("src/util/Strings.java", blob("strings"));
+        files.put("docs/guide/intro.md", blob("intro"));
+        for (int i = 0; i < large; i++){
+            files.put("large/file" + i + ".txt", blob("file " + i));
+        }
+        return files;
+    }
+
+    private static int storedTrees(){
+        return Utils.plainFilenamesIn(Utils.join(Utils.GITLET_DIR, Utils.TREES_DIR)).size();
+    }
+
+    private static List<String> describe(List<Tree.Change> changes){
+        List<String> described = new ArrayList<>();
+        for (Tree.Change change : changes){
+            described.add(change.getPath_() + " " + change.getOldBlobID_() + " " + change.getNewBlobID_());
+        }
+        return described;
+    }
+
+    @Test
+    void readsBackEveryFile(){
+        Map<String, String> files = files(3000);
+        String treeID = Tree.write(files);
+
+        Tree.getCache().clear();
+        assertEquals(files, Tree.getFiles(treeID));
+        for (Map.Entry<String, String> file : files.entrySet()){
+            assertEquals(file.getValue(), Tree.getBlobID(treeID, file.getKey()));
+        }
+        assertNull(Tree.getBlobID(treeID, "large/missing.txt"));
+        assertNull(Tree.getBlobID(treeID, "src"));
+    }
+
+    @Test
+    void equalFilesGiveEqualTrees(){
+        Map<String, String> files = files(3000);
+        assertEquals(Tree.write(files), Tree.write(new TreeMap<>(files)));
+        assertNotEquals(Tree.write(files), Tree.write(files(2999)));
+    }
+
+    @Test
+    void changingOneFileOfAShardedDirectoryWritesItsPathOnly(){
+        Map<String, String> files = files(3000);
+        String treeID = Tree.write(files);
+        int before = storedTrees();
+        // the root, the sharded directory and one shard per level
+        assertTrue(before > 256, before + " trees");
+
+        String updated = Tree.update(treeID, Map.of("large/file17.txt", blob("changed")));
+
+        int written = storedTrees() - before;
+        assertTrue(written >= 3 && written <= 3 + 4, written + " trees written");
+
+        files.put("large/file17.txt", blob("changed"));
+        assertEquals(Tree.write(files), updated);
+    }
+
+    @Test
+    void updateGivesTheTreeThatWriteGives(){
+        Map<String, String> files = files(3000);
+        String treeID = Tree.write(files);
+
+        Map<String, String> changes = new HashMap<>();
+        changes.put("src/util/Strings.java", null);
+        changes.put("src/util/Lists.java", blob("lists"));
+        changes.put("docs/guide/intro.md", null);
+        changes.put("large/file5.txt", blob("five"));
+        changes.put("large/new.txt", blob("new"));
+        for (int i = 100; i < 2800; i++){
+            changes.put("large/file" + i + ".txt", null);
+        }
+
+        Map<String, String> expected = new HashMap<>(files);
+        for (Map.Entry<String, String> change : changes.entrySet()){
+            if (change.getValue() == null){
+                expected.remove(change.getKey());
+            } else {
+                expected.put(change.getKey(), change.getValue());
+            }
+        }
+
+        // the large directory shrinks below the sharding threshold
+        String updated = Tree.update(treeID, changes);
+        assertEquals(Tree.write(expected), updated);
+        assertEquals(expected, Tree.getFiles(updated));
+    }
+
+    @Test
+    void diffMatchesTheDiffOfTheFiles(){
+        Map<String, String> oldFiles = files(3000);
+        Map<String, String> newFiles = new HashMap<>(oldFiles);
+        newFiles.remove("README");
+        newFiles.put("src/Main.java", blob("main 2"));
+        newFiles.put("src/util/Numbers.java", blob("numbers"));
+        newFiles.remove("docs/guide/intro.md");
+        for (int i = 0; i < 3000; i += 97){
+            newFiles.put("large/file" + i + ".txt", blob("edit " + i));
+        }
+        newFiles.remove("large/file1.txt");
+        newFiles.put("large/extra.txt", blob("extra"));
+
+        List<Tree.Change> changes = Tree.diff(Tree.write(oldFiles), Tree.write(newFiles));
+
+        assertEquals(describe(Tree.diff(oldFiles, newFiles)), describe(changes));
+        assertTrue(describe(changes).contains("docs/guide/intro.md " + blob("intro") + " null"));
+        assertTrue(describe(changes).contains("large/extra.txt null " + blob("extra")));
+    }
+
+    @Test
+    void diffOfAShardedAndAPlainDirectory(){
+        Map<String, String> oldFiles = files(3000);
+        Map<String, String> newFiles = files(10);
+        newFiles.put("large/file3.txt", blob("three"));
+
+        List<Tree.Change> changes = Tree.diff(Tree.write(oldFiles), Tree.write(newFiles));
+
+        assertEquals(describe(Tree.diff(oldFiles, newFiles)), describe(changes));
+        assertEquals(2990 + 1, changes.size());
+    }
+
+    @Test
+    void diffOfEqualTreesIsEmpty(){
+        String treeID = Tree.write(files(3000));
+        assertTrue(Tree.diff(treeID, treeID).isEmpty());
+    }
+
+    @Test
+    void diffOfAFileReplacedByADirectory(){
+        Map<String, String> oldFiles = Map.of("name", blob("file"));
+        Map<String, String> newFiles = Map.of("name/inside", blob("inside"));
+
+        List<Tree.Change> changes = Tree.diff(Tree.write(oldFiles), Tree.write(newFiles));
+
+        assertEquals(List.of("name " + blob("file") + " null", "name/inside null " + blob("inside")), describe(changes));
+    }
+}
@@ -0,0 +1,30 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkingTreeTest {
+
+    @Test
+    void pathsAreRelativeToTheTopOfTheWorkingTree(){
+        assertEquals("a.txt", WorkingTree.toPath("a.txt"));
+        assertEquals("dir/a.txt", WorkingTree.toPath("dir/./sub/../a.txt"));
+        assertEquals("dir/a.txt", WorkingTree.toPath(new File(Utils.WORKING_DIR, "dir/a.txt").getAbsolutePath()));
+        assertEquals("", WorkingTree.toPath("."));
+        assertEquals("", WorkingTree.toPath("dir/.."));
+    }
+
+    @Test
+    void pathsLeavingTheWorkingTreeAreRefused(){
+        assertNull(WorkingTree.toPath(".."));
+        assertNull(WorkingTree.toPath("../a.txt"));
+        assertNull(WorkingTree.toPath("dir/../../a.txt"));
+        assertNull(WorkingTree.toPath(new File(Utils.WORKING_DIR).getParentFile().getAbsolutePath()));
+        assertNull(WorkingTree.toPath("/etc/passwd"));
+        // a sibling whose name starts with the working tree's
+        assertNull(WorkingTree.toPath("../" + new File(Utils.WORKING_DIR).getName() + "-other/a.txt"));
+    }
+}
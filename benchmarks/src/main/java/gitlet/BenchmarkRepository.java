@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/* A repository generated in the current directory for benchmarks to run
+   against. Gitlet resolves every path against the working directory and
+   keeps the state of the open repository in static fields, so a JMH fork
+   serves a single repository: create it in a trial-level setup and delete
+   it in the matching teardown.
+
+   Run the benchmarks from an empty directory, as in
+   cd "$(mktemp -d)" && java -jar .../benchmarks.jar
+   A directory holding anything but an earlier benchmark repository is
+   refused rather than overwritten.
+
+   The repository holds FILE_COUNT files of FILE_SIZE bytes of text, in
+   HISTORY_DEPTH commits: one adding every file, then one per changed file,
+   going round the files in order. Contents come from a seeded generator,
+   so every fork of a benchmark sees the same repository. */
+class BenchmarkRepository {
+
+    // left in the directory so that an interrupted run can be cleaned up
+    private static final String MARKER = ".gitlet-benchmark";
+
+    private final Main program_ = new Main();
+    private final PrintStream console_ = System.out;
+    private final Random random_ = new Random(42);
+    private final int fileCount_;
+    private final int fileSize_;
+    private int changes_;
+
+    private BenchmarkRepository(int fileCount, int fileSize){
+        fileCount_ = fileCount;
+        fileSize_ = fileSize;
+    }
+
+    static BenchmarkRepository create(int fileCount, int fileSize, int historyDepth) throws IOException {
+
+        Path dir = Paths.get("").toAbsolutePath();
+        try (Stream<Path> entries = Files.list(dir)) {
+            if (entries.findAny().isPresent() && !Files.exists(dir.resolve(MARKER))){
+                throw new IllegalStateException("run the benchmarks from an empty directory, not " + dir);
+            }
+        }
+        clean(dir);
+        Files.createFile(dir.resolve(MARKER));
+
+        BenchmarkRepository repository = new BenchmarkRepository(fileCount, fileSize);
+        // commands print as on the command line; their output is discarded
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        repository.run("init");
+        for (int i = 0; i < fileCount; i++){
+            repository.writeFile(i);
+            repository.run("add", fileName(i));
+        }
+        repository.run("commit", "add " + fileCount + " files");
+
+        for (int i = 1; i < historyDepth; i++){
+            repository.commitChange();
+        }
+        return repository;
+    }
+
+    static String fileName(int index){
+        return "file" + index + ".txt";
+    }
+
+    void run(String... args){
+        program_.execute(args);
+    }
+
+    // SIZE bytes of lines of words, which compress and diff like source text
+    static byte[] text(Random random, int size){
+        try {
+            ByteArrayOutputStream text = new ByteArrayOutputStream(size);
+            RepositoryGenerator.writeText(text, random, size);
+            return text.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // rewrite a file with new lines of text
+    void writeFile(int index) throws IOException {
+        Files.write(Paths.get(fileName(index)), text(random_, fileSize_));
+    }
+
+    // change the next file in turn and commit it
+    void commitChange() throws IOException {
+        int index = changes_++ % fileCount_;
+        writeFile(index);
+        run("add", fileName(index));
+        run("commit", "change " + fileName(index));
+    }
+
+    // remove the repository and its files
+    void delete() throws IOException {
+        System.setOut(console_);
+        clean(Paths.get("").toAbsolutePath());
+    }
+
+    private static void clean(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .filter(path -> !path.equals(dir))
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+}
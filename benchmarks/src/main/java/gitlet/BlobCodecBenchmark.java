@@ -0,0 +1,50 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/* Encoding and decoding of blobs, at the given compression level. Level 0
+   stores contents raw; 6 is the default. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BlobCodecBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int fileSize;
+
+    @Param({"0", "6"})
+    public int compressionLevel;
+
+    private Blob blob_;
+    private byte[] encoded_;
+
+    @Setup
+    public void setUp() throws IOException {
+        // a blob is read from its file
+        Path file = Files.createTempFile("blob", ".txt");
+        Files.write(file, BenchmarkRepository.text(new Random(42), fileSize));
+        blob_ = new Blob(file.toString());
+        Files.delete(file);
+
+        encoded_ = blob_.toBytes(compressionLevel);
+    }
+
+    @Benchmark
+    public byte[] encode(){
+        return blob_.toBytes(compressionLevel);
+    }
+
+    @Benchmark
+    public Blob decode() throws IOException {
+        return Blob.fromBytes(encoded_);
+    }
+}
@@ -0,0 +1,52 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* Switching between two branches that differ in every file, so that each
+   checkout rewrites the whole working tree. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CheckoutBenchmark {
+
+    @Param({"100", "1000"})
+    public int fileCount;
+
+    @Param({"1024", "65536"})
+    public int fileSize;
+
+    private BenchmarkRepository repository_;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        repository_ = BenchmarkRepository.create(fileCount, fileSize, 1);
+
+        repository_.run("branch", "other");
+        repository_.run("checkout", "other");
+        for (int i = 0; i < fileCount; i++){
+            repository_.writeFile(i);
+            repository_.run("add", BenchmarkRepository.fileName(i));
+        }
+        repository_.run("commit", "change every file");
+        repository_.run("checkout", "master");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository_.delete();
+    }
+
+    // one operation is a checkout of each branch
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void checkoutBranch(){
+        repository_.run("checkout", "other");
+        repository_.run("checkout", "master");
+    }
+}
@@ -0,0 +1,65 @@
+package gitlet;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+
+/* Runs one gitlet command in the current directory, as the command line
+   would, and prints what it cost on a single line instead of its output:
+
+   nanoseconds in the command, bytes read, bytes written, peak heap bytes
+
+   Bytes are those passed to read and write system calls while the command
+   ran, from /proc/self/io, and are -1 where that is not available. The peak
+   is summed over the heap memory pools. */
+class CommandProbe {
+
+    public static void main(String... args){
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans();
+        heapPools.removeIf(pool -> pool.getType() != MemoryType.HEAP);
+
+        long[] ioBefore = readIO();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long start = System.nanoTime();
+
+        Main program = new Main();
+        program.execute(args);
+
+        long elapsed = System.nanoTime() - start;
+        long[] ioAfter = readIO();
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools){
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+
+        long read = ioBefore != null && ioAfter != null ? ioAfter[0] - ioBefore[0] : -1;
+        long written = ioBefore != null && ioAfter != null ? ioAfter[1] - ioBefore[1] : -1;
+        console.println(elapsed + " " + read + " " + written + " " + peakHeap);
+    }
+
+    // the rchar and wchar counters of this process, or null
+    private static long[] readIO(){
+        try {
+            long[] io = new long[2];
+            for (String line : Files.readAllLines(Paths.get("/proc/self/io"), StandardCharsets.US_ASCII)){
+                if (line.startsWith("rchar:")){
+                    io[0] = Long.parseLong(line.substring(6).trim());
+                } else if (line.startsWith("wchar:")){
+                    io[1] = Long.parseLong(line.substring(6).trim());
+                }
+            }
+            return io;
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* Changing one file, adding and committing it, in a repository of
+   FILE_COUNT files. Each operation adds a commit to the history. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CommitBenchmark {
+
+    @Param({"100", "1000"})
+    public int fileCount;
+
+    @Param({"1024", "65536"})
+    public int fileSize;
+
+    private BenchmarkRepository repository_;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        repository_ = BenchmarkRepository.create(fileCount, fileSize, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository_.delete();
+    }
+
+    @Benchmark
+    public void addAndCommit() throws IOException {
+        repository_.commitChange();
+    }
+}
@@ -0,0 +1,36 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* Encoding and decoding of commits, which refer to their files by the ID of
+   a tree, so their size does not grow with the number of files. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CommitCodecBenchmark {
+
+    private Commit commit_;
+    private byte[] encoded_;
+
+    @Setup
+    public void setUp(){
+        commit_ = new Commit("change files", Utils.sha1("parent"), null, Utils.sha1("tree"));
+        encoded_ = commit_.toBytes();
+    }
+
+    @Benchmark
+    public byte[] encode(){
+        return commit_.toBytes();
+    }
+
+    @Benchmark
+    public Commit decode() throws IOException {
+        return Commit.fromBytes(encoded_);
+    }
+}
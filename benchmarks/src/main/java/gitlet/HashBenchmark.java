@@ -0,0 +1,31 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/* SHA-1 of file contents, as computed for every file added. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HashBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int fileSize;
+
+    private byte[] contents_;
+
+    @Setup
+    public void setUp(){
+        contents_ = BenchmarkRepository.text(new Random(42), fileSize);
+    }
+
+    @Benchmark
+    public String sha1(){
+        return Utils.sha1(contents_);
+    }
+}
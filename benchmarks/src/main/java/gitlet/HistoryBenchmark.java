@@ -0,0 +1,55 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* Walks of the history of a repository: log prints every commit back to the
+   initial one, log -n 20 only the last 20, which should not depend on the
+   depth, and status compares the working files with the head commit.
+   Output is discarded. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HistoryBenchmark {
+
+    @Param({"100", "1000"})
+    public int historyDepth;
+
+    @Param({"100"})
+    public int fileCount;
+
+    @Param({"1024"})
+    public int fileSize;
+
+    private BenchmarkRepository repository_;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        repository_ = BenchmarkRepository.create(fileCount, fileSize, historyDepth);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository_.delete();
+    }
+
+    @Benchmark
+    public void log(){
+        repository_.run("log");
+    }
+
+    @Benchmark
+    public void logLast20(){
+        repository_.run("log", "-n", "20");
+    }
+
+    @Benchmark
+    public void status(){
+        repository_.run("status");
+    }
+}
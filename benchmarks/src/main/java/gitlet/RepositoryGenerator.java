@@ -0,0 +1,282 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/* Builds a synthetic repository in the current directory by driving the
+   CommitTree directly, without the per-command saves of the command line.
+
+   Usage: java gitlet.RepositoryGenerator [--shape NAME] [--OPTION VALUE]...
+
+   A shape sets every option, and options given after it override them:
+
+   --files N          files in the initial commit
+   --commits N        commits after the initial one, including merges
+   --branches N       branches besides master, all made from the initial commit
+   --merge-every N    merge a branch into master every N commits (0: never)
+   --changes N        files changed by each commit
+   --sizes SPEC       file sizes: fixed:BYTES, uniform:MIN:MAX or
+                      lognormal:MEDIAN:SIGMA (capped at 64 MB)
+   --huge-files N     the first N files are HUGE_SIZE bytes instead
+   --huge-size BYTES
+   --seed N
+
+   Each branch, and master, only changes its own share of the files, so
+   merges never conflict. Sizes, contents, the branch each commit lands on
+   and the files it changes all come from the seed, so a seed always gives
+   the same shape and contents; commit IDs differ as they hash timestamps. */
+class RepositoryGenerator {
+
+    // the named shapes, as option lists
+    private static final Map<String, String[]> SHAPES = new LinkedHashMap<>();
+
+    static {
+        SHAPES.put("balanced", new String[]{"--files", "2000", "--commits", "500", "--branches", "4",
+                "--merge-every", "25", "--changes", "3", "--sizes", "lognormal:4096:1.5"});
+        // a long first-parent chain for log, merge bases and the commit-graph
+        SHAPES.put("deep", new String[]{"--files", "100", "--commits", "20000", "--branches", "0",
+                "--changes", "1", "--sizes", "fixed:512"});
+        // many branches off one commit, merged back now and then
+        SHAPES.put("wide", new String[]{"--files", "1000", "--commits", "2000", "--branches", "200",
+                "--merge-every", "50", "--changes", "2", "--sizes", "fixed:2048"});
+        // a few files, one of them far larger than the rest
+        SHAPES.put("huge-file", new String[]{"--files", "16", "--commits", "10", "--branches", "0",
+                "--changes", "1", "--sizes", "fixed:4096", "--huge-files", "1", "--huge-size", "134217728"});
+        // a wide working tree of files smaller than their metadata
+        SHAPES.put("tiny-files", new String[]{"--files", "100000", "--commits", "50", "--branches", "0",
+                "--changes", "10", "--sizes", "fixed:16"});
+    }
+
+    private static final long MAX_SIZE = 64L << 20;
+    private static final String[] WORDS = {"commit", "branch", "merge", "blob", "tree", "head",
+            "index", "stage", "file", "log", "status", "checkout", "reset", "split", "graph", "pack"};
+
+    private int files_;
+    private int commits_;
+    private int branches_;
+    private int mergeEvery_;
+    private int changes_;
+    private String sizes_ = "fixed:1024";
+    private int hugeFiles_;
+    private long hugeSize_;
+    private long seed_ = 1;
+
+    private Random random_;
+    private CommitTree tree_;
+    private String currentBranch_ = "master";
+
+    static Set<String> getShapes(){
+        return SHAPES.keySet();
+    }
+
+    public static void main(String... args) throws IOException {
+
+        RepositoryGenerator generator = new RepositoryGenerator();
+        try {
+            generator.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+
+        if (new File(Utils.GITLET_DIR).exists()){
+            System.err.println("A gitlet version-control system already exists in the current directory.");
+            System.exit(1);
+        }
+        generator.generate();
+    }
+
+    private void parse(String[] args){
+
+        for (int i = 0; i < args.length; i += 2){
+            if (i + 1 >= args.length){
+                throw new IllegalArgumentException("missing value for " + args[i]);
+            }
+            String option = args[i];
+            String value = args[i + 1];
+
+            switch (option){
+                case "--shape":
+                    String[] shape = SHAPES.get(value);
+                    if (shape == null){
+                        throw new IllegalArgumentException("unknown shape " + value + "; shapes are " + SHAPES.keySet());
+                    }
+                    parse(shape);
+                    break;
+                case "--files":
+                    files_ = Integer.parseInt(value);
+                    break;
+                case "--commits":
+                    commits_ = Integer.parseInt(value);
+                    break;
+                case "--branches":
+                    branches_ = Integer.parseInt(value);
+                    break;
+                case "--merge-every":
+                    mergeEvery_ = Integer.parseInt(value);
+                    break;
+                case "--changes":
+                    changes_ = Integer.parseInt(value);
+                    break;
+                case "--sizes":
+                    sizes_ = value;
+                    break;
+                case "--huge-files":
+                    hugeFiles_ = Integer.parseInt(value);
+                    break;
+                case "--huge-size":
+                    hugeSize_ = Long.parseLong(value);
+                    break;
+                case "--seed":
+                    seed_ = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + option);
+            }
+        }
+
+        if (files_ < branches_ + 1){
+            throw new IllegalArgumentException("need at least one file for master and each branch");
+        }
+        // check the size specification before generating anything
+        nextSize(new Random(0));
+    }
+
+    static String fileName(int index){
+        return "file" + index + ".txt";
+    }
+
+    private void generate() throws IOException {
+
+        random_ = new Random(seed_);
+        long start = System.nanoTime();
+
+        // commands report to standard output; progress goes to standard error
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        try {
+            Main program = new Main();
+            program.execute("init");
+            tree_ = CommitTree.open();
+
+            for (int i = 0; i < files_; i++){
+                writeFile(i);
+                tree_.add(fileName(i));
+            }
+            tree_.commit("add " + files_ + " files");
+
+            for (int b = 1; b <= branches_; b++){
+                tree_.branch(branchName(b));
+            }
+
+            for (int c = 1; c <= commits_; c++){
+
+                if (branches_ > 0 && mergeEvery_ > 0 && c % mergeEvery_ == 0){
+                    checkout("master");
+                    tree_.merge(branchName(1 + random_.nextInt(branches_)));
+                } else {
+                    int branch = random_.nextInt(branches_ + 1);
+                    checkout(branch == 0 ? "master" : branchName(branch));
+                    commitChanges(branch, c);
+                }
+
+                if (c % 1000 == 0){
+                    System.err.println(c + " of " + commits_ + " commits");
+                    tree_.save();
+                    StatCache.save();
+                }
+            }
+
+            checkout("master");
+            tree_.save();
+            StatCache.save();
+        } finally {
+            System.setOut(console);
+        }
+
+        System.err.printf("generated %d files, %d commits and %d branches in %.1f s%n",
+                files_, commits_ + 1, branches_ + 1, (System.nanoTime() - start) / 1e9);
+    }
+
+    private static String branchName(int branch){
+        return "branch" + branch;
+    }
+
+    private void checkout(String branchName){
+        if (!branchName.equals(currentBranch_)){
+            tree_.checkoutBranch(branchName);
+            currentBranch_ = branchName;
+        }
+    }
+
+    // change files owned by BRANCH: those whose index is BRANCH modulo the
+    // number of branches including master
+    private void commitChanges(int branch, int commit) throws IOException {
+
+        int owners = branches_ + 1;
+        int owned = (files_ - branch + owners - 1) / owners;
+
+        for (int i = 0; i < changes_; i++){
+            int index = branch + owners * random_.nextInt(owned);
+            writeFile(index);
+            tree_.add(fileName(index));
+        }
+        tree_.commit("change " + changes_ + " files on " + currentBranch_ + " in commit " + commit);
+    }
+
+    private void writeFile(int index) throws IOException {
+        long size = index < hugeFiles_ ? hugeSize_ : nextSize(random_);
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName(index)), 1 << 16)) {
+            writeText(out, random_, size);
+        }
+    }
+
+    private long nextSize(Random random){
+        String[] spec = sizes_.split(":");
+
+        try {
+            switch (spec[0]){
+                case "fixed":
+                    return Long.parseLong(spec[1]);
+                case "uniform":
+                    long min = Long.parseLong(spec[1]);
+                    long max = Long.parseLong(spec[2]);
+                    return min + (long) (random.nextDouble() * (max - min + 1));
+                case "lognormal":
+                    double median = Double.parseDouble(spec[1]);
+                    double sigma = Double.parseDouble(spec[2]);
+                    return Math.min(MAX_SIZE, Math.round(median * Math.exp(sigma * random.nextGaussian())));
+                default:
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("bad size specification " + sizes_);
+    }
+
+    // write SIZE bytes of lines of words, which compress and diff like source text
+    static void writeText(OutputStream out, Random random, long size) throws IOException {
+        long written = 0;
+
+        while (written < size){
+            int words = 4 + random.nextInt(8);
+            for (int i = 0; i < words && written < size; i++){
+                String word = WORDS[random.nextInt(WORDS.length)];
+                int length = (int) Math.min(word.length(), size - written);
+                for (int j = 0; j < length; j++){
+                    out.write(word.charAt(j));
+                }
+                written += length;
+
+                if (written < size){
+                    out.write(i + 1 < words ? ' ' : '\n');
+                    written++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/* End-to-end scale test. For each shape, generates a repository with
+   RepositoryGenerator in a temporary directory, then times every gitlet
+   command against it. Each command runs in its own java process, as from
+   the command line, through CommandProbe.
+
+   Usage: java -cp benchmarks.jar gitlet.ScaleTest [--shapes NAME,...]
+              [--samples N] [--format csv|json] [--out FILE] [--keep]
+              [--jvm-args ARGS] [generator options]
+
+   Generator options, such as --seed or --files, apply to every shape. A
+   sample runs each command once: those that change the repository are
+   paired with commands that undo them, so every sample starts from the
+   same working tree. repack runs once, after the samples.
+
+   For each shape and command the report gives the number of samples, the
+   p50 and p99 of the process's wall time and of the time in the command
+   itself, the median bytes read and written and the largest peak heap. */
+class ScaleTest {
+
+    private static final String FILE = RepositoryGenerator.fileName(0);
+    private static final String[] COLUMNS = {"shape", "command", "samples", "wall_p50_ms", "wall_p99_ms",
+            "command_p50_ms", "command_p99_ms", "bytes_read_p50", "bytes_written_p50", "peak_heap_bytes"};
+
+    /* The measurements of one command. */
+    private static class Samples {
+        final List<Long> wallNanos_ = new ArrayList<>();
+        final List<Long> commandNanos_ = new ArrayList<>();
+        final List<Long> bytesRead_ = new ArrayList<>();
+        final List<Long> bytesWritten_ = new ArrayList<>();
+        long peakHeap_;
+    }
+
+    private final String java_ = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    private final String classPath_ = System.getProperty("java.class.path");
+    private final List<String> jvmArgs_ = new ArrayList<>();
+    private final List<String> generatorArgs_ = new ArrayList<>();
+    private List<String> shapes_ = new ArrayList<>(RepositoryGenerator.getShapes());
+    private int samples_ = 20;
+    private String format_ = "csv";
+    private String out_;
+    private boolean keep_;
+
+    private Path dir_;
+    // per command, in the order first run
+    private Map<String, Samples> results_;
+
+    public static void main(String... args) throws IOException, InterruptedException {
+
+        ScaleTest test = new ScaleTest();
+        try {
+            test.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+
+        Map<String, Map<String, Samples>> report = new LinkedHashMap<>();
+        for (String shape : test.shapes_){
+            report.put(shape, test.run(shape));
+        }
+
+        String text = test.format_.equals("json") ? toJson(report) : toCsv(report);
+        if (test.out_ != null){
+            Files.write(Paths.get(test.out_), text.getBytes(StandardCharsets.UTF_8));
+        } else {
+            System.out.print(text);
+        }
+    }
+
+    private void parse(String[] args){
+
+        for (int i = 0; i < args.length; i++){
+            String option = args[i];
+
+            if (option.equals("--keep")){
+                keep_ = true;
+                continue;
+            }
+            if (i + 1 >= args.length){
+                throw new IllegalArgumentException("missing value for " + option);
+            }
+            String value = args[++i];
+
+            switch (option){
+                case "--shapes":
+                    shapes_ = Arrays.asList(value.split(","));
+                    break;
+                case "--samples":
+                    samples_ = Integer.parseInt(value);
+                    break;
+                case "--format":
+                    if (!value.equals("csv") && !value.equals("json")){
+                        throw new IllegalArgumentException("unknown format " + value);
+                    }
+                    format_ = value;
+                    break;
+                case "--out":
+                    out_ = value;
+                    break;
+                case "--jvm-args":
+                    jvmArgs_.addAll(Arrays.asList(value.trim().split("\\s+")));
+                    break;
+                default:
+                    generatorArgs_.add(option);
+                    generatorArgs_.add(value);
+                    break;
+            }
+        }
+    }
+
+    private Map<String, Samples> run(String shape) throws IOException, InterruptedException {
+
+        results_ = new LinkedHashMap<>();
+        dir_ = Files.createTempDirectory("gitlet-scale-" + shape + "-");
+        System.err.println("generating " + shape + " in " + dir_);
+
+        try {
+            List<String> args = new ArrayList<>(Arrays.asList("--shape", shape));
+            args.addAll(generatorArgs_);
+            run("gitlet.RepositoryGenerator", args.toArray(new String[0]));
+
+            boolean hasBranches = run("gitlet.Main", "branch", "branch1").contains("already exists");
+            if (!hasBranches){
+                run("gitlet.Main", "rm-branch", "branch1");
+            }
+
+            String previousHead = null;
+            for (int i = 0; i < samples_; i++){
+                System.err.println(shape + ": sample " + (i + 1) + " of " + samples_);
+                previousHead = sample(i, previousHead, hasBranches);
+            }
+            probe("repack");
+            probeInit();
+        } finally {
+            if (keep_){
+                System.err.println("kept " + dir_);
+            } else {
+                delete(dir_);
+            }
+        }
+        return results_;
+    }
+
+    // run each command once, returning the head commit afterwards
+    private String sample(int i, String previousHead, boolean hasBranches) throws IOException, InterruptedException {
+
+        String message = "scale commit " + i;
+
+        // reading a changed working tree
+        modify(FILE);
+        probe("status");
+        probe("diff");
+        probe("diff", "--stat");
+
+        probe("add", FILE);
+        probe("commit", message);
+        String head = run("gitlet.Main", "find", message).trim();
+
+        probe("log");
+        probe("global-log");
+        probe("find", message);
+        probe("config", "core.compression");
+
+        probe("branch", "scale" + i);
+        probe("checkout", "scale" + i);
+        probe("checkout", "master");
+        probe("rm-branch", "scale" + i);
+
+        // a branch made by the generator differs from master in many files
+        if (hasBranches){
+            probe("checkout", "branch1");
+            probe("checkout", "master");
+        }
+
+        modify(FILE);
+        probe("checkout", "--", FILE);
+        probe("checkout", head, "--", FILE);
+
+        probe("rm", FILE);
+        run("gitlet.Main", "checkout", "--", FILE);
+        run("gitlet.Main", "add", FILE);
+
+        if (previousHead != null){
+            probe("reset", previousHead);
+            probe("reset", head);
+        }
+
+        // a merge of a branch adding a file with a master that changed another
+        String branch = "merge" + i;
+        run("gitlet.Main", "branch", branch);
+        run("gitlet.Main", "checkout", branch);
+        modify("scale" + i + ".txt");
+        run("gitlet.Main", "add", "scale" + i + ".txt");
+        run("gitlet.Main", "commit", "add scale" + i + ".txt");
+        run("gitlet.Main", "checkout", "master");
+        modify(FILE);
+        run("gitlet.Main", "add", FILE);
+        run("gitlet.Main", "commit", message + " on master");
+        probe("merge", branch);
+        run("gitlet.Main", "rm-branch", branch);
+
+        return run("gitlet.Main", "find", "Merged master with " + branch + ".").trim();
+    }
+
+    // init needs a directory of its own
+    private void probeInit() throws IOException, InterruptedException {
+        Path repository = dir_;
+
+        for (int i = 0; i < samples_; i++){
+            dir_ = Files.createTempDirectory("gitlet-scale-init-");
+            try {
+                probe("init");
+            } finally {
+                delete(dir_);
+            }
+        }
+        dir_ = repository;
+    }
+
+    private void modify(String fileName) throws IOException {
+        Files.write(dir_.resolve(fileName), ("changed at " + System.nanoTime() + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // time one command and add it to the results under its name and options
+    private void probe(String... args) throws IOException, InterruptedException {
+
+        long start = System.nanoTime();
+        String output = run("gitlet.CommandProbe", args);
+        long wall = System.nanoTime() - start;
+
+        String[] fields = output.trim().split(" ");
+        if (fields.length != 4){
+            throw new IOException("unexpected probe output for " + String.join(" ", args) + ": " + output);
+        }
+
+        Samples samples = results_.computeIfAbsent(commandName(args), name -> new Samples());
+        samples.wallNanos_.add(wall);
+        samples.commandNanos_.add(Long.parseLong(fields[0]));
+        samples.bytesRead_.add(Long.parseLong(fields[1]));
+        samples.bytesWritten_.add(Long.parseLong(fields[2]));
+        samples.peakHeap_ = Math.max(samples.peakHeap_, Long.parseLong(fields[3]));
+    }
+
+    // the command and its options, without file names, commits or messages
+    private static String commandName(String[] args){
+        StringBuilder name = new StringBuilder(args[0]);
+
+        if (args[0].equals("checkout")){
+            name.append(args.length == 2 ? " [branch]" : args.length == 3 ? " -- [file]" : " [commit] -- [file]");
+        }
+        for (int i = 1; i < args.length; i++){
+            if (args[i].startsWith("--") && args[i].length() > 2){
+                name.append(' ').append(args[i]);
+            }
+        }
+        return name.toString();
+    }
+
+    // run a main class in the repository directory, returning its output
+    private String run(String mainClass, String... args) throws IOException, InterruptedException {
+
+        List<String> command = new ArrayList<>();
+        command.add(java_);
+        command.addAll(jvmArgs_);
+        command.addAll(Arrays.asList("-cp", classPath_, mainClass));
+        command.addAll(Arrays.asList(args));
+
+        Process process = new ProcessBuilder(command)
+                .directory(dir_.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+
+        if (process.waitFor() != 0){
+            throw new IOException(mainClass + " " + String.join(" ", args) + " failed in " + dir_);
+        }
+        return output;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // the value below which the fraction P of the sorted values fall
+    private static long percentile(List<Long> values, double p){
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(p * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    private static List<Object[]> rows(Map<String, Map<String, Samples>> report){
+        List<Object[]> rows = new ArrayList<>();
+
+        for (Map.Entry<String, Map<String, Samples>> shape : report.entrySet()){
+            for (Map.Entry<String, Samples> command : shape.getValue().entrySet()){
+                Samples samples = command.getValue();
+                rows.add(new Object[]{shape.getKey(), command.getKey(), samples.wallNanos_.size(),
+                        millis(percentile(samples.wallNanos_, 0.5)), millis(percentile(samples.wallNanos_, 0.99)),
+                        millis(percentile(samples.commandNanos_, 0.5)), millis(percentile(samples.commandNanos_, 0.99)),
+                        percentile(samples.bytesRead_, 0.5), percentile(samples.bytesWritten_, 0.5), samples.peakHeap_});
+            }
+        }
+        return rows;
+    }
+
+    private static String millis(long nanos){
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String toCsv(Map<String, Map<String, Samples>> report){
+        StringBuilder csv = new StringBuilder(String.join(",", COLUMNS)).append('\n');
+
+        for (Object[] row : rows(report)){
+            for (int i = 0; i < row.length; i++){
+                csv.append(i > 0 ? "," : "").append(row[i]);
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    private static String toJson(Map<String, Map<String, Samples>> report){
+        StringBuilder json = new StringBuilder("[\n");
+        List<Object[]> rows = rows(report);
+
+        for (int r = 0; r < rows.size(); r++){
+            Object[] row = rows.get(r);
+            json.append("  {");
+            for (int i = 0; i < row.length; i++){
+                // shape and command names are strings; all others are numbers
+                String value = i < 2 ? "\"" + row[i] + "\"" : row[i].toString();
+                json.append(i > 0 ? ", " : "").append('"').append(COLUMNS[i]).append("\": ").append(value);
+            }
+            json.append(r + 1 < rows.size() ? "},\n" : "}\n");
+        }
+        return json.append("]\n").toString();
+    }
+}